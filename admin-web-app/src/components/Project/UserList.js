@@ -50,7 +50,7 @@ export default class UserList extends Component {
 		if (this.props.match.params.project !== '' && typeof this.props.match.params.project !== "undefined") {
 			url += '/projects/' + this.props.match.params.project + '/users';
 		} else {
-			url += '/users';
+			return this.fetchUserPages(null, []);
 		}
 		return fetch(url, {method:'GET', headers: getAuth()})
 		.then((response) => response.json())
@@ -64,6 +64,29 @@ export default class UserList extends Component {
 		});
 	}
 
+	// the list of all users is paged, follow the cursor until the last page
+	fetchUserPages(cursor, users) {
+		var url = URL + '/users?limit=1000';
+		if (cursor !== null) {
+			url += '&cursor=' + encodeURIComponent(cursor);
+		}
+		return fetch(url, {method:'GET', headers: getAuth()})
+		.then((response) => {
+			const next = response.headers.get('X-Next-Cursor');
+			return response.json().then((responseJson) => {
+				if (next !== null) {
+					return this.fetchUserPages(next, users.concat(responseJson));
+				}
+				this.setState({
+					isLoading: false,
+					dataSource: users.concat(responseJson)
+				}, function() {});
+			});
+		}).catch((error) => {
+			console.error(error);
+		});
+	}
+
 	render() {
 		if (this.state.isLoading) {
 			return (
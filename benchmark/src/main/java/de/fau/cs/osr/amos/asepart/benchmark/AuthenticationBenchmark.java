@@ -0,0 +1,77 @@
+package de.fau.cs.osr.amos.asepart.benchmark;
+
+import de.fau.cs.osr.amos.asepart.ext.AuthenticationFilter;
+import de.fau.cs.osr.amos.asepart.ext.DatabaseBinder;
+import de.fau.cs.osr.amos.asepart.service.WebService;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures authenticated requests passing the AuthenticationFilter.
+ * Requests are processed in memory by Jersey without an HTTP server,
+ * the resource method itself does not access the database.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthenticationBenchmark
+{
+    private static final URI BASE_URI = URI.create("http://localhost/");
+
+    @Param({"admin", "user"})
+    public String account;
+
+    private ApplicationHandler handler;
+    private String authorization;
+
+    @Setup
+    public void setup()
+    {
+        ResourceConfig config = new ResourceConfig(WebService.class);
+
+        config.register(AuthenticationFilter.class);
+        config.register(new DatabaseBinder());
+        config.register(MultiPartFeature.class);
+
+        handler = new ApplicationHandler(config);
+
+        final String credentials = account + ":" + account; // test data uses login name as password
+        authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public int login() throws Exception
+    {
+        ContainerRequest request = new ContainerRequest(BASE_URI, BASE_URI.resolve("login/" + account),
+                "GET", null, new MapPropertiesDelegate());
+        request.header("Authorization", authorization);
+
+        ContainerResponse response = handler.apply(request, new ByteArrayOutputStream()).get();
+
+        if (response.getStatus() != 200)
+            throw new IllegalStateException("Login failed with status " + response.getStatus());
+
+        return response.getStatus();
+    }
+}
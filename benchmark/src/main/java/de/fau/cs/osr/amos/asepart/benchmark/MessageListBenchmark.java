@@ -0,0 +1,69 @@
+package de.fau.cs.osr.amos.asepart.benchmark;
+
+import de.fau.cs.osr.amos.asepart.client.Repository;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures streaming the latest messages of a ticket through
+ * a cursor with several limits. The ticket holds 2000 messages.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageListBenchmark
+{
+    private static final String PROJECT_KEY = "benchmark-messages";
+    private static final int MESSAGES = 2000;
+
+    @Param({"10", "100", "1000"})
+    public int limit;
+
+    private int ticketId;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        try (Repository db = Repository.open())
+        {
+            db.deleteProject(PROJECT_KEY);
+            db.insertProject(PROJECT_KEY, "Message list benchmark", "admin");
+            db.insertTicket("Chat", "Ticket with many messages", "", "behavior", 1000, PROJECT_KEY);
+
+            ticketId = db.getTicketsOfProject(PROJECT_KEY, null).get(0).getId();
+
+            for (int i = 0; i < MESSAGES; i++)
+                db.sendMessage(i % 2 == 0 ? "user" : "admin", "Message number " + i, null, ticketId);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        try (Repository db = Repository.open())
+        {
+            db.deleteProject(PROJECT_KEY);
+        }
+    }
+
+    @Benchmark
+    public void streamMessages(Blackhole blackhole) throws Exception
+    {
+        try (Repository db = Repository.open())
+        {
+            db.streamMessages(ticketId, limit, blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package de.fau.cs.osr.amos.asepart.benchmark;
+
+import de.fau.cs.osr.amos.asepart.model.Message;
+import de.fau.cs.osr.amos.asepart.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures serialization of ticket and message lists, which are passed
+ * as lists of model rows to Jackson like in the web service. Besides JSON,
+ * the binary encodings CBOR and Smile can be requested by clients, the
+ * payload size of each encoding is printed during setup.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    private ObjectMapper mapper;
+
+    private List<Ticket> tickets;
+    private List<Message> messages;
+
+    private static JsonFactory createFactory(String format)
+    {
+        switch (format)
+        {
+            case "cbor":
+                return new CBORFactory();
+
+            case "smile":
+                return new SmileFactory();
+
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception
+    {
+        mapper = new ObjectMapper(createFactory(format));
+
+        tickets = new ArrayList<>(rows);
+        messages = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++)
+        {
+            tickets.add(new Ticket(i, "Ticket " + i, "There is an insufficient amount of pizza available.",
+                    "A developer is a tool which converts pizza into code.", "behavior", "open", 8, "pizza",
+                    3, 2, 5, 1, null));
+
+            messages.add(new Message(i, "user", 1530446400000L + i * 1000L,
+                    "Message number " + i + " about the pizza shortage.", null, null, 0));
+        }
+
+        System.out.println("Payload of " + rows + " rows as " + format + ": "
+                + serializeTickets().length + " bytes (tickets), " + serializeMessages().length + " bytes (messages)");
+    }
+
+    @Benchmark
+    public byte[] serializeTickets() throws Exception
+    {
+        return mapper.writeValueAsBytes(tickets);
+    }
+
+    @Benchmark
+    public byte[] serializeMessages() throws Exception
+    {
+        return mapper.writeValueAsBytes(messages);
+    }
+}
@@ -0,0 +1,111 @@
+package de.fau.cs.osr.amos.asepart.benchmark;
+
+import de.fau.cs.osr.amos.asepart.client.FileStorageClient;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+import org.jcodec.api.awt.AWTSequenceEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures thumbnail generation of images (Thumbnailator) and
+ * videos (jcodec). Source files are generated locally, the
+ * file server is not involved.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThumbnailBenchmark
+{
+    private Path directory;
+
+    private File jpgImage;
+    private File pngImage;
+    private File mp4Video;
+
+    private static BufferedImage createImage(int width, int height, int frame)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setPaint(new GradientPaint(frame, 0, Color.ORANGE, width, height, Color.BLUE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.WHITE);
+        graphics.drawString("ASEPART " + frame, width / 2, height / 2);
+        graphics.dispose();
+
+        return image;
+    }
+
+    @Setup
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDirectory("asepart-benchmark-");
+
+        jpgImage = directory.resolve("image.jpg").toFile();
+        pngImage = directory.resolve("image.png").toFile();
+        mp4Video = directory.resolve("video.mp4").toFile();
+
+        ImageIO.write(createImage(1920, 1080, 0), "jpg", jpgImage);
+        ImageIO.write(createImage(1920, 1080, 0), "png", pngImage);
+
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(mp4Video, 25);
+
+        for (int frame = 0; frame < 25; frame++)
+            encoder.encodeImage(createImage(1280, 720, frame));
+
+        encoder.finish();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        for (File file : directory.toFile().listFiles())
+            Files.delete(file.toPath());
+
+        Files.delete(directory);
+    }
+
+    private File thumbnail(File source, String extension) throws Exception
+    {
+        File target = directory.resolve("thumbnail." + extension).toFile();
+        FileStorageClient.createThumbnail(source, target);
+
+        return target;
+    }
+
+    @Benchmark
+    public File jpgThumbnail() throws Exception
+    {
+        return thumbnail(jpgImage, "jpg");
+    }
+
+    @Benchmark
+    public File pngThumbnail() throws Exception
+    {
+        return thumbnail(pngImage, "png");
+    }
+
+    @Benchmark
+    public File videoThumbnail() throws Exception
+    {
+        return thumbnail(mp4Video, "png");
+    }
+}
@@ -0,0 +1,89 @@
+package de.fau.cs.osr.amos.asepart.benchmark;
+
+import de.fau.cs.osr.amos.asepart.client.Repository;
+import de.fau.cs.osr.amos.asepart.model.Ticket;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures listing the tickets of a project, including their statistics.
+ * The project is created with the given number of tickets, every
+ * second ticket is accepted and observed by the test user.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TicketListBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int tickets;
+
+    private String projectKey;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        projectKey = "benchmark-tickets-" + tickets;
+
+        try (Repository db = Repository.open())
+        {
+            db.deleteProject(projectKey);
+            db.insertProject(projectKey, "Ticket list benchmark", "admin");
+            db.joinProject("user", projectKey);
+
+            for (int i = 0; i < tickets; i++)
+                db.insertTicket("Ticket " + i, "Summary of ticket " + i, "Description of ticket " + i, "behavior", 1000, projectKey);
+
+            for (Ticket ticket : db.getTicketsOfProject(projectKey, null))
+            {
+                final int id = ticket.getId();
+
+                if (id % 2 == 0)
+                {
+                    db.acceptTicket("user", id);
+                    db.submitObservation("user", id, "positive", 2);
+                    db.submitObservation("user", id, "negative", 1);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        try (Repository db = Repository.open())
+        {
+            db.deleteProject(projectKey);
+        }
+    }
+
+    @Benchmark
+    public List<Ticket> listAsAdmin() throws Exception
+    {
+        try (Repository db = Repository.open())
+        {
+            return db.getTicketsOfProject(projectKey, null);
+        }
+    }
+
+    @Benchmark
+    public List<Ticket> listAsUser() throws Exception
+    {
+        try (Repository db = Repository.open())
+        {
+            return db.getTicketsOfProject(projectKey, "user");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package de.fau.cs.osr.amos.asepart.benchmark;
+
+import de.fau.cs.osr.amos.asepart.ext.WorkerThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares Grizzly's worker pool with virtual threads under mixed traffic.
+ * Most clients call an endpoint blocking for 100 ms, like a slow query or
+ * upload, while the others call an endpoint returning immediately.
+ * With the worker pool, fast requests queue behind the slow ones.
+ *
+ * The slow endpoint sleeps, which unmounts a virtual thread. A query
+ * pins its carrier thread instead, see WorkerThreads, so the results
+ * are an upper bound for database-bound requests.
+ *
+ * The "virtual" parameter requires Java 21 or later.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WorkerThreadBenchmark
+{
+    private static final long SLOW_MILLIS = 100;
+
+    @Path("/")
+    public static class Resource
+    {
+        @Path("slow")
+        @GET
+        public String slow() throws InterruptedException
+        {
+            Thread.sleep(SLOW_MILLIS);
+            return "slow";
+        }
+
+        @Path("fast")
+        @GET
+        public String fast()
+        {
+            return "fast";
+        }
+    }
+
+    @Param({"pool", "virtual"})
+    public String executor;
+
+    private HttpServer server;
+    private ExecutorService virtualThreads;
+
+    private URL slowUrl;
+    private URL fastUrl;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        final int port;
+
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            port = socket.getLocalPort();
+        }
+
+        final URI uri = URI.create("http://localhost:" + port + "/");
+        server = GrizzlyHttpServerFactory.createHttpServer(uri, new ResourceConfig(Resource.class), false);
+
+        if (executor.equals("virtual"))
+        {
+            virtualThreads = WorkerThreads.newVirtualThreadExecutor();
+
+            if (virtualThreads == null)
+                throw new IllegalStateException("Virtual threads require Java 21 or later.");
+
+            WorkerThreads.setExecutor(server, virtualThreads);
+        }
+
+        server.start();
+
+        slowUrl = uri.resolve("slow").toURL();
+        fastUrl = uri.resolve("fast").toURL();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        server.shutdownNow();
+
+        if (virtualThreads != null)
+            virtualThreads.shutdownNow();
+    }
+
+    private static int get(URL url) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        // read body completely, so that the connection is kept alive
+        try (InputStream in = connection.getInputStream())
+        {
+            byte[] buffer = new byte[256];
+
+            while (in.read(buffer) != -1);
+        }
+
+        if (connection.getResponseCode() != 200)
+            throw new IllegalStateException("Request failed with status " + connection.getResponseCode());
+
+        return connection.getResponseCode();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(48)
+    public int slow() throws IOException
+    {
+        return get(slowUrl);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(16)
+    public int fast() throws IOException
+    {
+        return get(fastUrl);
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * JMH benchmarks of the web service's hot paths. Benchmarks
+ * accessing the database expect a PostgreSQL instance configured
+ * like for the JUnit tests, see the web service's README section.
+ */
+
+package de.fau.cs.osr.amos.asepart.benchmark;
@@ -0,0 +1,44 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+import java.util.List;
+
+/**
+ * Simulates an admin using the web app: browses tickets with
+ * their statistics, observations, attachments and chat.
+ */
+
+class AdminScenario extends Scenario
+{
+    AdminScenario(Session session, String projectKey, List<Integer> ticketIds)
+    {
+        super(session, projectKey, ticketIds);
+    }
+
+    @Override
+    protected void start()
+    {
+        session.get("GET /login/admin", session.path("/login/admin"));
+    }
+
+    @Override
+    protected void step()
+    {
+        final int ticketId = randomTicket();
+        final int action = random().nextInt(100);
+
+        if (action < 30)
+            session.getList("GET /projects/{key}/tickets", session.path("/projects/" + projectKey + "/tickets"));
+        else if (action < 45)
+            session.get("GET /tickets/{id}", session.path("/tickets/" + ticketId));
+        else if (action < 60)
+            session.getList("GET /tickets/{id}/observations", session.path("/tickets/" + ticketId + "/observations"));
+        else if (action < 75)
+            session.getList("GET /tickets/{id}/attachments", session.path("/tickets/" + ticketId + "/attachments"));
+        else if (action < 85)
+            session.getList("GET /messages/{ticket}", session.path("/messages/" + ticketId).queryParam("limit", 20));
+        else if (action < 95)
+            session.getList("GET /projects/{key}/users", session.path("/projects/" + projectKey + "/users"));
+        else
+            session.getList("GET /projects", session.path("/projects"));
+    }
+}
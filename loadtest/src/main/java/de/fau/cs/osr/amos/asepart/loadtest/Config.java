@@ -0,0 +1,54 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+/**
+ * Configuration of a load test run, read from environment variables:
+ *
+ * ASEPART_LOADTEST_URL: base URL of the web service (default http://localhost:12345/).
+ * ASEPART_LOADTEST_ADMIN, ASEPART_LOADTEST_PASSWORD: admin account used for setup (default admin/admin).
+ * ASEPART_LOADTEST_TESTERS: number of simulated mobile testers (default 20).
+ * ASEPART_LOADTEST_ADMINS: number of simulated admins (default 2).
+ * ASEPART_LOADTEST_TICKETS: number of tickets in the test project (default 20).
+ * ASEPART_LOADTEST_RAMP_UP: seconds until all simulated accounts are active (default 10).
+ * ASEPART_LOADTEST_DURATION: seconds the test runs in total, including ramp-up (default 60).
+ * ASEPART_LOADTEST_THINK_TIME: mean pause between two actions in milliseconds (default 1000).
+ */
+
+class Config
+{
+    final String url = getString("ASEPART_LOADTEST_URL", "http://localhost:12345/");
+    final String admin = getString("ASEPART_LOADTEST_ADMIN", "admin");
+    final String password = getString("ASEPART_LOADTEST_PASSWORD", "admin");
+
+    final int testers = getInteger("ASEPART_LOADTEST_TESTERS", 20);
+    final int admins = getInteger("ASEPART_LOADTEST_ADMINS", 2);
+    final int tickets = getInteger("ASEPART_LOADTEST_TICKETS", 20);
+
+    final int rampUpSeconds = getInteger("ASEPART_LOADTEST_RAMP_UP", 10);
+    final int durationSeconds = getInteger("ASEPART_LOADTEST_DURATION", 60);
+    final int thinkTimeMillis = getInteger("ASEPART_LOADTEST_THINK_TIME", 1000);
+
+    private static String getString(String name, String defaultValue)
+    {
+        final String value = System.getenv(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int getInteger(String name, int defaultValue)
+    {
+        final String value = System.getenv(name);
+
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+
+        catch (NumberFormatException e)
+        {
+            System.err.println("Environment variable " + name + " is invalid, using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+
+/**
+ * Drives a running web service with simulated testers and admins and
+ * prints latency percentiles, throughput and error rates per endpoint.
+ * See Config for available settings.
+ *
+ * The load test creates its own admin, project, tickets and tester
+ * accounts, all named with prefix "loadtest_", and deletes them afterwards.
+ */
+
+public class LoadTest
+{
+    private static final String PREFIX = "loadtest_";
+    private static final String PROJECT_KEY = PREFIX + "project";
+    private static final String ADMIN = PREFIX + "admin";
+
+    private static byte[] createScreenshot() throws IOException
+    {
+        BufferedImage image = new BufferedImage(540, 960, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setPaint(new GradientPaint(0, 0, Color.WHITE, 540, 960, Color.GRAY));
+        graphics.fillRect(0, 0, 540, 960);
+        graphics.setColor(Color.RED);
+        graphics.drawString("Screenshot of a bug", 200, 480);
+        graphics.dispose();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        return png.toByteArray();
+    }
+
+    private static void require(boolean success, String action)
+    {
+        if (!success)
+            throw new IllegalStateException("Load test setup failed: " + action);
+    }
+
+    private static String tester(int i)
+    {
+        return PREFIX + "tester_" + i;
+    }
+
+    private static List<Integer> setup(Config config, WebTarget target)
+    {
+        Session root = new Session(target, config.admin, config.password, null);
+
+        Map<String, String> admin = new HashMap<>(4);
+        admin.put("loginName", ADMIN);
+        admin.put("firstName", "Load");
+        admin.put("lastName", "Test");
+        admin.put("password", ADMIN);
+
+        require(root.post("", root.path("/admins"), Entity.json(admin)), "create admin " + ADMIN);
+
+        Session owner = new Session(target, ADMIN, ADMIN, null);
+
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", PROJECT_KEY);
+        project.put("name", "Load Test Project");
+        project.put("owner", ADMIN);
+
+        require(owner.post("", owner.path("/projects"), Entity.json(project)), "create project " + PROJECT_KEY);
+
+        for (int i = 0; i < config.tickets; i++)
+        {
+            Map<String, String> ticket = new HashMap<>(6);
+            ticket.put("projectKey", PROJECT_KEY);
+            ticket.put("name", "Ticket " + i);
+            ticket.put("summary", "Summary of ticket " + i);
+            ticket.put("description", "The app behaves strangely when doing step " + i + ".");
+            ticket.put("category", "behavior");
+            ticket.put("requiredObservations", "1000000"); // tickets must not be finished during test
+
+            require(owner.post("", owner.path("/tickets"), Entity.json(ticket)), "create ticket " + i);
+        }
+
+        for (int i = 0; i < config.testers; i++)
+        {
+            Map<String, String> user = new HashMap<>(4);
+            user.put("loginName", tester(i));
+            user.put("firstName", "Tester");
+            user.put("lastName", String.valueOf(i));
+            user.put("phoneNumber", "+49" + (1510000000L + i));
+            user.put("password", tester(i));
+
+            require(root.post("", root.path("/users"), Entity.json(user)), "create user " + tester(i));
+        }
+
+        List<Integer> ticketIds = new ArrayList<>(config.tickets);
+        List<Map<String, String>> tickets = owner.getList("", owner.path("/projects/" + PROJECT_KEY + "/tickets"));
+
+        require(tickets != null && !tickets.isEmpty(), "list tickets");
+
+        for (Map<String, String> ticket : tickets)
+            ticketIds.add(Integer.parseInt(ticket.get("id")));
+
+        return ticketIds;
+    }
+
+    private static void tearDown(Config config, WebTarget target)
+    {
+        Session root = new Session(target, config.admin, config.password, null);
+
+        for (int i = 0; i < config.testers; i++)
+            root.delete("", root.path("/users/" + tester(i)));
+
+        // also deletes project, tickets and attachments
+        root.delete("", root.path("/admins/" + ADMIN));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        final Config config = new Config();
+        final int accounts = config.testers + config.admins;
+
+        // HttpURLConnection keeps only five idle connections per host by default
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(5, accounts)));
+
+        Client client = ClientBuilder.newBuilder().register(MultiPartFeature.class).build();
+        WebTarget target = client.target(config.url);
+
+        tearDown(config, target); // remove leftovers of an aborted run
+
+        final List<Integer> ticketIds = setup(config, target);
+        final byte[] screenshot = createScreenshot();
+        final Statistics statistics = new Statistics();
+
+        List<Scenario> scenarios = new ArrayList<>(accounts);
+
+        for (int i = 0; i < config.testers; i++)
+            scenarios.add(new TesterScenario(new Session(target, tester(i), tester(i), statistics), PROJECT_KEY, ticketIds, screenshot));
+
+        for (int i = 0; i < config.admins; i++)
+            scenarios.add(new AdminScenario(new Session(target, ADMIN, ADMIN, statistics), PROJECT_KEY, ticketIds));
+
+        Collections.shuffle(scenarios, new Random(0)); // mix testers and admins during ramp-up
+
+        System.out.println("Running load test with " + config.testers + " testers and " + config.admins + " admins for "
+                + config.durationSeconds + " s, ramp-up " + config.rampUpSeconds + " s.");
+
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, accounts));
+
+        for (int i = 0; i < scenarios.size(); i++)
+        {
+            final Scenario scenario = scenarios.get(i);
+            final long delay = TimeUnit.SECONDS.toMillis(config.rampUpSeconds) * i / Math.max(1, accounts);
+
+            scenario.schedule(delay, deadline, config.thinkTimeMillis);
+            executor.submit(scenario);
+        }
+
+        executor.shutdown();
+
+        if (!executor.awaitTermination(config.durationSeconds + 60, TimeUnit.SECONDS))
+            executor.shutdownNow();
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        statistics.print(System.out, seconds);
+
+        tearDown(config, target);
+        client.close();
+    }
+}
@@ -0,0 +1,89 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simulated account repeatedly performing actions until the end
+ * of the test run, pausing for a random think time between actions.
+ */
+
+abstract class Scenario implements Runnable
+{
+    protected final Session session;
+    protected final String projectKey;
+    protected final List<Integer> ticketIds;
+
+    private long startDelayMillis;
+    private long deadline;
+    private int thinkTimeMillis;
+
+    Scenario(Session session, String projectKey, List<Integer> ticketIds)
+    {
+        this.session = session;
+        this.projectKey = projectKey;
+        this.ticketIds = ticketIds;
+    }
+
+    /**
+     * @param startDelayMillis Time to wait before the first action, used for ramp-up.
+     * @param deadline Value of System.nanoTime() at which the scenario stops.
+     * @param thinkTimeMillis Mean pause between two actions.
+     */
+
+    void schedule(long startDelayMillis, long deadline, int thinkTimeMillis)
+    {
+        this.startDelayMillis = startDelayMillis;
+        this.deadline = deadline;
+        this.thinkTimeMillis = thinkTimeMillis;
+    }
+
+    protected static ThreadLocalRandom random()
+    {
+        return ThreadLocalRandom.current();
+    }
+
+    protected int randomTicket()
+    {
+        return ticketIds.get(random().nextInt(ticketIds.size()));
+    }
+
+    /**
+     * Called once before the first step, e.g. to log in.
+     */
+
+    protected abstract void start();
+
+    /**
+     * Performs a single action chosen at random.
+     */
+
+    protected abstract void step();
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            Thread.sleep(startDelayMillis);
+            start();
+
+            while (System.nanoTime() < deadline)
+            {
+                step();
+
+                // uniformly distributed around the mean think time
+                final long pause = thinkTimeMillis > 0 ? random().nextLong(thinkTimeMillis / 2, thinkTimeMillis * 3L / 2 + 1) : 0;
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+                Thread.sleep(Math.max(0, Math.min(pause, remaining)));
+            }
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Sends requests on behalf of one account and records their
+ * latency and outcome. Responses with a status of 400 or above
+ * and failed connections are counted as errors.
+ */
+
+class Session
+{
+    static final GenericType<List<Map<String, String>>> LIST_TYPE = new GenericType<List<Map<String, String>>>() {};
+
+    private final WebTarget base;
+    private final String authorization;
+    private final Statistics statistics;
+
+    /**
+     * @param target Base URL of web service.
+     * @param loginName The account name.
+     * @param password The account's password.
+     * @param statistics Statistics requests are recorded in, or null to not record requests.
+     */
+
+    Session(WebTarget target, String loginName, String password, Statistics statistics)
+    {
+        final String credentials = loginName + ":" + password;
+
+        this.base = target;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param path Path relative to base URL.
+     * @return Target for sending requests.
+     */
+
+    WebTarget path(String path)
+    {
+        return base.path(path);
+    }
+
+    /**
+     * Sends a request and reads its response.
+     *
+     * @param endpoint Name of endpoint in report.
+     * @param target Actual target of request.
+     * @param call Sends the request.
+     * @param reader Reads the response, only called on success.
+     * @return Result of reader, or null if request failed.
+     */
+
+    <T> T call(String endpoint, WebTarget target, Function<Invocation.Builder, Response> call, Function<Response, T> reader)
+    {
+        final long start = System.nanoTime();
+        boolean error = true;
+
+        try (Response response = call.apply(target.request().header("Authorization", authorization)))
+        {
+            T result = null;
+
+            if (response.getStatus() < 400)
+            {
+                result = reader.apply(response);
+                error = false;
+            }
+
+            else consume(response);
+
+            return result;
+        }
+
+        catch (RuntimeException e)
+        {
+            return null;
+        }
+
+        finally
+        {
+            if (statistics != null)
+                statistics.record(endpoint, System.nanoTime() - start, error);
+        }
+    }
+
+    // read body, so that the connection can be reused
+    private static String consume(Response response)
+    {
+        return response.hasEntity() ? response.readEntity(String.class) : "";
+    }
+
+    List<Map<String, String>> getList(String endpoint, WebTarget target)
+    {
+        return call(endpoint, target, Invocation.Builder::get, response -> response.readEntity(LIST_TYPE));
+    }
+
+    boolean get(String endpoint, WebTarget target)
+    {
+        return call(endpoint, target, Invocation.Builder::get, Session::consume) != null;
+    }
+
+    boolean post(String endpoint, WebTarget target, Entity<?> entity)
+    {
+        return call(endpoint, target, request -> request.post(entity), Session::consume) != null;
+    }
+
+    boolean delete(String endpoint, WebTarget target)
+    {
+        return call(endpoint, target, Invocation.Builder::delete, Session::consume) != null;
+    }
+}
@@ -0,0 +1,84 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Collects latencies and errors per endpoint. Endpoints are identified
+ * by HTTP method and path template, e.g. "GET /tickets/{id}".
+ * Recording is thread-safe.
+ */
+
+class Statistics
+{
+    // latencies are recorded in microseconds, up to one minute
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    private static class Endpoint
+    {
+        private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY, 3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private final ConcurrentSkipListMap<String, Endpoint> endpoints = new ConcurrentSkipListMap<>();
+
+    void record(String endpoint, long nanos, boolean error)
+    {
+        Endpoint statistics = endpoints.computeIfAbsent(endpoint, key -> new Endpoint());
+
+        statistics.latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY));
+
+        if (error)
+            statistics.errors.increment();
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram latencies, long errors, double seconds)
+    {
+        final long count = latencies.getTotalCount();
+
+        out.println(String.format(Locale.ROOT, "%-40s %8d %7.1f %6.2f%% %9.1f %9.1f %9.1f %9.1f %9.1f",
+                name, count, count / seconds, count > 0 ? 100.0 * errors / count : 0.0,
+                latencies.getValueAtPercentile(50) / 1000.0,
+                latencies.getValueAtPercentile(90) / 1000.0,
+                latencies.getValueAtPercentile(95) / 1000.0,
+                latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getMaxValue() / 1000.0));
+    }
+
+    /**
+     * Prints request count, throughput, error rate and latency
+     * percentiles in milliseconds per endpoint and in total.
+     *
+     * @param out Stream the report is printed to.
+     * @param seconds Duration of the test run.
+     */
+
+    void print(PrintStream out, double seconds)
+    {
+        Histogram total = new Histogram(MAX_LATENCY, 3);
+        long totalErrors = 0;
+
+        out.println(String.format(Locale.ROOT, "%-40s %8s %7s %7s %9s %9s %9s %9s %9s",
+                "Endpoint", "Requests", "Req/s", "Errors", "p50 ms", "p90 ms", "p95 ms", "p99 ms", "max ms"));
+
+        for (Map.Entry<String, Endpoint> endpoint : endpoints.entrySet())
+        {
+            final Histogram latencies = endpoint.getValue().latencies.copy();
+            final long errors = endpoint.getValue().errors.sum();
+
+            printRow(out, endpoint.getKey(), latencies, errors, seconds);
+
+            total.add(latencies);
+            totalErrors += errors;
+        }
+
+        printRow(out, "Total", total, totalErrors, seconds);
+    }
+}
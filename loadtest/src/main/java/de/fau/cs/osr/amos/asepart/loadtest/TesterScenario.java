@@ -0,0 +1,88 @@
+package de.fau.cs.osr.amos.asepart.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.ws.rs.client.Entity;
+
+import org.glassfish.jersey.media.multipart.FormDataMultiPart;
+import org.glassfish.jersey.media.multipart.MultiPart;
+import org.glassfish.jersey.media.multipart.file.StreamDataBodyPart;
+
+/**
+ * Simulates a tester using the mobile app: joins the project, browses
+ * tickets, accepts them, submits observations, polls and writes chat
+ * messages and uploads screenshots.
+ */
+
+class TesterScenario extends Scenario
+{
+    private final byte[] screenshot;
+    private final Set<Integer> accepted = new HashSet<>();
+
+    TesterScenario(Session session, String projectKey, List<Integer> ticketIds, byte[] screenshot)
+    {
+        super(session, projectKey, ticketIds);
+        this.screenshot = screenshot;
+    }
+
+    @Override
+    protected void start()
+    {
+        session.get("GET /login/user", session.path("/login/user"));
+        session.post("POST /join", session.path("/join"), Entity.text(projectKey));
+    }
+
+    private void accept(int ticketId)
+    {
+        if (session.post("POST /tickets/{id}/accept", session.path("/tickets/" + ticketId + "/accept"), Entity.text("")))
+            accepted.add(ticketId);
+    }
+
+    private void observe(int ticketId)
+    {
+        Map<String, String> observation = new HashMap<>(2);
+        observation.put("outcome", random().nextInt(4) == 0 ? "negative" : "positive");
+        observation.put("quantity", String.valueOf(1 + random().nextInt(3)));
+
+        session.post("POST /tickets/{id}/observations", session.path("/tickets/" + ticketId + "/observations"), Entity.json(observation));
+    }
+
+    private void upload(int ticketId)
+    {
+        MultiPart form = new FormDataMultiPart()
+                .bodyPart(new StreamDataBodyPart("file", new ByteArrayInputStream(screenshot), "screenshot.png"));
+
+        session.post("POST /files/{ticket}", session.path("/files/" + ticketId), Entity.entity(form, form.getMediaType()));
+    }
+
+    @Override
+    protected void step()
+    {
+        final int ticketId = randomTicket();
+        final int action = random().nextInt(100);
+
+        if (action < 30)
+            session.getList("GET /messages/{ticket}", session.path("/messages/" + ticketId).queryParam("limit", 20));
+        else if (action < 50)
+            session.getList("GET /projects/{key}/tickets", session.path("/projects/" + projectKey + "/tickets"));
+        else if (action < 60)
+            session.get("GET /tickets/{id}", session.path("/tickets/" + ticketId));
+        else if (action < 80)
+        {
+            if (accepted.contains(ticketId))
+                observe(ticketId);
+            else
+                accept(ticketId);
+        }
+        else if (action < 90)
+            session.post("POST /messages/{ticket}", session.path("/messages/" + ticketId), Entity.text("Observed it again on my phone."));
+        else if (action < 95)
+            session.getList("GET /projects", session.path("/projects"));
+        else
+            upload(ticketId);
+    }
+}
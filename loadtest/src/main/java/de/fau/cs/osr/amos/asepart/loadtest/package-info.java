@@ -0,0 +1,7 @@
+/**
+ * This package contains a load generator which replays tester
+ * and admin workflows against a running web service and reports
+ * latency, throughput and errors per endpoint.
+ */
+
+package de.fau.cs.osr.amos.asepart.loadtest;
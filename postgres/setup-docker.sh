@@ -2,8 +2,11 @@
 
 docker network create asepart-network
 
-docker pull postgres
-docker run -e POSTGRES_PASSWORD=asepart -p 5432:5432 --network asepart-network --name asepart-postgres -d postgres 
+# migrations need PostgreSQL 12 or later, see webservice/src/main/resources/db/migration
+IMAGE=postgres:14
+
+docker pull $IMAGE
+docker run -e POSTGRES_PASSWORD=asepart -p 5432:5432 --network asepart-network --name asepart-postgres -d $IMAGE
 
 echo "Waiting for postgres startup..."
 sleep 60 # TODO find better way to do this
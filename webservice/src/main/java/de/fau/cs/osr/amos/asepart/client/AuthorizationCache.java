@@ -0,0 +1,177 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches authorization relevant facts across requests:
+ * ownership, membership and finished flag per (account, project),
+ * and the project of each ticket.
+ *
+ * Entries are removed by the DatabaseClient methods changing these
+ * facts. Loaded entries are only kept if no invalidation happened
+ * while they were loaded, so a concurrent change is never hidden.
+ * Both maps are bounded; when full, arbitrary entries are evicted.
+ * A maximum size of zero disables caching.
+ */
+
+public class AuthorizationCache
+{
+    private static final class Key
+    {
+        private final String loginName;
+        private final String projectKey;
+
+        Key(String loginName, String projectKey)
+        {
+            this.loginName = loginName;
+            this.projectKey = projectKey;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+            return loginName.equals(other.loginName) && projectKey.equals(other.projectKey);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(loginName, projectKey);
+        }
+    }
+
+    private final int maxSize;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ConcurrentHashMap<Key, Map<String, String>> projects = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> tickets = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize Maximum number of entries per map.
+     */
+
+    public AuthorizationCache(int maxSize)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Cache size must not be negative.");
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Must be called before loading an entry from the database,
+     * the result has to be passed to the put methods.
+     *
+     * @return Current generation of cache.
+     */
+
+    public long generation()
+    {
+        return generation.get();
+    }
+
+    private <K, V> void put(ConcurrentHashMap<K, V> map, long loadedGeneration, K key, V value)
+    {
+        if (maxSize == 0 || generation.get() != loadedGeneration)
+            return;
+
+        if (map.size() >= maxSize)
+        {
+            Iterator<K> it = map.keySet().iterator();
+
+            for (int i = 0; i <= maxSize / 10 && it.hasNext(); i++)
+            {
+                it.next();
+                it.remove();
+            }
+        }
+
+        map.put(key, value);
+
+        // an invalidation may have happened between check and put
+        if (generation.get() != loadedGeneration)
+            map.remove(key, value);
+    }
+
+    /**
+     * @param loginName The account name.
+     * @param projectKey Unique key of project.
+     * @return Cached access information, or null if not cached.
+     */
+
+    public Map<String, String> getProjectAccess(String loginName, String projectKey)
+    {
+        return projects.get(new Key(loginName, projectKey));
+    }
+
+    public void putProjectAccess(long loadedGeneration, String loginName, String projectKey, Map<String, String> access)
+    {
+        put(projects, loadedGeneration, new Key(loginName, projectKey), Collections.unmodifiableMap(access));
+    }
+
+    /**
+     * @param ticketId Unique ticket id.
+     * @return Cached project key of ticket, or null if not cached.
+     */
+
+    public String getTicketProject(int ticketId)
+    {
+        return tickets.get(ticketId);
+    }
+
+    public void putTicketProject(long loadedGeneration, int ticketId, String projectKey)
+    {
+        put(tickets, loadedGeneration, ticketId, projectKey);
+    }
+
+    /**
+     * Call if an account joined or left a project.
+     */
+
+    public void invalidateMembership(String loginName, String projectKey)
+    {
+        generation.incrementAndGet();
+        projects.remove(new Key(loginName, projectKey));
+    }
+
+    /**
+     * Call if a project was changed or deleted.
+     */
+
+    public void invalidateProject(String projectKey)
+    {
+        generation.incrementAndGet();
+        projects.keySet().removeIf(key -> key.projectKey.equals(projectKey));
+        tickets.values().removeIf(projectKey::equals);
+    }
+
+    /**
+     * Call if a ticket was deleted.
+     */
+
+    public void invalidateTicket(int ticketId)
+    {
+        generation.incrementAndGet();
+        tickets.remove(ticketId);
+    }
+
+    /**
+     * Call if changes may affect arbitrary entries, e.g. cascading deletes.
+     */
+
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        projects.clear();
+        tickets.clear();
+    }
+}
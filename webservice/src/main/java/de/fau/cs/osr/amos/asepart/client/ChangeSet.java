@@ -0,0 +1,140 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Projects, tickets and messages which changed for an account since a
+ * sync token, as returned by getChanges(). Only keys are collected, the
+ * current state of changed items has to be queried separately.
+ *
+ * Tokens are opaque to clients. The same change may be reported more than
+ * once, but no change committed after a token is missed by a later sync.
+ */
+
+public class ChangeSet
+{
+    private final long token;
+    private final boolean expired;
+
+    private final Set<String> projects = new HashSet<>();
+    private final Set<String> access = new HashSet<>();
+    private final Map<String, Set<Integer>> tickets = new HashMap<>();
+    private final Map<String, Set<Integer>> messages = new HashMap<>();
+
+    /**
+     * @param token Token to request the changes following this set.
+     */
+
+    public ChangeSet(long token)
+    {
+        this(token, false);
+    }
+
+    /**
+     * @param token Token to request the changes following this set.
+     * @param expired true if the previous token is older than the change log.
+     */
+
+    public ChangeSet(long token, boolean expired)
+    {
+        this.token = token;
+        this.expired = expired;
+    }
+
+    /**
+     * Adds an entry of the change log.
+     *
+     * @param entity One of project, membership, ticket or message.
+     * @param projectKey Key of project the entry belongs to.
+     * @param entityId Project key, account name, ticket id or message id.
+     */
+
+    public void add(String entity, String projectKey, String entityId)
+    {
+        switch (entity)
+        {
+            case "project":
+                projects.add(projectKey);
+                break;
+
+            case "membership":
+                access.add(projectKey);
+                break;
+
+            case "ticket":
+                tickets.computeIfAbsent(projectKey, k -> new HashSet<>()).add(Integer.valueOf(entityId));
+                break;
+
+            case "message":
+                messages.computeIfAbsent(projectKey, k -> new HashSet<>()).add(Integer.valueOf(entityId));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown entity: " + entity);
+        }
+    }
+
+    public long getToken()
+    {
+        return token;
+    }
+
+    /**
+     * @return true if entries after the previous token have been pruned from
+     *         the change log. The set is empty, the account has to sync in full.
+     */
+
+    public boolean isExpired()
+    {
+        return expired;
+    }
+
+    /**
+     * @return true if nothing changed since the previous token.
+     */
+
+    public boolean isEmpty()
+    {
+        return projects.isEmpty() && access.isEmpty() && tickets.isEmpty() && messages.isEmpty();
+    }
+
+    /**
+     * @return Keys of projects whose name, owner or finished flag changed.
+     */
+
+    public Set<String> getProjects()
+    {
+        return projects;
+    }
+
+    /**
+     * @return Keys of projects the account joined, left or gained or lost
+     *         ownership of. These projects have to be synced in full.
+     */
+
+    public Set<String> getAccess()
+    {
+        return access;
+    }
+
+    /**
+     * @return Ids of tickets whose details, status or statistics changed, by project key.
+     */
+
+    public Map<String, Set<Integer>> getTickets()
+    {
+        return tickets;
+    }
+
+    /**
+     * @return Ids of new or changed messages, by project key.
+     */
+
+    public Map<String, Set<Integer>> getMessages()
+    {
+        return messages;
+    }
+}
@@ -1,16 +1,30 @@
 package de.fau.cs.osr.amos.asepart.client;
 
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+import de.fau.cs.osr.amos.asepart.model.Admin;
+import de.fau.cs.osr.amos.asepart.model.Attachment;
+import de.fau.cs.osr.amos.asepart.model.FileInfo;
+import de.fau.cs.osr.amos.asepart.model.Message;
+import de.fau.cs.osr.amos.asepart.model.Observation;
+import de.fau.cs.osr.amos.asepart.model.Project;
+import de.fau.cs.osr.amos.asepart.model.Ticket;
+import de.fau.cs.osr.amos.asepart.model.User;
+
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 
 import org.postgresql.ds.PGSimpleDataSource;
 
@@ -23,9 +37,22 @@ import org.postgresql.ds.PGSimpleDataSource;
  * If this variable is not present, the hostname can be set
  * using ASEPART_POSTGRES_HOST, which can be useful for
  * connecting Docker containers.
+ *
+ * Authorization lookups are cached across requests. The number of
+ * cached entries can be set using ASEPART_AUTHORIZATION_CACHE_SIZE,
+ * setting it to 0 disables the cache.
+ *
+ * Connections are pooled, the pool size can be set using
+ * ASEPART_POOL_SIZE (default 10). If ASEPART_REPLICA_JDBC_URL is set,
+ * read-only queries are sent to that read replica. Reads of an account
+ * go to the primary database for ASEPART_REPLICA_LAG_MILLIS (default 5000)
+ * after it wrote, so that it always sees its own changes.
+ *
+ * Streamed queries fetch their rows through a cursor in batches of
+ * ASEPART_STREAM_FETCH_SIZE rows (default 500).
  */
 
-public class DatabaseClient implements AutoCloseable
+public class DatabaseClient implements Repository
 {
     private static DataSource createDataSource()
     {
@@ -54,48 +81,236 @@ public class DatabaseClient implements AutoCloseable
         return ds;
     }
 
-    private static final DataSource ds = createDataSource();
-    private final Connection cn;
+    private static DataSource createReplicaDataSource()
+    {
+        final String jdbcUrl = System.getenv("ASEPART_REPLICA_JDBC_URL");
+
+        if (jdbcUrl == null)
+            return null;
+
+        PGSimpleDataSource ds = new PGSimpleDataSource();
+        ds.setUrl(jdbcUrl);
+
+        return ds;
+    }
+
+    private static int getEnvironmentInteger(String name, int defaultValue)
+    {
+        final String value = System.getenv(name);
+
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+
+        catch (NumberFormatException e)
+        {
+            System.err.println("Environment variable " + name + " is invalid, using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static AuthorizationCache createAuthorizationCache()
+    {
+        final String cacheSize = System.getenv("ASEPART_AUTHORIZATION_CACHE_SIZE");
+
+        if (cacheSize != null)
+        {
+            try
+            {
+                return new AuthorizationCache(Integer.parseInt(cacheSize));
+            }
+
+            catch (IllegalArgumentException e)
+            {
+                System.err.println("Environment variable ASEPART_AUTHORIZATION_CACHE_SIZE is invalid, using default.");
+            }
+        }
+
+        return new AuthorizationCache(10000);
+    }
+
+    private static final DatabaseRouter router = new DatabaseRouter(createDataSource(), createReplicaDataSource(),
+            getEnvironmentInteger("ASEPART_POOL_SIZE", 10), getEnvironmentInteger("ASEPART_REPLICA_LAG_MILLIS", 5000));
+    private static final AuthorizationCache authorizationCache = createAuthorizationCache();
+    private static final int streamFetchSize = getEnvironmentInteger("ASEPART_STREAM_FETCH_SIZE", 500);
+
+    static
+    {
+        for (String pool : router.getPoolStatistics().keySet())
+        {
+            for (String state : new String[] {"active", "idle", "total", "waiting", "max"})
+            {
+                Metrics.gauge("asepart_db_pool_connections", "Connections of database pool by state.",
+                        () -> router.getPoolStatistics().get(pool).get(state), "pool", pool, "state", state);
+            }
+        }
+    }
+
+    private Connection primaryConnection;
+    private Connection replicaConnection;
+
+    private String principal;
+    private boolean written = false;
+    private boolean pinned = false;
+
+    private final QueryStatistics statistics = new QueryStatistics();
 
-    public DatabaseClient() throws SQLException
+    /**
+     * Creates a new client. Connections are taken from the pool
+     * when they are needed for the first time.
+     */
+
+    public DatabaseClient()
     {
-        cn = ds.getConnection();
     }
 
     @Override
     public void close() throws Exception
     {
-        cn.close();
+        if (primaryConnection != null)
+            primaryConnection.close();
+
+        if (replicaConnection != null)
+            replicaConnection.close();
+    }
+
+    /**
+     * Sets the account this client acts for. After it has written,
+     * its reads are not routed to the read replica for a while.
+     *
+     * @param loginName The account name.
+     */
+
+    @Override
+    public void bindPrincipal(String loginName)
+    {
+        principal = loginName;
+    }
+
+    /**
+     * Returns number and execution time of statements issued by this client.
+     *
+     * @return Statistics of this client.
+     */
+
+    @Override
+    public QueryStatistics getQueryStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * Applies pending migrations to the primary database, see SchemaMigrator.
+     *
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public void migrateSchema() throws SQLException
+    {
+        SchemaMigrator.migrate(primary("migrateSchema"));
+    }
+
+    /**
+     * Returns utilization of the primary and replica connection pool.
+     *
+     * @return Map from pool name to pool statistics.
+     */
+
+    public static Map<String, Map<String, Integer>> getPoolStatistics()
+    {
+        return router.getPoolStatistics();
+    }
+
+    // operation names the calling method in the query metrics, see InstrumentedConnection
+    private Connection primary(String operation) throws SQLException
+    {
+        if (primaryConnection == null)
+            primaryConnection = router.getPrimaryConnection();
+
+        return InstrumentedConnection.wrap(primaryConnection, statistics, operation);
+    }
+
+    private Connection writer(String operation) throws SQLException
+    {
+        written = true;
+
+        if (principal != null)
+            markWritten(principal);
+
+        return primary(operation);
+    }
+
+    // for reads of other accounts' changes, e.g. sync tokens and versions: clients keep
+    // what they get until these change, so a lagging replica would hide changes for good
+    private Connection latest(String operation) throws SQLException
+    {
+        pinned = true;
+        return primary(operation);
+    }
+
+    private Connection reader(String operation) throws SQLException
+    {
+        if (!router.hasReplica() || written || pinned || (principal != null && router.hasRecentlyWritten(principal)))
+            return primary(operation);
+
+        if (replicaConnection == null)
+            replicaConnection = router.getReplicaConnection();
+
+        return InstrumentedConnection.wrap(replicaConnection, statistics, operation);
+    }
+
+    private void markWritten(String loginName)
+    {
+        router.markWritten(loginName);
     }
 
     /**
-     * Checks if authentication is valid.
+     * Checks if authentication is valid and determines the role of the account.
+     *
+     * Hash and role are fetched by a single statement, the role
+     * is given by the table of the account (tableoid).
      *
      * @param loginName The account name.
      * @param password The password as plain text.
-     * @return true if password is correct, false otherwise.
+     * @return "Admin" or "User" if password is correct, null otherwise.
      * @throws SQLException on database error.
      */
 
-    public boolean authenticate(String loginName, String password) throws SQLException
+    @Override
+    public String getAuthenticatedRole(String loginName, String password) throws SQLException
     {
-        try (PreparedStatement stmt = cn.prepareStatement("select count(login_name) from account where login_name = ? and password = crypt(?, password);"))
+        Connection cn = router.hasRecentlyWritten(loginName) ? primary("getAuthenticatedRole") : reader("getAuthenticatedRole");
+        String hash = null;
+        String role = null;
+
+        try (PreparedStatement stmt = cn.prepareStatement("select password, case tableoid when 'admin_account'::regclass then 'Admin' " +
+                "when 'user_account'::regclass then 'User' end from account where login_name = ?;"))
         {
             stmt.setString(1, loginName);
-            stmt.setString(2, password);
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                rs.next();
-                return (rs.getInt(1) == 1);
+                if (rs.next())
+                {
+                    hash = rs.getString(1);
+                    role = rs.getString(2);
+                }
             }
         }
+
+        return PasswordHasher.verify(password, hash) ? role : null;
     }
 
     /**
      * Changes password of user or admin account.
      *
-     * Passwords are stored in the database as a salted bcrypt hash.
+     * Passwords are stored in the database as a salted bcrypt hash,
+     * which is computed by PasswordHasher.
      *
      * @param loginName The account name.
      * @param password The password as plain text.
@@ -104,14 +319,20 @@ public class DatabaseClient implements AutoCloseable
      * @throws IllegalArgumentException if password is empty.
      */
 
+    @Override
     public void changePassword(String loginName, String password) throws SQLException
     {
         if (password == null || password.isEmpty())
             throw new IllegalArgumentException("Password must not be empty");
 
-        try (PreparedStatement stmt = cn.prepareStatement("update account set password = crypt(?, gen_salt('bf', 8)) where login_name = ?"))
+        final String hash = PasswordHasher.hash(password);
+
+        Connection cn = writer("changePassword");
+        markWritten(loginName); // account may log in right after its password was set
+
+        try (PreparedStatement stmt = cn.prepareStatement("update account set password = ? where login_name = ?"))
         {
-            stmt.setString(1, password);
+            stmt.setString(1, hash);
             stmt.setString(2, loginName);
 
             stmt.executeUpdate();
@@ -131,8 +352,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void insertUser(String loginName, String firstName, String lastName, String phoneNumber) throws SQLException
     {
+        Connection cn = writer("insertUser");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into user_account(login_name, first_name, last_name, phone_number) values (?, ?, ?, ?);"))
         {
             stmt.setString(1, loginName);
@@ -154,8 +378,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void updateUser(String loginName, String firstName, String lastName, String phoneNumber) throws SQLException
     {
+        Connection cn = writer("updateUser");
+
         try (PreparedStatement stmt = cn.prepareStatement(
                 "update user_account set first_name = ?, last_name = ?, phone_number = ? where login_name = ?;"))
         {
@@ -176,8 +403,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public boolean isUser(String loginName) throws SQLException
     {
+        Connection cn = reader("isUser");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(login_name) from only user_account where login_name = ?;");)
         {
             stmt.setString(1, loginName);
@@ -197,12 +427,15 @@ public class DatabaseClient implements AutoCloseable
      * Gets a user's account details.
      *
      * @param loginName The account name.
-     * @return A map containing the user's details.
+     * @return The user's details.
      * @throws SQLException on database error.
      */
 
-    public Map<String, String> getUser(String loginName) throws SQLException
+    @Override
+    public User getUser(String loginName) throws SQLException
     {
+        Connection cn = reader("getUser");
+
         try (PreparedStatement stmt = cn.prepareStatement("select login_name, first_name, last_name, phone_number from only user_account where login_name = ?;");)
         {
             stmt.setString(1, loginName);
@@ -211,43 +444,124 @@ public class DatabaseClient implements AutoCloseable
             {
                 rs.next();
 
-                Map<String, String> result = new HashMap<>(4);
-                result.put("loginName", rs.getString(1));
-                result.put("firstName", rs.getString(2));
-                result.put("lastName", rs.getString(3));
-                result.put("phoneNumber", rs.getString(4));
+                return new User(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+            }
+        }
+    }
 
-                return result;
+    private static Integer getInteger(ResultSet rs, int column) throws SQLException
+    {
+        final int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private interface RowReader<T>
+    {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    /* PostgreSQL only uses a cursor if a fetch size is set and the statement
+     * runs in a transaction, otherwise the driver reads the whole result
+     * into memory before the first row is returned.
+     */
+
+    private static <T> void streamRows(Connection cn, PreparedStatement stmt, RowReader<T> reader, RowWriter<T> writer) throws SQLException, IOException
+    {
+        final boolean autoCommit = cn.getAutoCommit();
+
+        try
+        {
+            cn.setAutoCommit(false);
+            stmt.setFetchSize(streamFetchSize);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                while (rs.next())
+                {
+                    writer.write(reader.read(rs));
+                }
             }
         }
+
+        finally
+        {
+            // ends the read-only transaction
+            cn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static String toPrefixPattern(String search)
+    {
+        return search.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /*
+     * The prefix search is served by indexes on lower() of each column
+     * using text_pattern_ops, pages continue after the last login name.
+     */
+
+    private static String getAccountPageQuery(String columns, String table, String search, String after)
+    {
+        StringBuilder sql = new StringBuilder("select ").append(columns).append(" from only ").append(table).append(" where true");
+
+        if (after != null)
+            sql.append(" and login_name > ?");
+
+        if (search != null)
+            sql.append(" and (lower(login_name) like ? or lower(first_name) like ? or lower(last_name) like ?)");
+
+        return sql.append(" order by login_name limit ?;").toString();
+    }
+
+    private static void setAccountPageParameters(PreparedStatement stmt, String search, String after, int limit) throws SQLException
+    {
+        int index = 1;
+
+        if (after != null)
+            stmt.setString(index++, after);
+
+        if (search != null)
+        {
+            final String pattern = toPrefixPattern(search);
+
+            for (int i = 0; i < 3; i++)
+                stmt.setString(index++, pattern);
+        }
+
+        stmt.setInt(index, limit);
     }
 
     /**
-     * Returns all users.
+     * Returns a page of users ordered by login name.
      *
-     * @return List of maps containing each user's details.
+     * @param search Only return users whose login name, first name or last name
+     *               starts with this prefix, ignoring case, or null for all.
+     * @param after Login name of the last user of the previous page, or null.
+     * @param limit Maximum number of users.
+     * @return List of users.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> listUsers() throws SQLException
+    @Override
+    public List<User> listUsers(String search, String after, int limit) throws SQLException
     {
-        try (Statement stmt = cn.createStatement();
-             ResultSet rs = stmt.executeQuery("select login_name, first_name, last_name, phone_number from only user_account;"))
+        Connection cn = reader("listUsers");
+
+        try (PreparedStatement stmt = cn.prepareStatement(getAccountPageQuery("login_name, first_name, last_name, phone_number", "user_account", search, after)))
         {
-            List<Map<String, String>> result = new LinkedList<>();
+            setAccountPageParameters(stmt, search, after, limit);
 
-            while (rs.next())
+            try (ResultSet rs = stmt.executeQuery())
             {
-                Map<String, String> row = new HashMap<>(4);
-                row.put("loginName", rs.getString(1));
-                row.put("firstName", rs.getString(2));
-                row.put("lastName", rs.getString(3));
-                row.put("phoneNumber", rs.getString(4));
+                List<User> result = new ArrayList<>(limit);
 
-                result.add(row);
-            }
+                while (rs.next())
+                {
+                    result.add(new User(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+                }
 
-            return result;
+                return result;
+            }
         }
     }
 
@@ -263,8 +577,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void insertAdmin(String loginName, String firstName, String lastName) throws SQLException
     {
+        Connection cn = writer("insertAdmin");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into admin_account(login_name, first_name, last_name) values (?, ?, ?);");)
         {
             stmt.setString(1, loginName);
@@ -284,8 +601,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void updateAdmin(String loginName, String firstName, String lastName) throws SQLException
     {
+        Connection cn = writer("updateAdmin");
+
         try (PreparedStatement stmt = cn.prepareStatement(
                 "update admin_account set first_name = ?, last_name = ? where login_name = ?;"))
         {
@@ -305,8 +625,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public boolean isAdmin(String loginName) throws SQLException
     {
+        Connection cn = reader("isAdmin");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(login_name) from only admin_account where login_name = ?;");)
         {
             stmt.setString(1, loginName);
@@ -326,12 +649,15 @@ public class DatabaseClient implements AutoCloseable
      * Gets an admin's account details.
      *
      * @param loginName The account name.
-     * @return A map containing the admin's details.
+     * @return The admin's details.
      * @throws SQLException on database error.
      */
 
-    public Map<String, String> getAdmin(String loginName) throws SQLException
+    @Override
+    public Admin getAdmin(String loginName) throws SQLException
     {
+        Connection cn = reader("getAdmin");
+
         try (PreparedStatement stmt = cn.prepareStatement("select login_name, first_name, last_name from only admin_account where login_name = ?;");)
         {
             stmt.setString(1, loginName);
@@ -340,41 +666,42 @@ public class DatabaseClient implements AutoCloseable
             {
                 rs.next();
 
-                Map<String, String> result = new HashMap<>(3);
-                result.put("loginName", rs.getString(1));
-                result.put("firstName", rs.getString(2));
-                result.put("lastName", rs.getString(3));
-
-                return result;
+                return new Admin(rs.getString(1), rs.getString(2), rs.getString(3));
             }
         }
     }
 
     /**
-     * Returns all admins.
+     * Returns a page of admins ordered by login name.
      *
-     * @return List of maps containing each admin's details.
+     * @param search Only return admins whose login name, first name or last name
+     *               starts with this prefix, ignoring case, or null for all.
+     * @param after Login name of the last admin of the previous page, or null.
+     * @param limit Maximum number of admins.
+     * @return List of admins.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> listAdmins() throws SQLException
+    @Override
+    public List<Admin> listAdmins(String search, String after, int limit) throws SQLException
     {
-        try (Statement stmt = cn.createStatement();
-             ResultSet rs = stmt.executeQuery("select login_name, first_name, last_name from only admin_account;"))
+        Connection cn = reader("listAdmins");
+
+        try (PreparedStatement stmt = cn.prepareStatement(getAccountPageQuery("login_name, first_name, last_name", "admin_account", search, after)))
         {
-            List<Map<String, String>> result = new LinkedList<>();
+            setAccountPageParameters(stmt, search, after, limit);
 
-            while (rs.next())
+            try (ResultSet rs = stmt.executeQuery())
             {
-                Map<String, String> row = new HashMap<>(3);
-                row.put("loginName", rs.getString(1));
-                row.put("firstName", rs.getString(2));
-                row.put("lastName", rs.getString(3));
+                List<Admin> result = new ArrayList<>(limit);
 
-                result.add(row);
-            }
+                while (rs.next())
+                {
+                    result.add(new Admin(rs.getString(1), rs.getString(2), rs.getString(3)));
+                }
 
-            return result;
+                return result;
+            }
         }
     }
 
@@ -385,13 +712,19 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void deleteAccount(String loginName) throws SQLException
     {
+        Connection cn = writer("deleteAccount");
+
         try (PreparedStatement stmt = cn.prepareStatement("delete from account where login_name = ?;");)
         {
             stmt.setString(1, loginName);
             stmt.executeUpdate();
         }
+
+        // deletion cascades to memberships, projects and tickets
+        authorizationCache.invalidateAll();
     }
 
     /**
@@ -403,8 +736,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void insertProject(String entryKey, String name, String owner) throws SQLException
     {
+        Connection cn = writer("insertProject");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into project(entry_key, name, owner) values (?, ?, ?);"))
         {
             stmt.setString(1, entryKey);
@@ -424,8 +760,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void updateProject(String entryKey, String name, String owner, boolean finished) throws SQLException
     {
+        Connection cn = writer("updateProject");
+
         try (PreparedStatement stmt = cn.prepareStatement(
                 "update project set name = ?, owner = ?, finished = ? where entry_key = ?;"))
         {
@@ -436,44 +775,23 @@ public class DatabaseClient implements AutoCloseable
 
             stmt.executeUpdate();
         }
-    }
-
-    /**
-     * Checks if a project with given key exists.
-     *
-     * @param entryKey Unique project key.
-     * @return true if project exists, false if not.
-     * @throws SQLException on database error.
-     */
-
-    public boolean isProject(String entryKey) throws SQLException
-    {
-        try (PreparedStatement stmt = cn.prepareStatement("select count(entry_key) from project where entry_key = ?;"))
-        {
-            stmt.setString(1, entryKey);
-
-            try (ResultSet rs = stmt.executeQuery())
-            {
-                rs.next();
-                int count = rs.getInt(1);
-
-                if (count == 1) return true;
-            }
-        }
 
-        return false;
+        authorizationCache.invalidateProject(entryKey);
     }
 
     /**
      * Get project's details.
      *
      * @param entryKey Unique project key.
-     * @return A map containing the project's details.
+     * @return The project's details.
      * @throws SQLException on database error.
      */
 
-    public Map<String, String> getProject(String entryKey) throws SQLException
+    @Override
+    public Project getProject(String entryKey) throws SQLException
     {
+        Connection cn = reader("getProject");
+
         try (PreparedStatement stmt = cn.prepareStatement("select entry_key, name, owner, finished from project where entry_key = ?;"))
         {
             stmt.setString(1, entryKey);
@@ -482,13 +800,7 @@ public class DatabaseClient implements AutoCloseable
             {
                 rs.next();
 
-                Map<String, String> result = new HashMap<>(4);
-                result.put("entryKey", rs.getString(1));
-                result.put("name", rs.getString(2));
-                result.put("owner", rs.getString(3));
-                result.put("finished", String.valueOf(rs.getBoolean(4)));
-
-                return result;
+                return new Project(rs.getString(1), rs.getString(2), rs.getString(3), rs.getBoolean(4));
             }
         }
     }
@@ -497,29 +809,26 @@ public class DatabaseClient implements AutoCloseable
      * Returns all projects owned by an specific admin.
      *
      * @param owner The account name of the admin.
-     * @return List of maps containing each project's details.
+     * @return List of projects.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> listProjects(String owner) throws SQLException
+    @Override
+    public List<Project> listProjects(String owner) throws SQLException
     {
+        Connection cn = reader("listProjects");
+
         try (PreparedStatement stmt = cn.prepareStatement("select entry_key, name, owner, finished from project where owner = ?;"))
         {
             stmt.setString(1, owner);
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                List<Map<String, String>> result = new LinkedList<>();
+                List<Project> result = new ArrayList<>();
 
                 while (rs.next())
                 {
-                    Map<String, String> row = new HashMap<>(4);
-                    row.put("entryKey", rs.getString(1));
-                    row.put("name", rs.getString(2));
-                    row.put("owner", rs.getString(3));
-                    row.put("finished", String.valueOf(rs.getBoolean(4)));
-
-                    result.add(row);
+                    result.add(new Project(rs.getString(1), rs.getString(2), rs.getString(3), rs.getBoolean(4)));
                 }
 
                 return result;
@@ -531,29 +840,26 @@ public class DatabaseClient implements AutoCloseable
      * Returns all projects a specific user has joined.
      *
      * @param user The account name of the user.
-     * @return List of maps containing each project's details.
+     * @return List of projects.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> listJoinedProjects(String user) throws SQLException
+    @Override
+    public List<Project> listJoinedProjects(String user) throws SQLException
     {
+        Connection cn = reader("listJoinedProjects");
+
         try (PreparedStatement stmt = cn.prepareStatement("select p.entry_key, p.name, p.owner, p.finished from project p join membership m on p.entry_key = m.project_key where m.login_name = ?;"))
         {
             stmt.setString(1, user);
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                List<Map<String, String>> result = new LinkedList<>();
+                List<Project> result = new ArrayList<>();
 
                 while (rs.next())
                 {
-                    Map<String, String> row = new HashMap<>(4);
-                    row.put("entryKey", rs.getString(1));
-                    row.put("name", rs.getString(2));
-                    row.put("owner", rs.getString(3));
-                    row.put("finished", String.valueOf(rs.getBoolean(4)));
-
-                    result.add(row);
+                    result.add(new Project(rs.getString(1), rs.getString(2), rs.getString(3), rs.getBoolean(4)));
                 }
 
                 return result;
@@ -570,25 +876,33 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void deleteProject(String entryKey) throws SQLException
     {
+        Connection cn = writer("deleteProject");
+
         try (PreparedStatement stmt = cn.prepareStatement("delete from project where entry_key = ?;"))
         {
             stmt.setString(1, entryKey);
             stmt.executeUpdate();
         }
+
+        authorizationCache.invalidateProject(entryKey);
     }
 
     /**
      * Returns all users that have joined a specific project.
      *
      * @param projectKey Unique key of project.
-     * @return List of maps containing each user's details.
+     * @return List of users.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> getUsersOfProject(String projectKey) throws SQLException
+    @Override
+    public List<User> getUsersOfProject(String projectKey) throws SQLException
     {
+        Connection cn = reader("getUsersOfProject");
+
         try (PreparedStatement stmt = cn.prepareStatement(
                 "select u.login_name, first_name, last_name, phone_number from only user_account u join membership m on u.login_name = m.login_name where m.project_key = ?;"))
         {
@@ -596,17 +910,11 @@ public class DatabaseClient implements AutoCloseable
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                List<Map<String, String>> result = new LinkedList<>();
+                List<User> result = new ArrayList<>();
 
                 while (rs.next())
                 {
-                    Map<String, String> row = new HashMap<>(4);
-                    row.put("loginName", rs.getString(1));
-                    row.put("firstName", rs.getString(2));
-                    row.put("lastName", rs.getString(3));
-                    row.put("phoneNumber", rs.getString(4));
-
-                    result.add(row);
+                    result.add(new User(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)));
                 }
 
                 return result;
@@ -623,8 +931,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public boolean isUserMemberOfProject(String loginName, String projectKey) throws SQLException
     {
+        Connection cn = reader("isUserMemberOfProject");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(*) from membership where login_name = ? and project_key = ?;"))
         {
             stmt.setString(1, loginName);
@@ -643,31 +954,109 @@ public class DatabaseClient implements AutoCloseable
     }
 
     /**
-     * Checks if an admin is owner of project.
+     * Resolves all facts needed for an authorization decision
+     * about a project with a single query.
      *
-     * @param loginName The account name of the admin.
+     * @param loginName The account name of the requesting user or admin.
      * @param projectKey Unique key of project.
-     * @return true if admin is owner of project, false if not.
+     * @return A map containing projectKey, owner, finished and member (whether
+     *         the account is member of the project), or null if project does not exist.
      * @throws SQLException on database error.
      */
 
-    public boolean isAdminOwnerOfProject(String loginName, String projectKey) throws SQLException
+    @Override
+    public Map<String, String> getProjectAccess(String loginName, String projectKey) throws SQLException
     {
-        try (PreparedStatement stmt = cn.prepareStatement("select count(*) from project where owner = ? and entry_key = ?;"))
+        Map<String, String> cached = authorizationCache.getProjectAccess(loginName, projectKey);
+
+        if (cached != null)
+            return cached;
+
+        // results are cached, so they must not be read from a lagging replica
+        Connection cn = primary("getProjectAccess");
+        final long generation = authorizationCache.generation();
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "select p.entry_key, p.owner, p.finished, exists(select 1 from membership m where m.project_key = p.entry_key and m.login_name = ?) " +
+                "from project p where p.entry_key = ?;"))
         {
             stmt.setString(1, loginName);
             stmt.setString(2, projectKey);
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                rs.next();
-                int count = rs.getInt(1);
+                if (!rs.next())
+                    return null;
 
-                if (count == 1) return true;
+                Map<String, String> result = new HashMap<>(4);
+                result.put("projectKey", rs.getString(1));
+                result.put("owner", rs.getString(2));
+                result.put("finished", String.valueOf(rs.getBoolean(3)));
+                result.put("member", String.valueOf(rs.getBoolean(4)));
+
+                authorizationCache.putProjectAccess(generation, loginName, projectKey, result);
+                return result;
             }
         }
+    }
 
-        return false;
+    /**
+     * Resolves all facts needed for an authorization decision
+     * about a ticket with a single query.
+     *
+     * @param loginName The account name of the requesting user or admin.
+     * @param ticketId Unique ticket id.
+     * @return A map containing ticketId, projectKey, owner, finished and member (whether
+     *         the account is member of the ticket's project), or null if ticket does not exist.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public Map<String, String> getTicketAccess(String loginName, int ticketId) throws SQLException
+    {
+        final String cachedProjectKey = authorizationCache.getTicketProject(ticketId);
+
+        if (cachedProjectKey != null)
+        {
+            Map<String, String> projectAccess = getProjectAccess(loginName, cachedProjectKey);
+
+            if (projectAccess != null)
+            {
+                Map<String, String> result = new HashMap<>(projectAccess);
+                result.put("ticketId", String.valueOf(ticketId));
+
+                return result;
+            }
+        }
+
+        Connection cn = primary("getTicketAccess");
+        final long generation = authorizationCache.generation();
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "select t.id, p.entry_key, p.owner, p.finished, exists(select 1 from membership m where m.project_key = p.entry_key and m.login_name = ?) " +
+                "from ticket t join project p on t.project_key = p.entry_key where t.id = ?;"))
+        {
+            stmt.setString(1, loginName);
+            stmt.setInt(2, ticketId);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                if (!rs.next())
+                    return null;
+
+                Map<String, String> result = new HashMap<>(5);
+                result.put("projectKey", rs.getString(2));
+                result.put("owner", rs.getString(3));
+                result.put("finished", String.valueOf(rs.getBoolean(4)));
+                result.put("member", String.valueOf(rs.getBoolean(5)));
+
+                authorizationCache.putTicketProject(generation, ticketId, result.get("projectKey"));
+                authorizationCache.putProjectAccess(generation, loginName, result.get("projectKey"), new HashMap<>(result));
+
+                result.put("ticketId", String.valueOf(rs.getInt(1)));
+                return result;
+            }
+        }
     }
 
     /**
@@ -678,8 +1067,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void joinProject(String loginName, String entryKey) throws SQLException
     {
+        Connection cn = writer("joinProject");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into membership values (?, ?);"))
         {
             stmt.setString(1, entryKey);
@@ -687,6 +1079,8 @@ public class DatabaseClient implements AutoCloseable
 
             stmt.executeUpdate();
         }
+
+        authorizationCache.invalidateMembership(loginName, entryKey);
     }
 
     /**
@@ -697,8 +1091,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void leaveProject(String loginName, String entryKey) throws SQLException
     {
+        Connection cn = writer("leaveProject");
+
         try (PreparedStatement stmt = cn.prepareStatement("delete from membership where login_name = ? and project_key = ?;"))
         {
             stmt.setString(1, loginName);
@@ -706,6 +1103,8 @@ public class DatabaseClient implements AutoCloseable
 
             stmt.executeUpdate();
         }
+
+        authorizationCache.invalidateMembership(loginName, entryKey);
     }
 
     /**
@@ -720,8 +1119,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void insertTicket(String name, String summary, String description, String category, int requiredObservations, String projectKey) throws SQLException
     {
+        Connection cn = writer("insertTicket");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into ticket(name, summary, description, category, required_obversations, project_key) values (?, ?, ?, cast(? as ticket_category), ?, ?);"))
         {
             stmt.setString(1, name);
@@ -747,8 +1149,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void updateTicket(int id, String name, String summary, String description, String category, int requiredObservations) throws SQLException
     {
+        Connection cn = writer("updateTicket");
+
         try (PreparedStatement stmt = cn.prepareStatement(
                 "update ticket set name = ?, summary = ?, description = ?, category = cast(? as ticket_category), required_obversations = ? where id = ?;"))
         {
@@ -764,63 +1169,214 @@ public class DatabaseClient implements AutoCloseable
     }
 
     /**
-     * Checks if ticket id is valid.
+     * Get ticket details.
      *
      * @param id Unique id of ticket.
-     * @return true if valid, false if invalid.
+     * @return The ticket's details and statistics.
      * @throws SQLException on database error.
      */
 
-    public boolean isTicket(int id) throws SQLException
+    @Override
+    public Ticket getTicket(int id) throws SQLException
     {
-        try (PreparedStatement stmt = cn.prepareStatement("select count(id) from ticket where id = ?;");)
+        Connection cn = reader("getTicket");
+
+        try (PreparedStatement stmt = cn.prepareStatement("select id, name, summary, description, category, status, required_obversations, project_key from ticket where id = ?;"))
         {
             stmt.setInt(1, id);
 
             try (ResultSet rs = stmt.executeQuery())
             {
                 rs.next();
-                int count = rs.getInt(1);
 
-                if (count == 1) return true;
+                return new Ticket(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getString(6), rs.getInt(7), rs.getString(8),
+                        acceptanceCount(id), userCountWithPositiveObservations(id),
+                        positiveObservationCount(id), negativeObservationCount(id), null);
             }
         }
+    }
 
-        return false;
+    /**
+     * Gets a lists of all tickets related to a project, including
+     * acceptance and observation statistics of each ticket.
+     *
+     * If a user is given, the status of open tickets is replaced by
+     * "accepted" if the user accepted the ticket, or by "processed"
+     * if the user also submitted an observation.
+     *
+     * @param projectKey Unique project key.
+     * @param loginName Account name of user, or null.
+     * @return List of tickets.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public List<Ticket> getTicketsOfProject(String projectKey, String loginName) throws SQLException
+    {
+        return getTicketsOfProject(projectKey, loginName, new TicketQuery());
     }
 
     /**
-     * Get ticket details.
+     * Gets the tickets of a project selected by a query.
      *
-     * @param id Unique id of ticket.
-     * @return A map containing the tickets's details.
+     * Filters, order and limit are part of the statement. Summary,
+     * description and statistics are only selected if requested.
+     * Pages continue after the cursor using a row comparison on
+     * sort key and id, which can be served by an index. Sorting by
+     * status cannot use an index: the status is computed for the
+     * requesting account, and ordered like the ticket_status type.
+     *
+     * @param projectKey Unique project key.
+     * @param loginName Account name of user, or null.
+     * @param query Filter, order, page and fields of tickets.
+     * @return List of tickets.
      * @throws SQLException on database error.
      */
 
-    public Map<String, String> getTicket(int id) throws SQLException
+    @Override
+    public List<Ticket> getTicketsOfProject(String projectKey, String loginName, TicketQuery query) throws SQLException
     {
-        try (PreparedStatement stmt = cn.prepareStatement("select id, name, summary, description, category, status, required_obversations, project_key from ticket where id = ?;"))
+        return queryTickets(reader("getTicketsOfProject"), Collections.singleton(projectKey), null, loginName, query);
+    }
+
+    /**
+     * Gets all tickets of some projects and single tickets of others
+     * with one query, using the statement of getTicketsOfProject().
+     *
+     * @param projectKeys Keys of projects whose tickets are all returned.
+     * @param ticketIds Ids of further tickets to return.
+     * @param loginName Account name of user, or null.
+     * @return List of existing tickets.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public List<Ticket> getTickets(Collection<String> projectKeys, Collection<Integer> ticketIds, String loginName) throws SQLException
+    {
+        if (projectKeys.isEmpty() && ticketIds.isEmpty())
+            return new ArrayList<>();
+
+        return queryTickets(reader("getTickets"), projectKeys, ticketIds, loginName, new TicketQuery());
+    }
+
+    // a single project is compared by equality, so that the planner can use its statistics
+    private static List<Ticket> queryTickets(Connection cn, Collection<String> projectKeys, Collection<Integer> ticketIds,
+                                             String loginName, TicketQuery query) throws SQLException
+    {
+        final boolean single = ticketIds == null && projectKeys.size() == 1;
+        final boolean observations = query.includes("UP") || query.includes("OP") || query.includes("ON");
+        final String direction = query.isDescending() ? " desc" : "";
+
+        // the computed status is text, states are ordered like the enum instead of alphabetically
+        final String sortKey = query.getSort().equals("status") ? "cast(t.status as ticket_status)" : "t." + query.getSort();
+
+        // the subquery computes the status once, it is flattened by the planner
+        StringBuilder sql = new StringBuilder(
+                "select t.id, t.name, t.summary, t.description, t.category, t.status, t.required_obversations, " +
+                (query.includes("U") ? "(select count(*) from assignment a where a.ticket_id = t.id), " : "null, ") +
+                (observations ? "o.users_positive, coalesce(o.positive, 0), coalesce(o.negative, 0), " : "null, null, null, ") +
+                "t.project_key " +
+                "from (select t.id, t.name, " +
+                (query.includes("summary") ? "t.summary, " : "null as summary, ") +
+                (query.includes("description") ? "t.description, " : "null as description, ") +
+                "t.category, " +
+                "case when t.status = 'open' and exists(select 1 from assignment a where a.ticket_id = t.id and a.login_name = ?) " +
+                "then case when exists(select 1 from observation o where o.ticket_id = t.id and o.login_name = ?) then 'processed' else 'accepted' end " +
+                "else cast(t.status as text) end as status, " +
+                "t.required_obversations, t.project_key " +
+                "from ticket t where " + (single ? "t.project_key = ?" : "(t.project_key = any(?) or t.id = any(?))") +
+                (query.getCategory() != null ? " and t.category = cast(? as ticket_category)" : "") +
+                (query.getIds() != null ? " and t.id = any(?)" : "") +
+                ") t ");
+
+        if (observations)
         {
-            stmt.setInt(1, id);
+            sql.append("cross join lateral (select " +
+                    "count(distinct login_name) filter (where outcome = 'positive') as users_positive, " +
+                    "sum(quantity) filter (where outcome = 'positive') as positive, " +
+                    "sum(quantity) filter (where outcome = 'negative') as negative " +
+                    "from observation where ticket_id = t.id) o ");
+        }
+
+        sql.append("where true");
+
+        if (query.getStatus() != null)
+            sql.append(" and t.status = ?");
+
+        if (query.getAfterId() != null)
+        {
+            final String comparison = query.isDescending() ? " < " : " > ";
+
+            if (query.getSort().equals("id"))
+                sql.append(" and t.id").append(comparison).append("?");
+            else if (query.getSort().equals("category"))
+                sql.append(" and (t.category, t.id)").append(comparison).append("(cast(? as ticket_category), ?)");
+            else if (query.getSort().equals("status"))
+                sql.append(" and (").append(sortKey).append(", t.id)").append(comparison).append("(cast(? as ticket_status), ?)");
+            else
+                sql.append(" and (").append(sortKey).append(", t.id)").append(comparison).append("(?, ?)");
+        }
+
+        sql.append(" order by ").append(sortKey).append(direction);
+
+        if (!query.getSort().equals("id"))
+            sql.append(", t.id").append(direction);
+
+        if (query.getLimit() > 0)
+            sql.append(" limit ?");
+
+        sql.append(";");
+
+        try (PreparedStatement stmt = cn.prepareStatement(sql.toString()))
+        {
+            int index = 1;
+
+            stmt.setString(index++, loginName);
+            stmt.setString(index++, loginName);
+
+            if (single)
+            {
+                stmt.setString(index++, projectKeys.iterator().next());
+            }
+
+            else
+            {
+                stmt.setArray(index++, cn.createArrayOf("varchar", projectKeys.toArray()));
+                stmt.setArray(index++, cn.createArrayOf("integer", ticketIds == null ? new Object[0] : ticketIds.toArray()));
+            }
+
+            if (query.getCategory() != null)
+                stmt.setString(index++, query.getCategory());
+
+            if (query.getIds() != null)
+                stmt.setArray(index++, cn.createArrayOf("integer", query.getIds().toArray()));
+
+            if (query.getStatus() != null)
+                stmt.setString(index++, query.getStatus());
+
+            if (query.getAfterId() != null)
+            {
+                if (!query.getSort().equals("id"))
+                    stmt.setString(index++, query.getAfterValue());
+
+                stmt.setInt(index++, query.getAfterId());
+            }
+
+            if (query.getLimit() > 0)
+                stmt.setInt(index, query.getLimit());
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                rs.next();
+                List<Ticket> result = new ArrayList<>(query.getLimit() > 0 ? query.getLimit() : 16);
 
-                Map<String, String> result = new HashMap<>(12);
-                result.put("id", rs.getString(1));
-                result.put("name", rs.getString(2));
-                result.put("summary", rs.getString(3));
-                result.put("description", rs.getString(4));
-                result.put("category", rs.getString(5));
-                result.put("status", rs.getString(6));
-                result.put("requiredObservations", String.valueOf(rs.getInt(7)));
-                result.put("projectKey", rs.getString(8));
-
-                result.put("U", String.valueOf(acceptanceCount(id)));
-                result.put("UP", String.valueOf(userCountWithPositiveObservations(id)));
-                result.put("OP", String.valueOf(positiveObservationCount(id)));
-                result.put("ON", String.valueOf(negativeObservationCount(id)));
+                // fields which were not selected are 0 or null, and masked by the query's fields
+                while (rs.next())
+                {
+                    result.add(new Ticket(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getString(6), rs.getInt(7), rs.getString(12),
+                            rs.getInt(8), rs.getInt(9), rs.getInt(10), rs.getInt(11), query.getFields()));
+                }
 
                 return result;
             }
@@ -828,42 +1384,72 @@ public class DatabaseClient implements AutoCloseable
     }
 
     /**
-     * Gets a lists of all tickets related to a project.
+     * Searches the tickets of a project and their chat messages.
+     *
+     * Tickets and messages have generated tsvector columns with GIN
+     * indexes, see migration V5. Hits are ranked by ts_rank, and
+     * headlines are only computed for the hits of the requested page.
+     * The text is escaped before ts_headline adds its <mark> tags.
      *
      * @param projectKey Unique project key.
-     * @return List of maps containing each ticket's details.
+     * @param text Search terms in web search syntax.
+     * @param after Last hit of the previous page, or null.
+     * @param limit Maximum number of hits.
+     * @return List of maps containing each hit.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> getTicketsOfProject(String projectKey) throws SQLException
+    @Override
+    public List<Map<String, String>> searchProject(String projectKey, String text, Map<String, String> after, int limit) throws SQLException
     {
+        Connection cn = reader("searchProject");
+
         try (PreparedStatement stmt = cn.prepareStatement(
-                "select id, name, summary, description, category, status, required_obversations from ticket where project_key = ?;"))
+                "with q as (select websearch_to_tsquery('simple', ?) as query),\n" +
+                "hits as (select * from (\n" +
+                    "select 'ticket'::text as type, t.id, t.id as ticket_id, ts_rank(t.search_vector, q.query) as rank\n" +
+                    "from ticket t, q where t.project_key = ? and t.search_vector @@ q.query\n" +
+                    "union all\n" +
+                    "select 'message'::text, m.id, m.ticket_id, ts_rank(m.search_vector, q.query)\n" +
+                    "from message m join ticket t on m.ticket_id = t.id, q where t.project_key = ? and m.search_vector @@ q.query) h\n" +
+                (after != null ? "where (h.rank, h.type, h.id) < (?, ?, ?)\n" : "") +
+                "order by h.rank desc, h.type desc, h.id desc\n" +
+                "limit ?)\n" +
+                "select h.type, h.id, h.ticket_id, t.name, h.rank, ts_headline('simple', " +
+                "replace(replace(replace(case when h.type = 'ticket' then t.summary || ' ' || t.description else m.content end, " +
+                "'&', '&amp;'), '<', '&lt;'), '>', '&gt;'), q.query, " +
+                "'StartSel=<mark>, StopSel=</mark>, MaxFragments=2')\n" +
+                "from hits h join ticket t on t.id = h.ticket_id left outer join message m on h.type = 'message' and m.id = h.id, q\n" +
+                "order by h.rank desc, h.type desc, h.id desc;"))
         {
-            stmt.setString(1, projectKey);
+            int index = 1;
+
+            stmt.setString(index++, text);
+            stmt.setString(index++, projectKey);
+            stmt.setString(index++, projectKey);
+
+            if (after != null)
+            {
+                stmt.setFloat(index++, Float.parseFloat(after.get("rank")));
+                stmt.setString(index++, after.get("type"));
+                stmt.setInt(index++, Integer.parseInt(after.get("id")));
+            }
+
+            stmt.setInt(index, limit);
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                List<Map<String, String>> result = new LinkedList<>();
+                List<Map<String, String>> result = new ArrayList<>(limit);
 
                 while (rs.next())
                 {
-                    Map<String, String> row = new HashMap<>(8);
-                    int id = rs.getInt(1);
-
-                    row.put("id", String.valueOf(id));
-                    row.put("name", rs.getString(2));
-                    row.put("summary", rs.getString(3));
-                    row.put("description", rs.getString(4));
-                    row.put("category", rs.getString(5));
-                    row.put("status", rs.getString(6));
-                    row.put("requiredObservations", String.valueOf(rs.getInt(7)));
-                    row.put("projectKey", projectKey);
-
-                    row.put("U", String.valueOf(acceptanceCount(id)));
-                    row.put("UP", String.valueOf(userCountWithPositiveObservations(id)));
-                    row.put("OP", String.valueOf(positiveObservationCount(id)));
-                    row.put("ON", String.valueOf(negativeObservationCount(id)));
+                    Map<String, String> row = new HashMap<>(6);
+                    row.put("type", rs.getString(1));
+                    row.put("id", String.valueOf(rs.getInt(2)));
+                    row.put("ticketId", String.valueOf(rs.getInt(3)));
+                    row.put("ticketName", rs.getString(4));
+                    row.put("rank", String.valueOf(rs.getFloat(5)));
+                    row.put("headline", rs.getString(6));
 
                     result.add(row);
                 }
@@ -881,8 +1467,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void addAttachment(int ticketId, int fileMetadataId) throws SQLException
     {
+        Connection cn = writer("addAttachment");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into attachment values (?, ?);"))
         {
             stmt.setInt(1, ticketId);
@@ -898,8 +1487,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void removeAttachment(int ticketId, int fileMetadataId) throws SQLException
     {
+        Connection cn = writer("removeAttachment");
+
         try (PreparedStatement stmt = cn.prepareStatement("delete from attachment where ticket_id = ? and attachment_id = ?;"))
         {
             stmt.setInt(1, ticketId);
@@ -913,27 +1505,25 @@ public class DatabaseClient implements AutoCloseable
      *
      * @param ticketId Unique ticket id.
      *
-     * @return List of maps containing each attachment's details.
+     * @return List of attachments.
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> listAttachments(int ticketId) throws SQLException
+    @Override
+    public List<Attachment> listAttachments(int ticketId) throws SQLException
     {
+        Connection cn = reader("listAttachments");
+
         try (PreparedStatement stmt = cn.prepareStatement("select a.ticket_id, a.attachment_id, f.original_name from attachment a join fileinfo f on a.attachment_id = f.id where a.ticket_id = ?;"))
         {
-            List<Map<String, String>> result = new LinkedList<>();
+            List<Attachment> result = new ArrayList<>();
 
             stmt.setInt(1, ticketId);
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next())
             {
-                Map<String, String> row = new HashMap<>(3);
-                row.put("ticketId", String.valueOf(rs.getInt(1)));
-                row.put("attachmentId", String.valueOf(rs.getInt(2)));
-                row.put("originalName", rs.getString(3));
-
-                result.add(row);
+                result.add(new Attachment(rs.getInt(1), rs.getInt(2), rs.getString(3)));
             }
 
             return result;
@@ -947,13 +1537,18 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void deleteTicket(int id) throws SQLException
     {
+        Connection cn = writer("deleteTicket");
+
         try (PreparedStatement stmt = cn.prepareStatement("delete from ticket where id = ?;"))
         {
             stmt.setInt(1, id);
             stmt.executeUpdate();
         }
+
+        authorizationCache.invalidateTicket(id);
     }
 
     /**
@@ -964,8 +1559,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void acceptTicket(String loginName, int id) throws SQLException
     {
+        Connection cn = writer("acceptTicket");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into assignment values (?, ?);"))
         {
             stmt.setInt(1, id);
@@ -984,8 +1582,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public boolean hasUserAcceptedTicket(String loginName, int id) throws SQLException
     {
+        Connection cn = reader("hasUserAcceptedTicket");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(*) from assignment where login_name = ? and ticket_id = ?;"))
         {
             stmt.setString(1, loginName);
@@ -1012,8 +1613,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public int observationCount(String loginName, int ticketId) throws SQLException
     {
+        Connection cn = reader("observationCount");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(*) from observation where login_name = ? and ticket_id = ?;"))
         {
             stmt.setString(1, loginName);
@@ -1029,6 +1633,8 @@ public class DatabaseClient implements AutoCloseable
 
     private int acceptanceCount(int ticketId) throws SQLException
     {
+        Connection cn = reader("acceptanceCount");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(*) from assignment where ticket_id = ?;"))
         {
             stmt.setInt(1, ticketId);
@@ -1043,6 +1649,8 @@ public class DatabaseClient implements AutoCloseable
 
     private int userCountWithPositiveObservations(int ticketId) throws SQLException
     {
+        Connection cn = reader("userCountWithPositiveObservations");
+
         try (PreparedStatement stmt = cn.prepareStatement("select count(*) from (select distinct login_name from observation where ticket_id = ? and outcome = 'positive') as users;"))
         {
             stmt.setInt(1, ticketId);
@@ -1057,8 +1665,9 @@ public class DatabaseClient implements AutoCloseable
 
     private int positiveObservationCount(int ticketId) throws SQLException
     {
-        try (Connection connection = ds.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("select sum(quantity) from observation where ticket_id = ? and outcome = 'positive';"))
+        Connection cn = reader("positiveObservationCount");
+
+        try (PreparedStatement stmt = cn.prepareStatement("select sum(quantity) from observation where ticket_id = ? and outcome = 'positive';"))
         {
             stmt.setInt(1, ticketId);
 
@@ -1072,6 +1681,8 @@ public class DatabaseClient implements AutoCloseable
 
     private int negativeObservationCount(int ticketId) throws SQLException
     {
+        Connection cn = reader("negativeObservationCount");
+
         try (PreparedStatement stmt = cn.prepareStatement("select sum(quantity) from observation where ticket_id = ? and outcome = 'negative';"))
         {
             stmt.setInt(1, ticketId);
@@ -1094,8 +1705,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void submitObservation(String loginName, int ticketId, String outcome, int quantity) throws SQLException
     {
+        Connection cn = writer("submitObservation");
+
         int quantity_sum;
         int required_observations;
 
@@ -1142,35 +1756,31 @@ public class DatabaseClient implements AutoCloseable
         }
     }
 
+    private static final String OBSERVATIONS_QUERY = "select id, login_name, outcome, quantity from observation where ticket_id = ?;";
+
+    private static Observation readObservation(ResultSet rs) throws SQLException
+    {
+        return new Observation(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4));
+    }
+
     /**
-     * Returns all observations of one ticket.
+     * Writes all observations of one ticket, fetching them through a cursor.
      *
      * @param ticketId Unique ticket id.
-     * @return List of maps containing each observation's details.
+     * @param writer Receives the observations.
      * @throws SQLException on database error.
+     * @throws IOException if the writer failed.
      */
 
-    public List<Map<String, String>> listObservations(int ticketId) throws SQLException
+    @Override
+    public void streamObservations(int ticketId, RowWriter<Observation> writer) throws SQLException, IOException
     {
-        try (PreparedStatement stmt = cn.prepareStatement("select id, login_name, outcome, quantity from observation where ticket_id = ?;"))
-        {
-            List<Map<String, String>> result = new LinkedList<>();
+        Connection cn = reader("streamObservations");
 
+        try (PreparedStatement stmt = cn.prepareStatement(OBSERVATIONS_QUERY))
+        {
             stmt.setInt(1, ticketId);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next())
-            {
-                Map<String, String> row = new HashMap<>(4);
-                row.put("id", String.valueOf(rs.getInt(1)));
-                row.put("login_name", rs.getString(2));
-                row.put("outcome", rs.getString(3));
-                row.put("quantity", rs.getString(4));
-
-                result.add(row);
-            }
-
-            return result;
+            streamRows(cn, stmt, DatabaseClient::readObservation, writer);
         }
     }
 
@@ -1184,8 +1794,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void sendMessage(String sender, String content, String attachment, int ticketId) throws SQLException
     {
+        Connection cn = writer("sendMessage");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into message(sender, content, attachment, ticket_id) values (?, ?, ?, ?);"))
         {
             stmt.setString(1, sender);
@@ -1202,49 +1815,141 @@ public class DatabaseClient implements AutoCloseable
             stmt.executeUpdate();
         }
 
-        try (Statement stmt = cn.createStatement())
+        // a parameter instead of notify keeps the statement text the same for all tickets
+        try (PreparedStatement stmt = cn.prepareStatement("select pg_notify(?, '');"))
         {
-            stmt.execute(String.format("notify ticket_%d;", ticketId));
+            stmt.setString(1, "ticket_" + ticketId);
+            stmt.execute();
         }
     }
 
+    private static final String MESSAGES_QUERY =
+            "with last_messages as (select id, sender, timestamp, content, attachment, ticket_id\n" +
+                                     "from message\n" +
+                                     "where ticket_id = ?\n" +
+                                     "order by timestamp desc\n" +
+                                     "limit ?)\n" +
+                    "select lm.id, lm.sender, lm.timestamp, lm.content, lm.attachment, fi.original_name from last_messages lm left outer join fileinfo fi on lm.attachment = fi.id order by timestamp asc;";
+
+    private static Message readMessage(ResultSet rs) throws SQLException
+    {
+        return new Message(rs.getInt(1), rs.getString(2), rs.getTimestamp(3).getTime(),
+                rs.getString(4), getInteger(rs, 5), rs.getString(6), 0);
+    }
+
     /**
-     * Returns all messages of one ticket.
+     * Writes the last messages of one ticket, fetching them through a cursor.
      *
      * @param ticketId Unique ticket id.
-     * @param limit Number of last messages that should be returned.
-     *
-     * @return List of maps containing each message's details.
+     * @param limit Number of last messages that should be written.
+     * @param writer Receives the messages, oldest first.
      * @throws SQLException on database error.
+     * @throws IOException if the writer failed.
      */
 
-    public List<Map<String, String>> listMessages(int ticketId, int limit) throws SQLException
+    @Override
+    public void streamMessages(int ticketId, int limit, RowWriter<Message> writer) throws SQLException, IOException
     {
-        try (PreparedStatement stmt = cn.prepareStatement(
-                     "with last_messages as (select id, sender, timestamp, content, attachment, ticket_id\n" +
-                                              "from message\n" +
-                                              "where ticket_id = ?\n" +
-                                              "order by timestamp desc\n" +
-                                              "limit ?)\n" +
-                             "select lm.id, lm.sender, lm.timestamp, lm.content, lm.attachment, fi.original_name from last_messages lm left outer join fileinfo fi on lm.attachment = fi.id order by timestamp asc;"))
+        Connection cn = reader("streamMessages");
+
+        try (PreparedStatement stmt = cn.prepareStatement(MESSAGES_QUERY))
         {
             stmt.setInt(1, ticketId);
             stmt.setInt(2, limit);
 
+            streamRows(cn, stmt, DatabaseClient::readMessage, writer);
+        }
+    }
+
+    /**
+     * Gets messages by id, e.g. the new messages of a sync.
+     *
+     * @param messageIds Ids of messages, possibly of different tickets.
+     * @return List of messages, oldest first.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public List<Message> getMessages(Collection<Integer> messageIds) throws SQLException
+    {
+        Connection cn = reader("getMessages");
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "select m.id, m.sender, m.timestamp, m.content, m.attachment, fi.original_name, m.ticket_id " +
+                "from message m left outer join fileinfo fi on m.attachment = fi.id " +
+                "where m.id = any(?) order by m.timestamp, m.id;"))
+        {
+            stmt.setArray(1, cn.createArrayOf("integer", messageIds.toArray()));
+
             try (ResultSet rs = stmt.executeQuery())
             {
-                List<Map<String, String>> result = new LinkedList<>();
+                List<Message> result = new ArrayList<>(messageIds.size());
 
                 while (rs.next())
                 {
-                    Map<String, String> row = new HashMap<>(6);
-                    row.put("id", String.valueOf(rs.getInt(1)));
-                    row.put("sender", rs.getString(2));
-                    row.put("timestamp", String.valueOf(rs.getTimestamp(3).getTime()));
-                    row.put("content", rs.getString(4));
-                    row.put("attachment", rs.getString(5));
-                    row.put("originalName", rs.getString(6));
-                    result.add(row);
+                    result.add(new Message(rs.getInt(1), rs.getString(2), rs.getTimestamp(3).getTime(),
+                            rs.getString(4), getInteger(rs, 5), rs.getString(6), rs.getInt(7)));
+                }
+
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Collects changes from the change log, which is written by triggers,
+     * see migration V6. Entries carry the id of the writing transaction.
+     *
+     * The new token is the oldest transaction still running when the
+     * query starts, so changes of transactions committing after this
+     * query are found by the next one, even if their id is smaller than
+     * that of changes already seen. An idle client costs one query
+     * returning one row.
+     *
+     * The change log is read from the primary, and so are all further
+     * reads of this client, so that the data returned with the token is
+     * not older than the token.
+     *
+     * @param loginName Account name of admin or user.
+     * @param admin true if the account is an admin.
+     * @param since Token of a previous change set, or null to only get a new token.
+     * @return Keys of changed items and the token following them.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public ChangeSet getChanges(String loginName, boolean admin, Long since) throws SQLException
+    {
+        Connection cn = latest("getChanges");
+
+        final String visible = admin
+                ? "select entry_key from project where owner = ?"
+                : "select project_key from membership where login_name = ?";
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "with s as (select txid_snapshot_xmin(txid_current_snapshot()) as token, " +
+                    "(select token from change_log_horizon) as horizon)\n" +
+                "select s.token, s.horizon, c.entity, c.project_key, c.entity_id from s left join (\n" +
+                    "select distinct entity, project_key, entity_id from change_log\n" +
+                    "where txid >= ? and (project_key in (" + visible + ") or (entity = 'membership' and entity_id = ?))\n" +
+                ") c on s.horizon <= ?;"))
+        {
+            stmt.setObject(1, since, Types.BIGINT);
+            stmt.setString(2, loginName);
+            stmt.setString(3, loginName);
+            stmt.setObject(4, since, Types.BIGINT);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                ChangeSet result = null;
+
+                while (rs.next())
+                {
+                    if (result == null)
+                        result = new ChangeSet(rs.getLong(1), since != null && since < rs.getLong(2));
+
+                    if (rs.getString(3) != null)
+                        result.add(rs.getString(3), rs.getString(4), rs.getString(5));
                 }
 
                 return result;
@@ -1252,6 +1957,123 @@ public class DatabaseClient implements AutoCloseable
         }
     }
 
+    /**
+     * Deletes entries of the change log which are older than the retention,
+     * see migration V8. Every call records a checkpoint with the current
+     * token, entries are deleted below the newest checkpoint older than the
+     * retention. The first call therefore only records a checkpoint.
+     *
+     * @param retentionSeconds Minimum age of deleted entries.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public void pruneChanges(long retentionSeconds) throws SQLException
+    {
+        Connection cn = writer("pruneChanges");
+
+        try (PreparedStatement stmt = cn.prepareStatement("select prune_change_log(? * interval '1 second');"))
+        {
+            stmt.setLong(1, retentionSeconds);
+            stmt.execute();
+        }
+    }
+
+    /**
+     * Gets the version of a project, see migration V7. Versions are read
+     * from the primary, like all further reads of this client, so that a
+     * response is never cached under a newer version than its content.
+     *
+     * @param loginName Account name of admin or user.
+     * @param projectKey Unique project key.
+     * @return Version of project, or null if it does not exist or is not visible to the account.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public Long getProjectVersion(String loginName, String projectKey) throws SQLException
+    {
+        Connection cn = latest("getProjectVersion");
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "select coalesce(v.version, 0) from project p left join project_version v on v.project_key = p.entry_key " +
+                "where p.entry_key = ? and (p.owner = ? or exists(select 1 from membership m where m.project_key = p.entry_key and m.login_name = ?));"))
+        {
+            stmt.setString(1, projectKey);
+            stmt.setString(2, loginName);
+            stmt.setString(3, loginName);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Gets the version of a ticket's project from the primary,
+     * see getProjectVersion().
+     *
+     * @param loginName Account name of admin or user.
+     * @param ticketId Unique ticket id.
+     * @return Version of project, or null if ticket does not exist or is not visible to the account.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public Long getTicketVersion(String loginName, int ticketId) throws SQLException
+    {
+        Connection cn = latest("getTicketVersion");
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "select coalesce(v.version, 0) from ticket t join project p on p.entry_key = t.project_key " +
+                "left join project_version v on v.project_key = p.entry_key " +
+                "where t.id = ? and (p.owner = ? or exists(select 1 from membership m where m.project_key = p.entry_key and m.login_name = ?));"))
+        {
+            stmt.setInt(1, ticketId);
+            stmt.setString(2, loginName);
+            stmt.setString(3, loginName);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Gets the versions of all projects an account owns or joined
+     * from the primary, see getProjectVersion().
+     *
+     * @param loginName Account name of admin or user.
+     * @return Versions by project key.
+     * @throws SQLException on database error.
+     */
+
+    @Override
+    public Map<String, Long> getProjectVersions(String loginName) throws SQLException
+    {
+        Connection cn = latest("getProjectVersions");
+
+        try (PreparedStatement stmt = cn.prepareStatement(
+                "select p.entry_key, coalesce(v.version, 0) from project p left join project_version v on v.project_key = p.entry_key " +
+                "where p.owner = ? or p.entry_key in (select project_key from membership where login_name = ?);"))
+        {
+            stmt.setString(1, loginName);
+            stmt.setString(2, loginName);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                Map<String, Long> result = new HashMap<>();
+
+                while (rs.next())
+                    result.put(rs.getString(1), rs.getLong(2));
+
+                return result;
+            }
+        }
+    }
+
     /**
      * Insert a file metadata entry.
      *
@@ -1264,8 +2086,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public int registerFile(String internalName, String thumbnailName, String originalName, int ticketId) throws SQLException
     {
+        Connection cn = writer("registerFile");
+
         try (PreparedStatement stmt = cn.prepareStatement("insert into fileinfo(internal_name, thumbnail_name, original_name, ticket_id) values(?, ?, ?, ?);", Statement.RETURN_GENERATED_KEYS))
         {
             stmt.setString(1, internalName);
@@ -1297,8 +2122,11 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
+    @Override
     public void unregisterFile(int metadataId) throws SQLException
     {
+        Connection cn = writer("unregisterFile");
+
         try (PreparedStatement stmt = cn.prepareStatement("delete from fileinfo where id = ?;"))
         {
             stmt.setInt(1, metadataId);
@@ -1310,55 +2138,27 @@ public class DatabaseClient implements AutoCloseable
      * Get metadata of file.
      *
      * @param metadataId Metadata entry id of file.
-     * @return Metadata entry.
+     * @return Metadata entry, or null if file does not exist.
      * @throws SQLException on database error.
      */
 
-    public Map<String, String> getFile(int metadataId) throws SQLException
+    @Override
+    public FileInfo getFile(int metadataId) throws SQLException
     {
-        try (PreparedStatement stmt = cn.prepareStatement("select internal_name, thumbnail_name, original_name, ticket_id from fileinfo where id = ?;"))
-        {
-            stmt.setInt(1, metadataId);
-
-            try (ResultSet rs = stmt.executeQuery())
-            {
-                rs.next();
-
-                Map<String, String> result = new HashMap<>(4);
-                result.put("internalName", rs.getString(1));
-                result.put("thumbnailName", rs.getString(2));
-                result.put("originalName", rs.getString(3));
-                result.put("ticketId", String.valueOf(rs.getInt(4)));
-
-                return result;
-            }
-        }
-    }
+        Connection cn = reader("getFile");
 
-    /**
-     * Checks if file exists in metadata catalog.
-     *
-     * @param metadataId Metadata entry id of file.
-     * @return true if file exists, else if not.
-     * @throws SQLException on database error.
-     */
-
-    public boolean isFile(int metadataId) throws SQLException
-    {
-        try (PreparedStatement stmt = cn.prepareStatement("select count(id) from fileinfo where id = ?;");)
+        try (PreparedStatement stmt = cn.prepareStatement("select internal_name, thumbnail_name, original_name, ticket_id from fileinfo where id = ?;"))
         {
             stmt.setInt(1, metadataId);
 
             try (ResultSet rs = stmt.executeQuery())
             {
-                rs.next();
-                int count = rs.getInt(1);
+                if (!rs.next())
+                    return null;
 
-                if (count == 1) return true;
+                return new FileInfo(metadataId, rs.getString(1), rs.getString(2), rs.getString(3), rs.getInt(4));
             }
         }
-
-        return false;
     }
 
     /**
@@ -1367,23 +2167,20 @@ public class DatabaseClient implements AutoCloseable
      * @throws SQLException on database error.
      */
 
-    public List<Map<String, String>> listOrphans() throws SQLException
+    @Override
+    public List<FileInfo> listOrphans() throws SQLException
     {
+        Connection cn = reader("listOrphans");
+
         try (Statement stmt = cn.createStatement())
         {
             try (ResultSet rs = stmt.executeQuery("select id, internal_name, thumbnail_name, original_name from fileinfo where ticket_id is null;"))
             {
-                List<Map<String, String>> result = new LinkedList<>();
+                List<FileInfo> result = new ArrayList<>();
 
                 while (rs.next())
                 {
-                    Map<String, String> row = new HashMap<>(4);
-                    row.put("id", String.valueOf(rs.getInt(1)));
-                    row.put("internalName", rs.getString(2));
-                    row.put("thumbnailName", rs.getString(3));
-                    row.put("originalName", rs.getString(4));
-
-                    result.add(row);
+                    result.add(new FileInfo(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), 0));
                 }
 
                 return result;
@@ -0,0 +1,151 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * This class manages connection pools for the primary database
+ * and an optional read replica.
+ *
+ * To provide read-your-writes consistency, it remembers which
+ * accounts have recently written to the primary. Reads of these
+ * accounts should not be routed to the replica until the replication
+ * lag window has passed.
+ */
+
+public class DatabaseRouter
+{
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+
+    private final long stickyNanos;
+    private final ConcurrentHashMap<String, Long> recentWriters = new ConcurrentHashMap<>();
+
+    private static HikariDataSource createPool(String name, DataSource dataSource, int poolSize)
+    {
+        HikariConfig config = new HikariConfig();
+
+        config.setPoolName(name);
+        config.setDataSource(dataSource);
+        config.setMaximumPoolSize(poolSize);
+        config.setInitializationFailTimeout(-1); // do not fail if database is not up yet
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * @param primary Data source of primary database.
+     * @param replica Data source of read replica, or null if there is none.
+     * @param poolSize Maximum number of connections per pool.
+     * @param stickyMillis Time after a write during which reads of the writing account go to the primary.
+     */
+
+    public DatabaseRouter(DataSource primary, DataSource replica, int poolSize, long stickyMillis)
+    {
+        this.primary = createPool("primary", primary, poolSize);
+        this.replica = replica != null ? createPool("replica", replica, poolSize) : null;
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+    }
+
+    public Connection getPrimaryConnection() throws SQLException
+    {
+        return primary.getConnection();
+    }
+
+    /**
+     * @return Connection to replica, or null if no replica is configured.
+     * @throws SQLException on database error.
+     */
+
+    public Connection getReplicaConnection() throws SQLException
+    {
+        return replica != null ? replica.getConnection() : null;
+    }
+
+    public boolean hasReplica()
+    {
+        return replica != null;
+    }
+
+    /**
+     * Records that an account has written to the primary database.
+     *
+     * @param loginName The account name.
+     */
+
+    public void markWritten(String loginName)
+    {
+        if (replica == null)
+            return;
+
+        final long now = System.nanoTime();
+
+        if (recentWriters.size() > 10000)
+            recentWriters.values().removeIf(time -> now - time > stickyNanos);
+
+        recentWriters.put(loginName, now);
+    }
+
+    /**
+     * @param loginName The account name.
+     * @return true if the account has written within the replication lag window.
+     */
+
+    public boolean hasRecentlyWritten(String loginName)
+    {
+        final Long time = recentWriters.get(loginName);
+
+        if (time == null)
+            return false;
+
+        if (System.nanoTime() - time > stickyNanos)
+        {
+            recentWriters.remove(loginName, time);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static Map<String, Integer> getPoolStatistics(HikariDataSource pool)
+    {
+        Map<String, Integer> result = new LinkedHashMap<>(5);
+        HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+
+        result.put("active", bean != null ? bean.getActiveConnections() : 0);
+        result.put("idle", bean != null ? bean.getIdleConnections() : 0);
+        result.put("total", bean != null ? bean.getTotalConnections() : 0);
+        result.put("waiting", bean != null ? bean.getThreadsAwaitingConnection() : 0);
+        result.put("max", pool.getMaximumPoolSize());
+
+        return result;
+    }
+
+    /**
+     * Returns utilization of each connection pool.
+     *
+     * @return Map from pool name ("primary", "replica") to active, idle,
+     *         total, waiting and maximum number of connections.
+     */
+
+    public Map<String, Map<String, Integer>> getPoolStatistics()
+    {
+        Map<String, Map<String, Integer>> result = new HashMap<>(2);
+        result.put("primary", getPoolStatistics(primary));
+
+        if (replica != null)
+            result.put("replica", getPoolStatistics(replica));
+
+        return result;
+    }
+}
@@ -1,12 +1,18 @@
 package de.fau.cs.osr.amos.asepart.client;
 
+import de.fau.cs.osr.amos.asepart.metrics.Histogram;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+import de.fau.cs.osr.amos.asepart.model.FileInfo;
+
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
 
 import io.minio.MinioClient;
@@ -21,17 +27,98 @@ import org.jcodec.scale.AWTUtil;
 /**
  * This class is a wrapper for accessing an minio file server, which is an
  * open source implementation of the Amazon S3 protocol.
+ *
+ * If ASEPART_THUMBNAIL_CACHE_SIZE is set to a positive number of bytes,
+ * thumbnails are kept in an in-process LRU cache of that size.
+ *
+ * The latency of each Minio call and of thumbnail generation is recorded
+ * in the metrics registry.
  */
 
 public class FileStorageClient implements AutoCloseable
 {
+    private static ThumbnailCache createThumbnailCache()
+    {
+        final String cacheSize = System.getenv("ASEPART_THUMBNAIL_CACHE_SIZE");
+
+        if (cacheSize == null)
+            return null;
+
+        try
+        {
+            final long maxWeight = Long.parseLong(cacheSize);
+
+            if (maxWeight > 0)
+                return new ThumbnailCache(maxWeight, 65536);
+        }
+
+        catch (NumberFormatException e)
+        {
+            System.err.println("Environment variable ASEPART_THUMBNAIL_CACHE_SIZE is invalid, thumbnail cache disabled.");
+        }
+
+        return null;
+    }
+
+    private static final ThumbnailCache thumbnailCache = createThumbnailCache();
+
+    private static final String MINIO_DURATION = "asepart_minio_request_duration_seconds";
+    private static final String MINIO_DURATION_HELP = "Latency of Minio calls per operation.";
+
+    // thumbnails are generated synchronously during upload, so there is no queue to measure
+    private static final AtomicInteger thumbnailsInProgress = new AtomicInteger();
+    private static final Histogram thumbnailDuration = Metrics.histogram("asepart_thumbnail_generation_duration_seconds",
+            "Time to generate and store a thumbnail.");
+
+    static
+    {
+        Metrics.gauge("asepart_thumbnail_generations_in_progress", "Number of thumbnails currently being generated.",
+                thumbnailsInProgress::get);
+
+        if (thumbnailCache != null)
+            Metrics.gauge("asepart_thumbnail_cache_bytes", "Number of bytes held by thumbnail cache.", thumbnailCache::weight);
+    }
+
+    private static Histogram minioDuration(String operation)
+    {
+        return Metrics.histogram(MINIO_DURATION, MINIO_DURATION_HELP, "operation", operation);
+    }
+
+    private static final Histogram bucketExistsDuration = minioDuration("bucketExists");
+    private static final Histogram makeBucketDuration = minioDuration("makeBucket");
+    private static final Histogram presignedGetObjectDuration = minioDuration("presignedGetObject");
+    private static final Histogram putObjectDuration = minioDuration("putObject");
+    private static final Histogram getObjectDuration = minioDuration("getObject");
+    private static final Histogram removeObjectDuration = minioDuration("removeObject");
+
+    private static <T> T timed(Histogram duration, Callable<T> call) throws Exception
+    {
+        final long start = System.nanoTime();
+
+        try
+        {
+            return call.call();
+        }
+
+        finally
+        {
+            duration.observeSince(start);
+        }
+    }
+
     private MinioClient minioClient;
-    private DatabaseClient dbClient;
+    private Repository dbClient;
 
     private final String fileBucket;
     private final String thumbnailBucket;
 
-    public FileStorageClient() throws Exception
+    /**
+     * Creates a new file storage client.
+     *
+     * @param dbClient Database connection used for file metadata. It is not closed by this client.
+     */
+
+    public FileStorageClient(Repository dbClient) throws Exception
     {
         final String minioAccessKey = System.getenv("MINIO_ACCESS_KEY");
         final String minioSecretKey = System.getenv("MINIO_SECRET_KEY");
@@ -59,19 +146,19 @@ public class FileStorageClient implements AutoCloseable
             throw new IllegalArgumentException("Minio port is invalid.");
         }
 
-        if (!minioClient.bucketExists(fileBucket))
-            minioClient.makeBucket(fileBucket);
-
-        if (!minioClient.bucketExists(thumbnailBucket))
-            minioClient.makeBucket(thumbnailBucket);
+        for (String bucket : new String[] {fileBucket, thumbnailBucket})
+        {
+            if (!timed(bucketExistsDuration, () -> minioClient.bucketExists(bucket)))
+                timed(makeBucketDuration, () -> { minioClient.makeBucket(bucket); return null; });
+        }
 
-        dbClient = new DatabaseClient();
+        this.dbClient = dbClient;
     }
 
     @Override
     public void close() throws Exception
     {
-        dbClient.close();
+        // database connection is owned by the caller
     }
 
     private static String internalName(String extension)
@@ -112,20 +199,19 @@ public class FileStorageClient implements AutoCloseable
 
     private String download(String bucket, String file) throws Exception
     {
-        return minioClient.presignedGetObject(bucket, file, 86400);
+        return timed(presignedGetObjectDuration, () -> minioClient.presignedGetObject(bucket, file, 86400));
     }
 
     /**
      * Returns an url where the file can be found.
      *
-     * @param metadataId Metadata id of file.
+     * @param fileInfo Metadata of file, see Repository.getFile().
      * @return URL which can be used to GET the file.
      */
 
-    public String download(int metadataId) throws Exception
+    public String download(FileInfo fileInfo) throws Exception
     {
-        Map<String, String> fileInfo = dbClient.getFile(metadataId);
-        return download(fileBucket, fileInfo.get("internalName"));
+        return download(fileBucket, fileInfo.getInternalName());
     }
 
     /**
@@ -153,12 +239,27 @@ public class FileStorageClient implements AutoCloseable
             contentType = "application/octet-stream";
         }
 
-        minioClient.putObject(fileBucket, fileId, fileStream, contentType);
+        final String fileContentType = contentType;
+        timed(putObjectDuration, () -> { minioClient.putObject(fileBucket, fileId, fileStream, fileContentType); return null; });
 
         String thumbnailName = null;
 
         if (isImageFile(fileName) || isVideoFile(fileName))
-            thumbnailName = generateThumbnail(fileId);
+        {
+            final long start = System.nanoTime();
+            thumbnailsInProgress.incrementAndGet();
+
+            try
+            {
+                thumbnailName = generateThumbnail(fileId);
+            }
+
+            finally
+            {
+                thumbnailsInProgress.decrementAndGet();
+                thumbnailDuration.observeSince(start);
+            }
+        }
 
         try
         {
@@ -167,13 +268,41 @@ public class FileStorageClient implements AutoCloseable
 
         catch (SQLException sqlex)
         {
-            minioClient.removeObject(fileBucket, fileId);
-            if (thumbnailName != null) minioClient.removeObject(thumbnailName, thumbnailName);
+            timed(removeObjectDuration, () -> { minioClient.removeObject(fileBucket, fileId); return null; });
+
+            final String thumbnailId = thumbnailName;
+            if (thumbnailId != null) timed(removeObjectDuration, () -> { minioClient.removeObject(thumbnailId, thumbnailId); return null; });
 
             throw sqlex;
         }
     }
 
+    /**
+     * Creates a thumbnail of an image or video file without accessing
+     * the file server. Images are scaled to fit into 256x256 pixels and keep
+     * their format, of videos the first frame is written as PNG image.
+     *
+     * @param source Image or video file, its type is determined by its extension.
+     * @param target File the thumbnail is written to.
+     */
+
+    public static void createThumbnail(File source, File target) throws Exception
+    {
+        if (isImageFile(source.getName()))
+        {
+            Thumbnails.of(source).size(256, 256).toFile(target.getAbsoluteFile());
+        }
+
+        else if (isVideoFile(source.getName()))
+        {
+            Picture picture = FrameGrab.getFrameFromFile(source, 0);
+            BufferedImage bufferedImage = AWTUtil.toBufferedImage(picture);
+            ImageIO.write(bufferedImage, "png", target);
+        }
+
+        else throw new IllegalArgumentException("File is neither an image nor a video!");
+    }
+
     private String generateThumbnail(String fileId) throws Exception
     {
         final String extension = getExtension(fileId);
@@ -181,15 +310,15 @@ public class FileStorageClient implements AutoCloseable
         File cacheFile = File.createTempFile("asepart-", "-cache." + extension);
         cacheFile.deleteOnExit();
 
-        minioClient.getObject(fileBucket, fileId, cacheFile.getAbsolutePath());
+        timed(getObjectDuration, () -> { minioClient.getObject(fileBucket, fileId, cacheFile.getAbsolutePath()); return null; });
 
         if (isImageFile(fileId))
         {
             File thumbFile = File.createTempFile("asepart-", "-thumbnail." + extension);
             thumbFile.deleteOnExit();
 
-            Thumbnails.of(cacheFile).size(256, 256).toFile(thumbFile.getAbsoluteFile());
-            minioClient.putObject(thumbnailBucket, fileId, thumbFile.getAbsolutePath());
+            createThumbnail(cacheFile, thumbFile);
+            timed(putObjectDuration, () -> { minioClient.putObject(thumbnailBucket, fileId, thumbFile.getAbsolutePath()); return null; });
 
             return fileId;
         }
@@ -199,12 +328,10 @@ public class FileStorageClient implements AutoCloseable
             File thumbFile = File.createTempFile("asepart-", "-thumbnail.png");
             thumbFile.deleteOnExit();
 
-            Picture picture = FrameGrab.getFrameFromFile(cacheFile, 0);
-            BufferedImage bufferedImage = AWTUtil.toBufferedImage(picture);
-            ImageIO.write(bufferedImage, "png", thumbFile);
+            createThumbnail(cacheFile, thumbFile);
 
             String thumbnailId = internalName("png");
-            minioClient.putObject(thumbnailBucket, thumbnailId, thumbFile.getAbsolutePath());
+            timed(putObjectDuration, () -> { minioClient.putObject(thumbnailBucket, thumbnailId, thumbFile.getAbsolutePath()); return null; });
 
             return thumbnailId;
         }
@@ -213,37 +340,94 @@ public class FileStorageClient implements AutoCloseable
     }
 
     /**
-     * Checks if a file has a thumbnail available.
+     * Returns an url where the thumbnail of the file can be found.
      *
-     * @param metadataId Metadata id of file.
-     * @return true if thumbnail exists, false if not.
+     * @param fileInfo Metadata of file, see Repository.getFile().
+     * @return URL which can be used to GET the thumbnail.
      */
 
-    public boolean hasThumbnail(int metadataId) throws Exception
+    public String getThumbnail(FileInfo fileInfo) throws Exception
     {
-        Map<String, String> fileInfo = dbClient.getFile(metadataId);
-        return fileInfo.get("thumbnailName") != null;
+        if (fileInfo.getThumbnailName() == null)
+            throw new IllegalArgumentException("File is neither an image nor a video!");
+
+        return download(thumbnailBucket, fileInfo.getThumbnailName());
     }
 
     /**
-     * Returns an url where the thumbnail of the file can be found.
+     * Checks if thumbnails are served from the in-process cache.
+     *
+     * @return true if thumbnail cache is enabled, false if not.
+     */
+
+    public static boolean isThumbnailCacheEnabled()
+    {
+        return thumbnailCache != null;
+    }
+
+    /**
+     * Looks up the thumbnail of a file in the in-process cache
+     * without accessing database or file server.
      *
      * @param metadataId Metadata id of file.
-     * @return URL which can be used to GET the thumbnail.
+     * @return Cached thumbnail, or null if thumbnail is not cached.
+     */
+
+    public static ThumbnailCache.Entry getCachedThumbnail(int metadataId)
+    {
+        if (thumbnailCache == null)
+            return null;
+
+        return thumbnailCache.get(metadataId);
+    }
+
+    /**
+     * Fetches the thumbnail of the file from the file server
+     * and adds it to the in-process cache.
+     *
+     * @param fileInfo Metadata of file, see Repository.getFile().
+     * @return The thumbnail.
      */
 
-    public String getThumbnail(int metadataId) throws Exception
+    public ThumbnailCache.Entry loadThumbnail(FileInfo fileInfo) throws Exception
     {
-        if (!hasThumbnail(metadataId))
+        final String thumbnailName = fileInfo.getThumbnailName();
+
+        if (thumbnailName == null)
             throw new IllegalArgumentException("File is neither an image nor a video!");
 
-        Map<String, String> fileInfo = dbClient.getFile(metadataId);
-        return download(thumbnailBucket, fileInfo.get("thumbnailName"));
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(16384);
+
+        timed(getObjectDuration, () ->
+        {
+            try (InputStream stream = minioClient.getObject(thumbnailBucket, thumbnailName))
+            {
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while ((count = stream.read(buffer)) != -1)
+                    content.write(buffer, 0, count);
+            }
+
+            return null;
+        });
+
+        if (thumbnailCache == null)
+            return new ThumbnailCache.Entry(thumbnailName, content.toByteArray());
+
+        return thumbnailCache.put(fileInfo.getId(), thumbnailName, content.toByteArray());
     }
 
-    public boolean exists(int metadataId) throws Exception
+    /**
+     * Returns the content type of a thumbnail.
+     *
+     * @param thumbnailName Internal name of thumbnail.
+     * @return MIME type of thumbnail.
+     */
+
+    public static String getThumbnailContentType(String thumbnailName)
     {
-        return dbClient.isFile(metadataId);
+        return getContentType(thumbnailName);
     }
 
     /**
@@ -254,13 +438,16 @@ public class FileStorageClient implements AutoCloseable
 
     public void remove(int metadataId) throws Exception
     {
-        Map<String, String> fileInfo = dbClient.getFile(metadataId);
-        minioClient.removeObject(fileBucket, fileInfo.get("internalName"));
+        FileInfo fileInfo = dbClient.getFile(metadataId);
+        timed(removeObjectDuration, () -> { minioClient.removeObject(fileBucket, fileInfo.getInternalName()); return null; });
 
-        final String thumbnailName = fileInfo.get("thumbnailName");
+        final String thumbnailName = fileInfo.getThumbnailName();
 
         if (thumbnailName != null)
-            minioClient.removeObject(thumbnailBucket, thumbnailName);
+            timed(removeObjectDuration, () -> { minioClient.removeObject(thumbnailBucket, thumbnailName); return null; });
+
+        if (thumbnailCache != null)
+            thumbnailCache.invalidate(metadataId);
 
         dbClient.unregisterFile(metadataId);
     }
@@ -271,11 +458,11 @@ public class FileStorageClient implements AutoCloseable
 
     public void killOrphans() throws Exception
     {
-        List<Map<String, String>> fileList = dbClient.listOrphans();
+        List<FileInfo> fileList = dbClient.listOrphans();
 
-        for (Map<String, String> fileInfo : fileList)
+        for (FileInfo fileInfo : fileList)
         {
-            int metadataId = Integer.parseInt(fileInfo.get("id"));
+            int metadataId = fileInfo.getId();
             remove(metadataId);
         }
     }
@@ -0,0 +1,1529 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import de.fau.cs.osr.amos.asepart.model.Admin;
+import de.fau.cs.osr.amos.asepart.model.Attachment;
+import de.fau.cs.osr.amos.asepart.model.FileInfo;
+import de.fau.cs.osr.amos.asepart.model.Message;
+import de.fau.cs.osr.amos.asepart.model.Observation;
+import de.fau.cs.osr.amos.asepart.model.Project;
+import de.fau.cs.osr.amos.asepart.model.Ticket;
+import de.fau.cs.osr.amos.asepart.model.User;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class keeps all data in memory. It behaves like DatabaseClient,
+ * including the constraints of the database schema, but nothing
+ * is persisted. It is meant for tests and benchmarks.
+ *
+ * Data is held in concurrent maps, indexed by project owner, project
+ * member and by the accounts which accepted or observed a ticket. Reads
+ * do not block. Writes are serialized, a read concurrent to a cascading
+ * delete may see it partially applied.
+ */
+
+public class InMemoryRepository implements Repository
+{
+    // mutable entries of the store, callers get immutable rows of the model package
+    private static final class AccountEntry
+    {
+        final String loginName;
+        final boolean admin;
+
+        volatile String password;
+        volatile String firstName;
+        volatile String lastName;
+        volatile String phoneNumber;
+
+        AccountEntry(String loginName, boolean admin)
+        {
+            this.loginName = loginName;
+            this.admin = admin;
+        }
+    }
+
+    private static final class ProjectEntry
+    {
+        final String entryKey;
+
+        volatile String name;
+        volatile String owner;
+        volatile boolean finished = false;
+
+        final Set<String> members = new ConcurrentSkipListSet<>();
+        final Set<Integer> tickets = new ConcurrentSkipListSet<>();
+
+        ProjectEntry(String entryKey)
+        {
+            this.entryKey = entryKey;
+        }
+    }
+
+    private static final class TicketEntry
+    {
+        final int id;
+        final String projectKey;
+
+        volatile String name;
+        volatile String summary;
+        volatile String description;
+        volatile String category;
+        volatile String status = "open";
+        volatile int requiredObservations;
+
+        final Set<String> assignees = new ConcurrentSkipListSet<>();
+        final List<Observation> observations = new CopyOnWriteArrayList<>();
+        final List<MessageEntry> messages = new CopyOnWriteArrayList<>();
+        final List<Integer> attachments = new CopyOnWriteArrayList<>();
+
+        TicketEntry(int id, String projectKey)
+        {
+            this.id = id;
+            this.projectKey = projectKey;
+        }
+    }
+
+    private static final class MessageEntry
+    {
+        final int id;
+        final String sender;
+        final long timestamp;
+        final String content;
+        final Integer attachment;
+
+        MessageEntry(int id, String sender, long timestamp, String content, Integer attachment)
+        {
+            this.id = id;
+            this.sender = sender;
+            this.timestamp = timestamp;
+            this.content = content;
+            this.attachment = attachment;
+        }
+    }
+
+    private static final class Change
+    {
+        final String projectKey;
+        final String entity;
+        final String entityId;
+
+        Change(String projectKey, String entity, String entityId)
+        {
+            this.projectKey = projectKey;
+            this.entity = entity;
+            this.entityId = entityId;
+        }
+    }
+
+    private static final Set<String> categories = new HashSet<>(Arrays.asList("one-time-error", "trace", "behavior"));
+    private static final Set<String> outcomes = new HashSet<>(Arrays.asList("positive", "negative"));
+
+    private static volatile InMemoryRepository shared;
+
+    // sorted maps, so that lists are returned in a stable order
+    private final ConcurrentSkipListMap<String, AccountEntry> accounts = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, ProjectEntry> projects = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, TicketEntry> tickets = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, FileInfo> files = new ConcurrentSkipListMap<>();
+
+    // change log by sequence number, written in order while holding the write lock
+    private final ConcurrentSkipListMap<Long, Change> changes = new ConcurrentSkipListMap<>();
+
+    // versions are kept when a project is deleted, so a recreated project continues its versions
+    private final ConcurrentHashMap<String, AtomicLong> projectVersions = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Set<String>> projectsByOwner = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> projectsByMember = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Integer>> ticketsByUser = new ConcurrentHashMap<>();
+
+    private final AtomicInteger ticketSequence = new AtomicInteger();
+    private final AtomicInteger observationSequence = new AtomicInteger();
+    private final AtomicInteger messageSequence = new AtomicInteger();
+    private final AtomicInteger fileSequence = new AtomicInteger();
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    // tokens of pruning checkpoints by creation time, older tokens are expired below the horizon
+    private final TreeMap<Long, Long> changeCheckpoints = new TreeMap<>();
+    private volatile long changeHorizon = 0;
+
+    private final Object writeLock = new Object();
+
+    /**
+     * Creates an empty repository.
+     */
+
+    public InMemoryRepository()
+    {
+    }
+
+    /**
+     * Returns the repository shared by all requests of the web service.
+     * On first use, it is filled with the same accounts, project and
+     * ticket as postgres/testdata.sql.
+     *
+     * @return Shared repository.
+     */
+
+    public static InMemoryRepository shared()
+    {
+        if (shared == null)
+        {
+            synchronized (InMemoryRepository.class)
+            {
+                if (shared == null)
+                    shared = createTestData();
+            }
+        }
+
+        return shared;
+    }
+
+    private static InMemoryRepository createTestData()
+    {
+        InMemoryRepository repository = new InMemoryRepository();
+
+        try
+        {
+            repository.insertAdmin("admin", "Default", "Admin");
+            repository.insertUser("user", "Default", "User", "+4917123456");
+
+            repository.insertProject("pizza", "Pizza Project", "admin");
+            repository.insertTicket("Developers are hungry", "There is an insufficient amount of pizza available.",
+                    "A developer is a tool which converts pizza into code.", "behavior", 8, "pizza");
+            repository.joinProject("user", "pizza");
+
+            // these accounts should own nothing/should not be part of any projects etc.
+            repository.insertAdmin("nobodyadmin", "Nobody", "Admin");
+            repository.insertUser("nobodyuser", "Nobody", "User", "000");
+
+            for (String[] user : new String[][] {{"david", "David", "Haller"}, {"sebastian", "Sebastian", "Duda"},
+                    {"long", "Long", "Do"}, {"mark", "Mark", "Rudtke"}, {"dumitru", "Dumitru", "Cotet"},
+                    {"tanja", "Tanja", "Batz"}, {"michaela", "Michaela", "Macht"}, {"georg", "Georg", "Schwarz"}})
+            {
+                repository.insertUser(user[0], user[1], user[2], "000");
+            }
+
+            // accounts use their name as password
+            for (String loginName : repository.accounts.keySet())
+                repository.changePassword(loginName, loginName);
+        }
+
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("Failed to create test data.", e);
+        }
+
+        return repository;
+    }
+
+    private static SQLException violation(String state, String message)
+    {
+        return new SQLException(message, state);
+    }
+
+    private static SQLException noResult()
+    {
+        return new SQLException("No results were returned by the query.", "02000");
+    }
+
+    private static void checkNotNull(String column, Object value) throws SQLException
+    {
+        if (value == null)
+            throw violation("23502", "null value in column \"" + column + "\" violates not-null constraint");
+    }
+
+    private static void checkLength(String column, String value, int maxLength) throws SQLException
+    {
+        checkNotNull(column, value);
+
+        if (value.length() > maxLength)
+            throw violation("22001", "value too long for column \"" + column + "\"");
+    }
+
+    private static void checkCategory(String category) throws SQLException
+    {
+        checkNotNull("category", category);
+
+        if (!categories.contains(category))
+            throw violation("22P02", "invalid input value for enum ticket_category: \"" + category + "\"");
+    }
+
+    private static <K, V> Set<V> index(ConcurrentHashMap<K, Set<V>> index, K key)
+    {
+        return index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>());
+    }
+
+    private static <K, V> Set<V> lookup(ConcurrentHashMap<K, Set<V>> index, K key)
+    {
+        Set<V> result = index.get(key);
+        return result != null ? result : new HashSet<>();
+    }
+
+    private AccountEntry account(String loginName, boolean admin)
+    {
+        AccountEntry account = loginName != null ? accounts.get(loginName) : null;
+        return account != null && account.admin == admin ? account : null;
+    }
+
+    private AccountEntry requireUser(String loginName) throws SQLException
+    {
+        AccountEntry user = account(loginName, false);
+
+        if (user == null)
+            throw violation("23503", "user account \"" + loginName + "\" does not exist");
+
+        return user;
+    }
+
+    // must be called while holding the write lock, like the triggers of the database
+    private void logChange(String projectKey, String entity, Object entityId)
+    {
+        changes.put(changeSequence.incrementAndGet(), new Change(projectKey, entity, String.valueOf(entityId)));
+        projectVersions.computeIfAbsent(projectKey, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private TicketEntry requireTicket(int id) throws SQLException
+    {
+        TicketEntry ticket = tickets.get(id);
+
+        if (ticket == null)
+            throw violation("23503", "ticket " + id + " does not exist");
+
+        return ticket;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    @Override
+    public void migrateSchema()
+    {
+    }
+
+    @Override
+    public void bindPrincipal(String loginName)
+    {
+    }
+
+    @Override
+    public QueryStatistics getQueryStatistics()
+    {
+        return new QueryStatistics();
+    }
+
+    @Override
+    public String getAuthenticatedRole(String loginName, String password)
+    {
+        AccountEntry account = loginName != null ? accounts.get(loginName) : null;
+
+        if (!PasswordHasher.verify(password, account != null ? account.password : null))
+            return null;
+
+        return account.admin ? "Admin" : "User";
+    }
+
+    @Override
+    public void changePassword(String loginName, String password)
+    {
+        if (password == null || password.isEmpty())
+            throw new IllegalArgumentException("Password must not be empty");
+
+        AccountEntry account = loginName != null ? accounts.get(loginName) : null;
+
+        if (account != null)
+            account.password = PasswordHasher.hash(password);
+    }
+
+    private void insertAccount(String loginName, boolean admin, String firstName, String lastName, String phoneNumber) throws SQLException
+    {
+        checkLength("login_name", loginName, 32);
+        checkLength("first_name", firstName, 64);
+        checkLength("last_name", lastName, 64);
+
+        if (!admin)
+            checkLength("phone_number", phoneNumber, 32);
+
+        AccountEntry account = new AccountEntry(loginName, admin);
+        account.firstName = firstName;
+        account.lastName = lastName;
+        account.phoneNumber = phoneNumber;
+
+        synchronized (writeLock)
+        {
+            if (accounts.putIfAbsent(loginName, account) != null)
+                throw violation("23505", "duplicate key value violates unique constraint, login_name=" + loginName);
+        }
+    }
+
+    @Override
+    public void insertUser(String loginName, String firstName, String lastName, String phoneNumber) throws SQLException
+    {
+        insertAccount(loginName, false, firstName, lastName, phoneNumber);
+    }
+
+    @Override
+    public void updateUser(String loginName, String firstName, String lastName, String phoneNumber) throws SQLException
+    {
+        checkLength("first_name", firstName, 64);
+        checkLength("last_name", lastName, 64);
+        checkLength("phone_number", phoneNumber, 32);
+
+        synchronized (writeLock)
+        {
+            AccountEntry user = account(loginName, false);
+
+            if (user != null)
+            {
+                user.firstName = firstName;
+                user.lastName = lastName;
+                user.phoneNumber = phoneNumber;
+            }
+        }
+    }
+
+    @Override
+    public boolean isUser(String loginName)
+    {
+        return account(loginName, false) != null;
+    }
+
+    private static User userRow(AccountEntry user)
+    {
+        return new User(user.loginName, user.firstName, user.lastName, user.phoneNumber);
+    }
+
+    @Override
+    public User getUser(String loginName) throws SQLException
+    {
+        AccountEntry user = account(loginName, false);
+
+        if (user == null)
+            throw noResult();
+
+        return userRow(user);
+    }
+
+    private static boolean matchesPrefix(AccountEntry account, String search)
+    {
+        if (search == null)
+            return true;
+
+        final String prefix = search.toLowerCase(Locale.ROOT);
+
+        return account.loginName.toLowerCase(Locale.ROOT).startsWith(prefix)
+                || account.firstName.toLowerCase(Locale.ROOT).startsWith(prefix)
+                || account.lastName.toLowerCase(Locale.ROOT).startsWith(prefix);
+    }
+
+    @Override
+    public List<User> listUsers(String search, String after, int limit)
+    {
+        List<User> result = new ArrayList<>();
+
+        for (AccountEntry account : (after != null ? accounts.tailMap(after, false) : accounts).values())
+        {
+            if (result.size() == limit)
+                break;
+
+            if (!account.admin && matchesPrefix(account, search))
+                result.add(userRow(account));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void insertAdmin(String loginName, String firstName, String lastName) throws SQLException
+    {
+        insertAccount(loginName, true, firstName, lastName, null);
+    }
+
+    @Override
+    public void updateAdmin(String loginName, String firstName, String lastName) throws SQLException
+    {
+        checkLength("first_name", firstName, 64);
+        checkLength("last_name", lastName, 64);
+
+        synchronized (writeLock)
+        {
+            AccountEntry admin = account(loginName, true);
+
+            if (admin != null)
+            {
+                admin.firstName = firstName;
+                admin.lastName = lastName;
+            }
+        }
+    }
+
+    @Override
+    public boolean isAdmin(String loginName)
+    {
+        return account(loginName, true) != null;
+    }
+
+    private static Admin adminRow(AccountEntry admin)
+    {
+        return new Admin(admin.loginName, admin.firstName, admin.lastName);
+    }
+
+    @Override
+    public Admin getAdmin(String loginName) throws SQLException
+    {
+        AccountEntry admin = account(loginName, true);
+
+        if (admin == null)
+            throw noResult();
+
+        return adminRow(admin);
+    }
+
+    @Override
+    public List<Admin> listAdmins(String search, String after, int limit)
+    {
+        List<Admin> result = new ArrayList<>();
+
+        for (AccountEntry account : (after != null ? accounts.tailMap(after, false) : accounts).values())
+        {
+            if (result.size() == limit)
+                break;
+
+            if (account.admin && matchesPrefix(account, search))
+                result.add(adminRow(account));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void deleteAccount(String loginName)
+    {
+        synchronized (writeLock)
+        {
+            AccountEntry account = loginName != null ? accounts.remove(loginName) : null;
+
+            if (account == null)
+                return;
+
+            if (account.admin)
+            {
+                for (String projectKey : lookup(projectsByOwner, loginName))
+                    removeProject(projectKey);
+
+                projectsByOwner.remove(loginName);
+            }
+
+            else
+            {
+                for (String projectKey : lookup(projectsByMember, loginName))
+                {
+                    ProjectEntry project = projects.get(projectKey);
+
+                    if (project != null && project.members.remove(loginName))
+                        logChange(projectKey, "membership", loginName);
+                }
+
+                for (int ticketId : lookup(ticketsByUser, loginName))
+                {
+                    TicketEntry ticket = tickets.get(ticketId);
+
+                    if (ticket != null)
+                    {
+                        ticket.assignees.remove(loginName);
+                        ticket.observations.removeIf(observation -> observation.getLoginName().equals(loginName));
+                        logChange(ticket.projectKey, "ticket", ticketId);
+                    }
+                }
+
+                projectsByMember.remove(loginName);
+                ticketsByUser.remove(loginName);
+            }
+        }
+    }
+
+    @Override
+    public void insertProject(String entryKey, String name, String owner) throws SQLException
+    {
+        checkLength("entry_key", entryKey, 32);
+        checkLength("name", name, 32);
+
+        ProjectEntry project = new ProjectEntry(entryKey);
+        project.name = name;
+        project.owner = owner;
+
+        synchronized (writeLock)
+        {
+            if (account(owner, true) == null)
+                throw violation("23503", "admin account \"" + owner + "\" does not exist");
+
+            if (projects.putIfAbsent(entryKey, project) != null)
+                throw violation("23505", "duplicate key value violates unique constraint, entry_key=" + entryKey);
+
+            index(projectsByOwner, owner).add(entryKey);
+            logChange(entryKey, "project", entryKey);
+            logChange(entryKey, "membership", owner);
+        }
+    }
+
+    @Override
+    public void updateProject(String entryKey, String name, String owner, boolean finished) throws SQLException
+    {
+        checkLength("name", name, 32);
+
+        synchronized (writeLock)
+        {
+            ProjectEntry project = projects.get(entryKey);
+
+            if (project == null)
+                return;
+
+            if (account(owner, true) == null)
+                throw violation("23503", "admin account \"" + owner + "\" does not exist");
+
+            lookup(projectsByOwner, project.owner).remove(entryKey);
+            index(projectsByOwner, owner).add(entryKey);
+
+            logChange(entryKey, "project", entryKey);
+
+            if (!owner.equals(project.owner))
+            {
+                logChange(entryKey, "membership", owner);
+                logChange(entryKey, "membership", project.owner);
+            }
+
+            project.name = name;
+            project.owner = owner;
+            project.finished = finished;
+        }
+    }
+
+    private static Project projectRow(ProjectEntry project)
+    {
+        return new Project(project.entryKey, project.name, project.owner, project.finished);
+    }
+
+    private List<Project> projectRows(Set<String> projectKeys)
+    {
+        List<Project> result = new ArrayList<>(projectKeys.size());
+
+        for (String projectKey : projectKeys)
+        {
+            ProjectEntry project = projects.get(projectKey);
+
+            if (project != null)
+                result.add(projectRow(project));
+        }
+
+        return result;
+    }
+
+    @Override
+    public Project getProject(String entryKey) throws SQLException
+    {
+        ProjectEntry project = entryKey != null ? projects.get(entryKey) : null;
+
+        if (project == null)
+            throw noResult();
+
+        return projectRow(project);
+    }
+
+    @Override
+    public List<Project> listProjects(String owner)
+    {
+        return projectRows(lookup(projectsByOwner, owner));
+    }
+
+    @Override
+    public List<Project> listJoinedProjects(String user)
+    {
+        return projectRows(lookup(projectsByMember, user));
+    }
+
+    private void removeProject(String entryKey)
+    {
+        ProjectEntry project = projects.remove(entryKey);
+
+        if (project == null)
+            return;
+
+        for (int ticketId : project.tickets)
+            removeTicket(ticketId);
+
+        for (String member : project.members)
+        {
+            lookup(projectsByMember, member).remove(entryKey);
+            logChange(entryKey, "membership", member);
+        }
+
+        lookup(projectsByOwner, project.owner).remove(entryKey);
+        logChange(entryKey, "membership", project.owner);
+    }
+
+    @Override
+    public void deleteProject(String entryKey)
+    {
+        synchronized (writeLock)
+        {
+            removeProject(entryKey);
+        }
+    }
+
+    @Override
+    public List<User> getUsersOfProject(String projectKey)
+    {
+        List<User> result = new ArrayList<>();
+        ProjectEntry project = projectKey != null ? projects.get(projectKey) : null;
+
+        if (project != null)
+        {
+            for (String member : project.members)
+            {
+                AccountEntry user = account(member, false);
+
+                if (user != null)
+                    result.add(userRow(user));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean isUserMemberOfProject(String loginName, String projectKey)
+    {
+        return lookup(projectsByMember, loginName).contains(projectKey);
+    }
+
+    private static Map<String, String> access(ProjectEntry project, String loginName)
+    {
+        Map<String, String> result = new HashMap<>(5);
+        result.put("projectKey", project.entryKey);
+        result.put("owner", project.owner);
+        result.put("finished", String.valueOf(project.finished));
+        result.put("member", String.valueOf(project.members.contains(loginName)));
+
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getProjectAccess(String loginName, String projectKey)
+    {
+        ProjectEntry project = projectKey != null ? projects.get(projectKey) : null;
+        return project != null ? access(project, loginName) : null;
+    }
+
+    @Override
+    public Map<String, String> getTicketAccess(String loginName, int ticketId)
+    {
+        TicketEntry ticket = tickets.get(ticketId);
+        ProjectEntry project = ticket != null ? projects.get(ticket.projectKey) : null;
+
+        if (project == null)
+            return null;
+
+        Map<String, String> result = access(project, loginName);
+        result.put("ticketId", String.valueOf(ticketId));
+
+        return result;
+    }
+
+    @Override
+    public void joinProject(String loginName, String entryKey) throws SQLException
+    {
+        synchronized (writeLock)
+        {
+            ProjectEntry project = entryKey != null ? projects.get(entryKey) : null;
+
+            if (project == null)
+                throw violation("23503", "project \"" + entryKey + "\" does not exist");
+
+            requireUser(loginName);
+
+            if (!project.members.add(loginName))
+                throw violation("23505", "duplicate key value violates unique constraint, membership=" + entryKey + "," + loginName);
+
+            index(projectsByMember, loginName).add(entryKey);
+            logChange(entryKey, "membership", loginName);
+        }
+    }
+
+    @Override
+    public void leaveProject(String loginName, String entryKey)
+    {
+        synchronized (writeLock)
+        {
+            ProjectEntry project = entryKey != null ? projects.get(entryKey) : null;
+
+            if (project != null && project.members.remove(loginName))
+                logChange(entryKey, "membership", loginName);
+
+            lookup(projectsByMember, loginName).remove(entryKey);
+        }
+    }
+
+    private static void checkTicket(String name, String summary, String description, String category, int requiredObservations) throws SQLException
+    {
+        checkLength("name", name, 128);
+        checkNotNull("summary", summary);
+        checkNotNull("description", description);
+        checkCategory(category);
+
+        if (requiredObservations < 0)
+            throw violation("23514", "new row for relation \"ticket\" violates check constraint on required_obversations");
+    }
+
+    @Override
+    public void insertTicket(String name, String summary, String description, String category, int requiredObservations, String projectKey) throws SQLException
+    {
+        checkTicket(name, summary, description, category, requiredObservations);
+
+        synchronized (writeLock)
+        {
+            ProjectEntry project = projectKey != null ? projects.get(projectKey) : null;
+
+            if (project == null)
+                throw violation("23503", "project \"" + projectKey + "\" does not exist");
+
+            TicketEntry ticket = new TicketEntry(ticketSequence.incrementAndGet(), projectKey);
+            ticket.name = name;
+            ticket.summary = summary;
+            ticket.description = description;
+            ticket.category = category;
+            ticket.requiredObservations = requiredObservations;
+
+            tickets.put(ticket.id, ticket);
+            project.tickets.add(ticket.id);
+            logChange(projectKey, "ticket", ticket.id);
+        }
+    }
+
+    @Override
+    public void updateTicket(int id, String name, String summary, String description, String category, int requiredObservations) throws SQLException
+    {
+        checkTicket(name, summary, description, category, requiredObservations);
+
+        synchronized (writeLock)
+        {
+            TicketEntry ticket = tickets.get(id);
+
+            if (ticket != null)
+            {
+                ticket.name = name;
+                ticket.summary = summary;
+                ticket.description = description;
+                ticket.category = category;
+                ticket.requiredObservations = requiredObservations;
+                logChange(ticket.projectKey, "ticket", id);
+            }
+        }
+    }
+
+    private static Ticket ticketRow(TicketEntry ticket, String status, Set<String> fields)
+    {
+        Set<String> usersPositive = new HashSet<>();
+        int positive = 0;
+        int negative = 0;
+
+        for (Observation observation : ticket.observations)
+        {
+            if (observation.getOutcome().equals("positive"))
+            {
+                usersPositive.add(observation.getLoginName());
+                positive += observation.getQuantity();
+            }
+
+            else negative += observation.getQuantity();
+        }
+
+        return new Ticket(ticket.id, ticket.name, ticket.summary, ticket.description, ticket.category, status,
+                ticket.requiredObservations, ticket.projectKey,
+                ticket.assignees.size(), usersPositive.size(), positive, negative, fields);
+    }
+
+    @Override
+    public Ticket getTicket(int id) throws SQLException
+    {
+        TicketEntry ticket = tickets.get(id);
+
+        if (ticket == null)
+            throw noResult();
+
+        return ticketRow(ticket, ticket.status, null);
+    }
+
+    @Override
+    public List<Ticket> getTicketsOfProject(String projectKey, String loginName)
+    {
+        return getTicketsOfProject(projectKey, loginName, new TicketQuery());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareTickets(String sort, Ticket row, String value, int id)
+    {
+        Comparable key = row.getSortKey(sort);
+        Comparable other = value;
+
+        if (sort.equals("id"))
+        {
+            key = row.getId();
+            other = Integer.valueOf(value);
+        }
+
+        else if (sort.equals("category"))
+        {
+            key = TicketQuery.CATEGORIES.indexOf(row.getCategory());
+            other = TicketQuery.CATEGORIES.indexOf(value);
+        }
+
+        else if (sort.equals("status"))
+        {
+            key = TicketQuery.STATES.indexOf(row.getStatus());
+            other = TicketQuery.STATES.indexOf(value);
+        }
+
+        final int result = key.compareTo(other);
+        return result != 0 ? result : Integer.compare(row.getId(), id);
+    }
+
+    @Override
+    public List<Ticket> getTicketsOfProject(String projectKey, String loginName, TicketQuery query)
+    {
+        List<Ticket> result = new ArrayList<>();
+        ProjectEntry project = projectKey != null ? projects.get(projectKey) : null;
+
+        if (project == null)
+            return result;
+
+        final String sort = query.getSort();
+        final int sign = query.isDescending() ? -1 : 1;
+
+        for (int ticketId : project.tickets)
+        {
+            TicketEntry ticket = tickets.get(ticketId);
+
+            if (ticket == null)
+                continue;
+
+            if (query.getCategory() != null && !query.getCategory().equals(ticket.category))
+                continue;
+
+            if (query.getIds() != null && !query.getIds().contains(ticketId))
+                continue;
+
+            final String status = statusOf(ticket, loginName);
+
+            if (query.getStatus() != null && !query.getStatus().equals(status))
+                continue;
+
+            Ticket row = ticketRow(ticket, status, query.getFields());
+
+            if (query.getAfterId() != null && sign * compareTickets(sort, row, query.getAfterValue(), query.getAfterId()) <= 0)
+                continue;
+
+            result.add(row);
+        }
+
+        result.sort((a, b) -> sign * compareTickets(sort, a, b.getSortKey(sort), b.getId()));
+
+        if (query.getLimit() > 0 && result.size() > query.getLimit())
+            return new ArrayList<>(result.subList(0, query.getLimit()));
+
+        return result;
+    }
+
+    @Override
+    public List<Ticket> getTickets(Collection<String> projectKeys, Collection<Integer> ticketIds, String loginName)
+    {
+        List<Ticket> result = new ArrayList<>();
+
+        for (String projectKey : projectKeys)
+            result.addAll(getTicketsOfProject(projectKey, loginName));
+
+        for (int ticketId : ticketIds)
+        {
+            TicketEntry ticket = tickets.get(ticketId);
+
+            if (ticket != null && !projectKeys.contains(ticket.projectKey))
+                result.add(ticketRow(ticket, statusOf(ticket, loginName), null));
+        }
+
+        return result;
+    }
+
+    // status of a ticket for a user, like the statement of the database client
+    private static String statusOf(TicketEntry ticket, String loginName)
+    {
+        if (!ticket.status.equals("open") || loginName == null || !ticket.assignees.contains(loginName))
+            return ticket.status;
+
+        for (Observation observation : ticket.observations)
+        {
+            if (observation.getLoginName().equals(loginName))
+                return "processed";
+        }
+
+        return "accepted";
+    }
+
+    // splits text into lower-case words, like the 'simple' text search configuration
+    private static List<String> toWords(String text)
+    {
+        List<String> result = new ArrayList<>();
+
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+        {
+            if (!word.isEmpty())
+                result.add(word);
+        }
+
+        return result;
+    }
+
+    // rank is the share of matching words, all terms must occur
+    private static float rankText(List<String> terms, String text)
+    {
+        final List<String> words = toWords(text);
+
+        if (!words.containsAll(terms))
+            return 0;
+
+        int matches = 0;
+
+        for (String word : words)
+        {
+            if (terms.contains(word))
+                matches++;
+        }
+
+        return matches / (float) words.size();
+    }
+
+    private static String escape(String text)
+    {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // the text is escaped, so that the highlights are its only markup
+    private static String highlight(List<String> terms, String text)
+    {
+        if (terms.isEmpty())
+            return escape(text);
+
+        List<String> quoted = new ArrayList<>(terms.size());
+
+        for (String term : terms)
+            quoted.add(Pattern.quote(term));
+
+        Matcher matcher = Pattern.compile("(?iU)\\b(" + String.join("|", quoted) + ")\\b").matcher(text);
+        StringBuilder result = new StringBuilder();
+        int end = 0;
+
+        while (matcher.find())
+        {
+            result.append(escape(text.substring(end, matcher.start())))
+                  .append("<mark>").append(escape(matcher.group())).append("</mark>");
+            end = matcher.end();
+        }
+
+        return result.append(escape(text.substring(end))).toString();
+    }
+
+    private static int compareHits(Map<String, String> hit, Map<String, String> other)
+    {
+        int result = Float.compare(Float.parseFloat(hit.get("rank")), Float.parseFloat(other.get("rank")));
+
+        if (result == 0)
+            result = hit.get("type").compareTo(other.get("type"));
+
+        if (result == 0)
+            result = Integer.compare(Integer.parseInt(hit.get("id")), Integer.parseInt(other.get("id")));
+
+        return result;
+    }
+
+    private static Map<String, String> hitRow(String type, int id, TicketEntry ticket, float rank, String headline)
+    {
+        Map<String, String> row = new HashMap<>(6);
+        row.put("type", type);
+        row.put("id", String.valueOf(id));
+        row.put("ticketId", String.valueOf(ticket.id));
+        row.put("ticketName", ticket.name);
+        row.put("rank", String.valueOf(rank));
+        row.put("headline", headline);
+
+        return row;
+    }
+
+    /*
+     * Only approximates the database: the search text is treated as words
+     * which must all occur, operators of the web search syntax are ignored.
+     */
+
+    @Override
+    public List<Map<String, String>> searchProject(String projectKey, String text, Map<String, String> after, int limit)
+    {
+        List<Map<String, String>> result = new ArrayList<>();
+        ProjectEntry project = projectKey != null ? projects.get(projectKey) : null;
+        final List<String> terms = toWords(text);
+
+        if (project == null || terms.isEmpty())
+            return result;
+
+        for (int ticketId : project.tickets)
+        {
+            TicketEntry ticket = tickets.get(ticketId);
+
+            if (ticket == null)
+                continue;
+
+            final float rank = rankText(terms, ticket.name + " " + ticket.summary + " " + ticket.description);
+
+            if (rank > 0)
+                result.add(hitRow("ticket", ticket.id, ticket, rank, highlight(terms, ticket.summary + " " + ticket.description)));
+
+            for (MessageEntry message : ticket.messages)
+            {
+                final float messageRank = rankText(terms, message.content);
+
+                if (messageRank > 0)
+                    result.add(hitRow("message", message.id, ticket, messageRank, highlight(terms, message.content)));
+            }
+        }
+
+        if (after != null)
+            result.removeIf(hit -> compareHits(hit, after) >= 0);
+
+        result.sort((a, b) -> compareHits(b, a));
+
+        if (result.size() > limit)
+            return new ArrayList<>(result.subList(0, limit));
+
+        return result;
+    }
+
+    @Override
+    public void addAttachment(int ticketId, int fileMetadataId) throws SQLException
+    {
+        synchronized (writeLock)
+        {
+            TicketEntry ticket = requireTicket(ticketId);
+
+            if (!files.containsKey(fileMetadataId))
+                throw violation("23503", "file " + fileMetadataId + " does not exist");
+
+            ticket.attachments.add(fileMetadataId);
+            logChange(ticket.projectKey, "ticket", ticketId);
+        }
+    }
+
+    @Override
+    public void removeAttachment(int ticketId, int fileMetadataId)
+    {
+        synchronized (writeLock)
+        {
+            TicketEntry ticket = tickets.get(ticketId);
+
+            if (ticket != null && ticket.attachments.removeIf(attachment -> attachment == fileMetadataId))
+                logChange(ticket.projectKey, "ticket", ticketId);
+        }
+    }
+
+    @Override
+    public List<Attachment> listAttachments(int ticketId)
+    {
+        List<Attachment> result = new ArrayList<>();
+        TicketEntry ticket = tickets.get(ticketId);
+
+        if (ticket == null)
+            return result;
+
+        for (int attachment : ticket.attachments)
+        {
+            // attachments of unregistered files are gone
+            FileInfo file = files.get(attachment);
+
+            if (file != null)
+                result.add(new Attachment(ticketId, attachment, file.getOriginalName()));
+        }
+
+        return result;
+    }
+
+    private void removeTicket(int id)
+    {
+        TicketEntry ticket = tickets.remove(id);
+
+        if (ticket == null)
+            return;
+
+        ProjectEntry project = projects.get(ticket.projectKey);
+
+        if (project != null)
+            project.tickets.remove(id);
+
+        for (String user : ticket.assignees)
+            lookup(ticketsByUser, user).remove(id);
+
+        for (Observation observation : ticket.observations)
+            lookup(ticketsByUser, observation.getLoginName()).remove(id);
+
+        logChange(ticket.projectKey, "ticket", id);
+    }
+
+    @Override
+    public void deleteTicket(int id)
+    {
+        synchronized (writeLock)
+        {
+            removeTicket(id);
+        }
+    }
+
+    @Override
+    public void acceptTicket(String loginName, int id) throws SQLException
+    {
+        synchronized (writeLock)
+        {
+            TicketEntry ticket = requireTicket(id);
+            requireUser(loginName);
+
+            if (!ticket.assignees.add(loginName))
+                throw violation("23505", "duplicate key value violates unique constraint, assignment=" + id + "," + loginName);
+
+            index(ticketsByUser, loginName).add(id);
+            logChange(ticket.projectKey, "ticket", id);
+        }
+    }
+
+    @Override
+    public boolean hasUserAcceptedTicket(String loginName, int id)
+    {
+        TicketEntry ticket = tickets.get(id);
+        return ticket != null && loginName != null && ticket.assignees.contains(loginName);
+    }
+
+    @Override
+    public int observationCount(String loginName, int ticketId)
+    {
+        TicketEntry ticket = tickets.get(ticketId);
+        int count = 0;
+
+        if (ticket != null)
+        {
+            for (Observation observation : ticket.observations)
+            {
+                if (observation.getLoginName().equals(loginName))
+                    count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public void submitObservation(String loginName, int ticketId, String outcome, int quantity) throws SQLException
+    {
+        checkNotNull("outcome", outcome);
+
+        if (!outcomes.contains(outcome))
+            throw violation("22P02", "invalid input value for enum observation_outcome: \"" + outcome + "\"");
+
+        if (quantity <= 0)
+            throw violation("23514", "new row for relation \"observation\" violates check constraint on quantity");
+
+        synchronized (writeLock)
+        {
+            TicketEntry ticket = requireTicket(ticketId);
+            requireUser(loginName);
+
+            ticket.observations.add(new Observation(observationSequence.incrementAndGet(), loginName, outcome, quantity));
+            index(ticketsByUser, loginName).add(ticketId);
+
+            int sum = 0;
+
+            for (Observation observation : ticket.observations)
+                sum += observation.getQuantity();
+
+            if (sum >= ticket.requiredObservations)
+                ticket.status = "finished";
+
+            logChange(ticket.projectKey, "ticket", ticketId);
+        }
+    }
+
+    @Override
+    public void streamObservations(int ticketId, RowWriter<Observation> writer) throws IOException
+    {
+        TicketEntry ticket = tickets.get(ticketId);
+
+        if (ticket == null)
+            return;
+
+        for (Observation observation : ticket.observations)
+            writer.write(observation);
+    }
+
+    @Override
+    public void sendMessage(String sender, String content, String attachment, int ticketId) throws SQLException
+    {
+        checkLength("sender", sender, 32);
+        checkNotNull("content", content);
+
+        Integer attachmentId = null;
+
+        if (attachment != null && !attachment.isEmpty())
+            attachmentId = Integer.parseInt(attachment);
+
+        synchronized (writeLock)
+        {
+            TicketEntry ticket = requireTicket(ticketId);
+
+            if (attachmentId != null && !files.containsKey(attachmentId))
+                throw violation("23503", "file " + attachmentId + " does not exist");
+
+            MessageEntry message = new MessageEntry(messageSequence.incrementAndGet(), sender, System.currentTimeMillis(), content, attachmentId);
+            ticket.messages.add(message);
+            logChange(ticket.projectKey, "message", message.id);
+        }
+    }
+
+    private Message messageRow(MessageEntry message, int ticketId)
+    {
+        // attachment is reset if file has been unregistered
+        FileInfo file = message.attachment != null ? files.get(message.attachment) : null;
+
+        return new Message(message.id, message.sender, message.timestamp, message.content,
+                file != null ? file.getId() : null, file != null ? file.getOriginalName() : null, ticketId);
+    }
+
+    @Override
+    public void streamMessages(int ticketId, int limit, RowWriter<Message> writer) throws SQLException, IOException
+    {
+        if (limit < 0)
+            throw violation("2201W", "LIMIT must not be negative");
+
+        TicketEntry ticket = tickets.get(ticketId);
+
+        if (ticket == null)
+            return;
+
+        // messages are appended in order of their timestamp
+        List<MessageEntry> messages = new ArrayList<>(ticket.messages);
+
+        for (MessageEntry message : messages.subList(Math.max(0, messages.size() - limit), messages.size()))
+            writer.write(messageRow(message, 0));
+    }
+
+    @Override
+    public List<Message> getMessages(Collection<Integer> messageIds)
+    {
+        List<Message> result = new ArrayList<>();
+
+        // messages are not indexed by id, so all tickets are scanned
+        for (TicketEntry ticket : tickets.values())
+        {
+            for (MessageEntry message : ticket.messages)
+            {
+                if (messageIds.contains(message.id))
+                    result.add(messageRow(message, ticket.id));
+            }
+        }
+
+        result.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return result;
+    }
+
+    @Override
+    public ChangeSet getChanges(String loginName, boolean admin, Long since)
+    {
+        // all changes before the last one are complete, later ones are found by the next call
+        final long horizon = changeHorizon;
+        final long token = Math.max(changes.isEmpty() ? 1 : changes.lastKey() + 1, horizon);
+        final Set<String> visible = lookup(admin ? projectsByOwner : projectsByMember, loginName);
+
+        if (since != null && since < horizon)
+            return new ChangeSet(token, true);
+
+        ChangeSet result = new ChangeSet(token);
+
+        if (since == null || since >= token)
+            return result;
+
+        for (Change change : changes.subMap(since, token).values())
+        {
+            if (visible.contains(change.projectKey) || (change.entity.equals("membership") && change.entityId.equals(loginName)))
+                result.add(change.entity, change.projectKey, change.entityId);
+        }
+
+        return result;
+    }
+
+    // like migration V8, entries are deleted below the newest checkpoint older than the retention
+    @Override
+    public void pruneChanges(long retentionSeconds)
+    {
+        synchronized (writeLock)
+        {
+            final long now = System.nanoTime();
+            final long token = changeSequence.get() + 1;
+            Long horizon = null;
+
+            for (Iterator<Map.Entry<Long, Long>> i = changeCheckpoints.entrySet().iterator(); i.hasNext(); )
+            {
+                Map.Entry<Long, Long> checkpoint = i.next();
+
+                if (now - checkpoint.getKey() > TimeUnit.SECONDS.toNanos(retentionSeconds))
+                {
+                    horizon = checkpoint.getValue();
+                    i.remove();
+                }
+            }
+
+            changeCheckpoints.put(now, token);
+
+            if (horizon != null && horizon > changeHorizon)
+            {
+                changes.headMap(horizon).clear();
+                changeHorizon = horizon;
+            }
+        }
+    }
+
+    private Long getVersion(String loginName, ProjectEntry project)
+    {
+        if (project == null || (!project.owner.equals(loginName) && !project.members.contains(loginName)))
+            return null;
+
+        AtomicLong version = projectVersions.get(project.entryKey);
+        return version != null ? version.get() : 0;
+    }
+
+    @Override
+    public Long getProjectVersion(String loginName, String projectKey)
+    {
+        return getVersion(loginName, projectKey != null ? projects.get(projectKey) : null);
+    }
+
+    @Override
+    public Long getTicketVersion(String loginName, int ticketId)
+    {
+        TicketEntry ticket = tickets.get(ticketId);
+        return getVersion(loginName, ticket != null ? projects.get(ticket.projectKey) : null);
+    }
+
+    @Override
+    public Map<String, Long> getProjectVersions(String loginName)
+    {
+        Set<String> projectKeys = new HashSet<>(lookup(projectsByOwner, loginName));
+        projectKeys.addAll(lookup(projectsByMember, loginName));
+
+        Map<String, Long> result = new HashMap<>();
+
+        for (String projectKey : projectKeys)
+        {
+            Long version = getProjectVersion(loginName, projectKey);
+
+            if (version != null)
+                result.put(projectKey, version);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int registerFile(String internalName, String thumbnailName, String originalName, int ticketId) throws SQLException
+    {
+        checkNotNull("internal_name", internalName);
+        checkNotNull("original_name", originalName);
+
+        synchronized (writeLock)
+        {
+            requireTicket(ticketId);
+
+            FileInfo file = new FileInfo(fileSequence.incrementAndGet(), internalName, thumbnailName, originalName, ticketId);
+            files.put(file.getId(), file);
+
+            return file.getId();
+        }
+    }
+
+    @Override
+    public void unregisterFile(int metadataId)
+    {
+        synchronized (writeLock)
+        {
+            FileInfo file = files.remove(metadataId);
+            TicketEntry ticket = file != null ? tickets.get(file.getTicketId()) : null;
+
+            // like the database, attachments are removed and messages lose their attachment
+            if (ticket != null)
+            {
+                if (ticket.attachments.contains(metadataId))
+                    logChange(ticket.projectKey, "ticket", ticket.id);
+
+                for (MessageEntry message : ticket.messages)
+                {
+                    if (message.attachment != null && message.attachment == metadataId)
+                        logChange(ticket.projectKey, "message", message.id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public FileInfo getFile(int metadataId)
+    {
+        FileInfo file = files.get(metadataId);
+
+        if (file == null)
+            return null;
+
+        // like the database, files of deleted tickets are related to no ticket
+        final int ticketId = tickets.containsKey(file.getTicketId()) ? file.getTicketId() : 0;
+
+        if (ticketId == file.getTicketId())
+            return file;
+
+        return new FileInfo(file.getId(), file.getInternalName(), file.getThumbnailName(), file.getOriginalName(), ticketId);
+    }
+
+    @Override
+    public List<FileInfo> listOrphans()
+    {
+        List<FileInfo> result = new ArrayList<>();
+
+        for (FileInfo file : files.values())
+        {
+            if (tickets.containsKey(file.getTicketId()))
+                continue;
+
+            result.add(new FileInfo(file.getId(), file.getInternalName(), file.getThumbnailName(), file.getOriginalName(), 0));
+        }
+
+        return result;
+    }
+}
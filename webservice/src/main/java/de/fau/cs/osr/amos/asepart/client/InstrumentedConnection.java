@@ -0,0 +1,168 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import de.fau.cs.osr.amos.asepart.metrics.Counter;
+import de.fau.cs.osr.amos.asepart.metrics.Histogram;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps a JDBC connection so that the execution time of each statement
+ * is recorded, labelled by the DatabaseClient method issuing it.
+ * Additionally, each statement is counted in the statistics of the
+ * DatabaseClient owning the connection.
+ *
+ * The method is passed as constant by the caller, so metrics are neither
+ * keyed by SQL text, which is built at run time by some methods, nor is
+ * the stack walked to find the caller.
+ */
+
+class InstrumentedConnection
+{
+    private static final String QUERY_DURATION = "asepart_db_query_duration_seconds";
+    private static final String QUERY_DURATION_HELP = "Execution time of SQL statements per DatabaseClient method.";
+
+    private static final String QUERY_ERRORS = "asepart_db_query_errors_total";
+    private static final String QUERY_ERRORS_HELP = "Number of failed SQL statements per DatabaseClient method.";
+
+    // one entry per DatabaseClient method
+    private static final ConcurrentHashMap<String, QueryMetrics> operations = new ConcurrentHashMap<>();
+
+    private static class QueryMetrics
+    {
+        private final Histogram duration;
+        private final Counter errors;
+
+        QueryMetrics(String operation)
+        {
+            this.duration = Metrics.histogram(QUERY_DURATION, QUERY_DURATION_HELP, "method", operation);
+            this.errors = Metrics.counter(QUERY_ERRORS, QUERY_ERRORS_HELP, "method", operation);
+        }
+    }
+
+    private InstrumentedConnection()
+    {
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target, args);
+        }
+
+        catch (InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private static QueryMetrics metricsOf(String operation)
+    {
+        final QueryMetrics metrics = operations.get(operation);
+        return metrics != null ? metrics : operations.computeIfAbsent(operation, QueryMetrics::new);
+    }
+
+    private static class StatementHandler implements InvocationHandler
+    {
+        private final Statement statement;
+        private final QueryStatistics statistics;
+        private final QueryMetrics metrics;
+
+        private String sql;
+
+        StatementHandler(Statement statement, QueryStatistics statistics, QueryMetrics metrics, String sql)
+        {
+            this.statement = statement;
+            this.statistics = statistics;
+            this.metrics = metrics;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (!method.getName().startsWith("execute"))
+                return InstrumentedConnection.invoke(statement, method, args);
+
+            // plain statements get their SQL at execution
+            if (args != null && args.length > 0 && args[0] instanceof String)
+                sql = (String) args[0];
+
+            else if (sql == null) // batch of plain statements
+                sql = "batch";
+
+            final long start = System.nanoTime();
+
+            try
+            {
+                return InstrumentedConnection.invoke(statement, method, args);
+            }
+
+            catch (SQLException e)
+            {
+                metrics.errors.increment();
+                throw e;
+            }
+
+            finally
+            {
+                final long elapsed = System.nanoTime() - start;
+
+                metrics.duration.observe(elapsed);
+                statistics.record(sql, elapsed);
+            }
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler
+    {
+        private final Connection connection;
+        private final QueryStatistics statistics;
+        private final QueryMetrics metrics;
+
+        ConnectionHandler(Connection connection, QueryStatistics statistics, QueryMetrics metrics)
+        {
+            this.connection = connection;
+            this.statistics = statistics;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            final Object result = InstrumentedConnection.invoke(connection, method, args);
+
+            if (!(result instanceof Statement))
+                return result;
+
+            final String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+
+            return Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(),
+                    new Class<?>[] {method.getReturnType()}, new StatementHandler((Statement) result, statistics, metrics, sql));
+        }
+    }
+
+    /**
+     * Wraps a connection for one call of a DatabaseClient method. Closing
+     * the returned connection closes the wrapped one.
+     *
+     * @param connection Connection to be instrumented.
+     * @param statistics Statistics each executed statement is added to.
+     * @param operation Name of the DatabaseClient method, must be a constant.
+     * @return Connection recording statement execution times.
+     */
+
+    static Connection wrap(Connection connection, QueryStatistics statistics, String operation)
+    {
+        return (Connection) Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection, statistics, metricsOf(operation)));
+    }
+}
@@ -0,0 +1,137 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import de.fau.cs.osr.amos.asepart.ext.Bulkhead;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * This class hashes and verifies passwords using bcrypt. The work runs
+ * on the "password" bulkhead, so that concurrent logins cannot occupy
+ * more processors than configured, and not on the database server.
+ *
+ * Callers wait at most ASEPART_PASSWORD_TIMEOUT milliseconds (default
+ * 2000) for the result. Tasks waiting in the bulkhead's queue would
+ * otherwise block interactive workers for as long as the queue needs
+ * to drain, instead of failing fast like a full bulkhead.
+ *
+ * Hashes are compatible with crypt(password, gen_salt('bf', 8))
+ * of PostgreSQL's pgcrypto extension, which created existing passwords.
+ */
+
+public class PasswordHasher
+{
+    private static final int LOG_ROUNDS = 8;
+
+    // Accounts without password are verified against this hash,
+    // so that the response time does not reveal whether they exist
+    private static final String DUMMY_HASH = BCrypt.hashpw("", BCrypt.gensalt(LOG_ROUNDS));
+
+    private static final long timeout = getTimeout();
+
+    private static long getTimeout()
+    {
+        final String value = System.getenv("ASEPART_PASSWORD_TIMEOUT");
+
+        if (value == null)
+            return 2000;
+
+        try
+        {
+            final long result = Long.parseLong(value);
+
+            if (result > 0)
+                return result;
+        }
+
+        catch (NumberFormatException ignored) {}
+
+        System.err.println("Environment variable ASEPART_PASSWORD_TIMEOUT is invalid, using default: 2000");
+        return 2000;
+    }
+
+    private static <T> T run(Callable<T> task)
+    {
+        final Future<T> result = Bulkhead.password.getExecutor().submit(task);
+
+        try
+        {
+            return result.get(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        catch (TimeoutException e)
+        {
+            // a queued task is skipped by the bulkhead, a running one finishes unobserved
+            result.cancel(false);
+            throw new RejectedExecutionException("Timed out waiting for bulkhead password.", e);
+        }
+
+        catch (InterruptedException e)
+        {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hash.", e);
+        }
+
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Hashes a password with a new salt.
+     *
+     * @param password The password as plain text.
+     * @return The salted bcrypt hash.
+     * @throws RejectedExecutionException if the bulkhead is full or the hash was not computed in time.
+     */
+
+    public static String hash(String password)
+    {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(LOG_ROUNDS)));
+    }
+
+    /**
+     * Checks a password against a stored hash.
+     *
+     * @param password The password as plain text.
+     * @param hash The stored hash, null if no password is set.
+     * @return true if password is correct, false otherwise.
+     * @throws RejectedExecutionException if the bulkhead is full or the hash was not computed in time.
+     */
+
+    public static boolean verify(String password, String hash)
+    {
+        if (password == null)
+            return false;
+
+        return run(() ->
+        {
+            try
+            {
+                if (hash == null)
+                {
+                    BCrypt.checkpw(password, DUMMY_HASH);
+                    return false;
+                }
+
+                return BCrypt.checkpw(password, hash);
+            }
+
+            catch (IllegalArgumentException e) // not a bcrypt hash
+            {
+                return false;
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts the SQL statements issued by one DatabaseClient and the time
+ * spent executing them. Statements are grouped by their SQL text, so
+ * statements issued in a loop (N+1 queries) show up as repeated shapes.
+ *
+ * Instances are not thread-safe, they belong to a single request.
+ */
+
+public class QueryStatistics
+{
+    private int count = 0;
+    private long nanos = 0;
+
+    // in order of first execution
+    private final Map<String, Integer> shapes = new LinkedHashMap<>();
+
+    void record(String sql, long elapsedNanos)
+    {
+        count++;
+        nanos += elapsedNanos;
+
+        shapes.merge(sql, 1, Integer::sum);
+    }
+
+    /**
+     * @return Number of executed statements.
+     */
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return Total execution time of all statements in nanoseconds.
+     */
+
+    public long getNanos()
+    {
+        return nanos;
+    }
+
+    /**
+     * Returns the SQL text of all executed statements, e.g. to explain
+     * them. Parameters are left as placeholders.
+     *
+     * @return Distinct statements in order of their first execution.
+     */
+
+    public Set<String> getStatements()
+    {
+        return shapes.keySet();
+    }
+
+    /**
+     * Returns statements that were executed more than once. Literals
+     * are replaced by placeholders and whitespace is collapsed.
+     *
+     * @return Map from statement shape to number of executions.
+     */
+
+    public Map<String, Integer> getRepeatedShapes()
+    {
+        Map<String, Integer> result = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Integer> shape : shapes.entrySet())
+        {
+            if (shape.getValue() > 1)
+                result.merge(normalize(shape.getKey()), shape.getValue(), Integer::sum);
+        }
+
+        return result;
+    }
+
+    private static String normalize(String sql)
+    {
+        return sql.replaceAll("'[^']*'", "?")
+                  .replaceAll("\\b\\d+\\b", "?")
+                  .replaceAll("\\s+", " ")
+                  .trim();
+    }
+}
@@ -0,0 +1,637 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import de.fau.cs.osr.amos.asepart.model.Admin;
+import de.fau.cs.osr.amos.asepart.model.Attachment;
+import de.fau.cs.osr.amos.asepart.model.FileInfo;
+import de.fau.cs.osr.amos.asepart.model.Message;
+import de.fau.cs.osr.amos.asepart.model.Observation;
+import de.fau.cs.osr.amos.asepart.model.Project;
+import de.fau.cs.osr.amos.asepart.model.Ticket;
+import de.fau.cs.osr.amos.asepart.model.User;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistence operations of the web service. Accounts, projects,
+ * tickets and their details are returned as immutable rows of the
+ * model package, authorization facts and search hits as maps of strings.
+ *
+ * Two implementations exist: DatabaseClient stores data in PostgreSQL,
+ * InMemoryRepository keeps it in memory, which is useful for tests and
+ * benchmarks not depending on a database. The implementation is chosen
+ * by setting ASEPART_STORAGE to "postgres" (default) or "memory".
+ *
+ * Errors of the storage, including constraint violations, are reported
+ * as SQLException by both implementations.
+ */
+
+public interface Repository extends AutoCloseable
+{
+    /**
+     * Opens a repository of the storage selected by ASEPART_STORAGE.
+     * It must be closed after use.
+     *
+     * @return A new DatabaseClient, or the shared InMemoryRepository.
+     */
+
+    static Repository open()
+    {
+        final String storage = System.getenv("ASEPART_STORAGE");
+
+        if ("memory".equals(storage))
+            return InMemoryRepository.shared();
+
+        if (storage != null && !storage.equals("postgres"))
+            System.err.println("Environment variable ASEPART_STORAGE is invalid, using default: postgres");
+
+        return new DatabaseClient();
+    }
+
+    /**
+     * Sets the account this repository acts for.
+     *
+     * @param loginName The account name.
+     */
+
+    void bindPrincipal(String loginName);
+
+    /**
+     * Returns number and execution time of SQL statements issued
+     * by this repository. Statements are only counted by DatabaseClient.
+     *
+     * @return Statistics of this repository.
+     */
+
+    QueryStatistics getQueryStatistics();
+
+    /**
+     * Brings the schema of the storage up to date.
+     * Called once when the web service starts.
+     *
+     * @throws SQLException on database error.
+     */
+
+    void migrateSchema() throws SQLException;
+
+    /**
+     * Checks if authentication is valid and determines the role of the account.
+     *
+     * @param loginName The account name.
+     * @param password The password as plain text.
+     * @return "Admin" or "User" if password is correct, null otherwise.
+     * @throws SQLException on database error.
+     */
+
+    String getAuthenticatedRole(String loginName, String password) throws SQLException;
+
+    /**
+     * Changes password of user or admin account.
+     *
+     * @param loginName The account name.
+     * @param password The password as plain text.
+     * @throws SQLException on database error.
+     * @throws IllegalArgumentException if password is empty.
+     */
+
+    void changePassword(String loginName, String password) throws SQLException;
+
+    /**
+     * Creates a new user. To enable the user to log in,
+     * a password must be set by calling changePassword().
+     *
+     * @param loginName The account name.
+     * @param firstName The first name of the user.
+     * @param lastName The last name of the user.
+     * @param phoneNumber The user's mobile phone number.
+     * @throws SQLException on database error.
+     */
+
+    void insertUser(String loginName, String firstName, String lastName, String phoneNumber) throws SQLException;
+
+    /**
+     * Updates an existing user.
+     *
+     * @param loginName The account name.
+     * @param firstName The first name of the user.
+     * @param lastName The last name of the user.
+     * @param phoneNumber The user's mobile phone number.
+     * @throws SQLException on database error.
+     */
+
+    void updateUser(String loginName, String firstName, String lastName, String phoneNumber) throws SQLException;
+
+    /**
+     * @param loginName The account name.
+     * @return true if user exists, false if not.
+     * @throws SQLException on database error.
+     */
+
+    boolean isUser(String loginName) throws SQLException;
+
+    /**
+     * @param loginName The account name.
+     * @return The user's details.
+     * @throws SQLException on database error, or if the user does not exist.
+     */
+
+    User getUser(String loginName) throws SQLException;
+
+    /**
+     * Returns a page of users ordered by login name.
+     *
+     * @param search Only return users whose login name, first name or last name
+     *               starts with this prefix, ignoring case, or null for all.
+     * @param after Login name of the last user of the previous page, or null.
+     * @param limit Maximum number of users.
+     * @return List of users.
+     * @throws SQLException on database error.
+     */
+
+    List<User> listUsers(String search, String after, int limit) throws SQLException;
+
+    /**
+     * Creates a new admin. To enable the admin to log in,
+     * a password must be set by calling changePassword().
+     *
+     * @param loginName The account name.
+     * @param firstName The first name of the admin.
+     * @param lastName The last name of the admin.
+     * @throws SQLException on database error.
+     */
+
+    void insertAdmin(String loginName, String firstName, String lastName) throws SQLException;
+
+    /**
+     * Updates an existing admin.
+     *
+     * @param loginName The account name.
+     * @param firstName The first name of the admin.
+     * @param lastName The last name of the admin.
+     * @throws SQLException on database error.
+     */
+
+    void updateAdmin(String loginName, String firstName, String lastName) throws SQLException;
+
+    /**
+     * @param loginName The account name.
+     * @return true if admin exists, false if not.
+     * @throws SQLException on database error.
+     */
+
+    boolean isAdmin(String loginName) throws SQLException;
+
+    /**
+     * @param loginName The account name.
+     * @return The admin's details.
+     * @throws SQLException on database error, or if the admin does not exist.
+     */
+
+    Admin getAdmin(String loginName) throws SQLException;
+
+    /**
+     * Returns a page of admins ordered by login name.
+     *
+     * @param search Only return admins whose login name, first name or last name
+     *               starts with this prefix, ignoring case, or null for all.
+     * @param after Login name of the last admin of the previous page, or null.
+     * @param limit Maximum number of admins.
+     * @return List of admins.
+     * @throws SQLException on database error.
+     */
+
+    List<Admin> listAdmins(String search, String after, int limit) throws SQLException;
+
+    /**
+     * Delete an account (admin or user). Projects owned by the account,
+     * its memberships, acceptances and observations are deleted as well.
+     *
+     * @param loginName The account name.
+     * @throws SQLException on database error.
+     */
+
+    void deleteAccount(String loginName) throws SQLException;
+
+    /**
+     * Create a new project.
+     *
+     * @param entryKey Unique key a user is required to know to join a project.
+     * @param name Name of the project.
+     * @param owner Name of the admin who owns the project.
+     * @throws SQLException on database error.
+     */
+
+    void insertProject(String entryKey, String name, String owner) throws SQLException;
+
+    /**
+     * Updates an existing project.
+     *
+     * @param entryKey Unique key a user is required to know to join a project.
+     * @param name Name of the project.
+     * @param owner Name of the admin who owns the project.
+     * @param finished Mark the project as finished or not (finished projects are read-only and not visible to users).
+     * @throws SQLException on database error.
+     */
+
+    void updateProject(String entryKey, String name, String owner, boolean finished) throws SQLException;
+
+    /**
+     * @param entryKey Unique project key.
+     * @return The project's details.
+     * @throws SQLException on database error, or if the project does not exist.
+     */
+
+    Project getProject(String entryKey) throws SQLException;
+
+    /**
+     * @param owner The account name of the admin.
+     * @return List of projects owned by the admin.
+     * @throws SQLException on database error.
+     */
+
+    List<Project> listProjects(String owner) throws SQLException;
+
+    /**
+     * @param user The account name of the user.
+     * @return List of projects the user has joined.
+     * @throws SQLException on database error.
+     */
+
+    List<Project> listJoinedProjects(String user) throws SQLException;
+
+    /**
+     * Delete a project, including its tickets, chat messages etc.
+     *
+     * @param entryKey Unique project key.
+     * @throws SQLException on database error.
+     */
+
+    void deleteProject(String entryKey) throws SQLException;
+
+    /**
+     * @param projectKey Unique key of project.
+     * @return List of users who joined the project.
+     * @throws SQLException on database error.
+     */
+
+    List<User> getUsersOfProject(String projectKey) throws SQLException;
+
+    /**
+     * @param loginName The account name of the user.
+     * @param projectKey Unique key of project.
+     * @return true if user is member of project, false if not.
+     * @throws SQLException on database error.
+     */
+
+    boolean isUserMemberOfProject(String loginName, String projectKey) throws SQLException;
+
+    /**
+     * Resolves all facts needed for an authorization decision about a project.
+     *
+     * @param loginName The account name of the requesting user or admin.
+     * @param projectKey Unique key of project.
+     * @return A map containing projectKey, owner, finished and member (whether
+     *         the account is member of the project), or null if project does not exist.
+     * @throws SQLException on database error.
+     */
+
+    Map<String, String> getProjectAccess(String loginName, String projectKey) throws SQLException;
+
+    /**
+     * Resolves all facts needed for an authorization decision about a ticket.
+     *
+     * @param loginName The account name of the requesting user or admin.
+     * @param ticketId Unique ticket id.
+     * @return A map containing ticketId, projectKey, owner, finished and member (whether
+     *         the account is member of the ticket's project), or null if ticket does not exist.
+     * @throws SQLException on database error.
+     */
+
+    Map<String, String> getTicketAccess(String loginName, int ticketId) throws SQLException;
+
+    /**
+     * @param loginName The account name of the user who wants to join.
+     * @param entryKey Unique key of project.
+     * @throws SQLException on database error.
+     */
+
+    void joinProject(String loginName, String entryKey) throws SQLException;
+
+    /**
+     * @param loginName The account name of the user who wants to leave.
+     * @param entryKey Unique key of project.
+     * @throws SQLException on database error.
+     */
+
+    void leaveProject(String loginName, String entryKey) throws SQLException;
+
+    /**
+     * Creates a new ticket.
+     *
+     * @param name Name of ticket.
+     * @param summary Ticket summary.
+     * @param description Ticket description.
+     * @param category Ticket category.
+     * @param requiredObservations Number of required observations until a ticket is finished.
+     * @param projectKey Unique key of project the ticket relates to.
+     * @throws SQLException on database error.
+     */
+
+    void insertTicket(String name, String summary, String description, String category, int requiredObservations, String projectKey) throws SQLException;
+
+    /**
+     * Updates an existing ticket.
+     *
+     * @param id Unique id of ticket.
+     * @param name Name of ticket.
+     * @param summary Ticket summary.
+     * @param description Ticket description.
+     * @param category Ticket category.
+     * @param requiredObservations Number of required observations until a ticket is finished.
+     * @throws SQLException on database error.
+     */
+
+    void updateTicket(int id, String name, String summary, String description, String category, int requiredObservations) throws SQLException;
+
+    /**
+     * @param id Unique id of ticket.
+     * @return The ticket's details and statistics.
+     * @throws SQLException on database error, or if the ticket does not exist.
+     */
+
+    Ticket getTicket(int id) throws SQLException;
+
+    /**
+     * Gets a lists of all tickets related to a project, including
+     * acceptance and observation statistics of each ticket.
+     *
+     * If a user is given, the status of open tickets is replaced by
+     * "accepted" if the user accepted the ticket, or by "processed"
+     * if the user also submitted an observation.
+     *
+     * @param projectKey Unique project key.
+     * @param loginName Account name of user, or null.
+     * @return List of tickets.
+     * @throws SQLException on database error.
+     */
+
+    List<Ticket> getTicketsOfProject(String projectKey, String loginName) throws SQLException;
+
+    /**
+     * Like getTicketsOfProject(projectKey, loginName), but only returns
+     * the tickets selected by a query, in its order. Fields not requested
+     * by the query are not serialized, but id and the sort key are always present.
+     *
+     * @param projectKey Unique project key.
+     * @param loginName Account name of user, or null.
+     * @param query Filter, order, page and fields of tickets.
+     * @return List of tickets.
+     * @throws SQLException on database error.
+     */
+
+    List<Ticket> getTicketsOfProject(String projectKey, String loginName, TicketQuery query) throws SQLException;
+
+    /**
+     * Gets all tickets of some projects and single tickets of others
+     * with one query, e.g. to sync them. Status and statistics are
+     * those of getTicketsOfProject(projectKey, loginName).
+     *
+     * @param projectKeys Keys of projects whose tickets are all returned.
+     * @param ticketIds Ids of further tickets to return.
+     * @param loginName Account name of user, or null.
+     * @return List of existing tickets.
+     * @throws SQLException on database error.
+     */
+
+    List<Ticket> getTickets(Collection<String> projectKeys, Collection<Integer> ticketIds, String loginName) throws SQLException;
+
+    /**
+     * Searches the tickets of a project and their chat messages.
+     * Hits are ordered by rank, best first.
+     *
+     * Each hit contains its "type" ("ticket" or "message"), "id",
+     * "ticketId", "ticketName", "rank" and "headline". The headline is
+     * an excerpt of the text with matching words enclosed in <mark> tags.
+     * The text itself is HTML-escaped (&amp;, &lt; and &gt;), so the
+     * highlights are the only markup of the headline.
+     *
+     * @param projectKey Unique project key.
+     * @param text Search terms in web search syntax.
+     * @param after Last hit of the previous page, or null.
+     * @param limit Maximum number of hits.
+     * @return List of maps containing each hit.
+     * @throws SQLException on database error.
+     */
+
+    List<Map<String, String>> searchProject(String projectKey, String text, Map<String, String> after, int limit) throws SQLException;
+
+    /**
+     * @param ticketId Unique ticket id.
+     * @param fileMetadataId Metadata entry id of file.
+     * @throws SQLException on database error.
+     */
+
+    void addAttachment(int ticketId, int fileMetadataId) throws SQLException;
+
+    /**
+     * @param ticketId Unique ticket id.
+     * @param fileMetadataId Metadata entry id of file.
+     * @throws SQLException on database error.
+     */
+
+    void removeAttachment(int ticketId, int fileMetadataId) throws SQLException;
+
+    /**
+     * @param ticketId Unique ticket id.
+     * @return List of attachments.
+     * @throws SQLException on database error.
+     */
+
+    List<Attachment> listAttachments(int ticketId) throws SQLException;
+
+    /**
+     * Deletes a ticket, including acceptances, observations and chat messages.
+     * Files of the ticket are kept as orphans.
+     *
+     * @param id Unique ticket id.
+     * @throws SQLException on database error.
+     */
+
+    void deleteTicket(int id) throws SQLException;
+
+    /**
+     * @param loginName The account name of the user wishing to accept.
+     * @param id Unique ticket id.
+     * @throws SQLException on database error.
+     */
+
+    void acceptTicket(String loginName, int id) throws SQLException;
+
+    /**
+     * @param loginName The account name of the user.
+     * @param id Unique ticket id.
+     * @return true if user has accepted ticket, false if not.
+     * @throws SQLException on database error.
+     */
+
+    boolean hasUserAcceptedTicket(String loginName, int id) throws SQLException;
+
+    /**
+     * @param loginName The account name of the user.
+     * @param ticketId Unique ticket id.
+     * @return Number of observations the user has submitted about the ticket.
+     * @throws SQLException on database error.
+     */
+
+    int observationCount(String loginName, int ticketId) throws SQLException;
+
+    /**
+     * Submit an observation. The ticket is finished once the
+     * required number of observations has been reached.
+     *
+     * @param loginName User that submits the observation.
+     * @param ticketId Ticket the observation relates to.
+     * @param outcome 'positive' or 'negative'
+     * @param quantity How many time the observations has been made.
+     * @throws SQLException on database error.
+     */
+
+    void submitObservation(String loginName, int ticketId, String outcome, int quantity) throws SQLException;
+
+    /**
+     * Writes all observations of a ticket. Each row is passed to the writer
+     * as soon as it has been fetched, rows are not collected first.
+     *
+     * @param ticketId Unique ticket id.
+     * @param writer Receives the observations.
+     * @throws SQLException on database error.
+     * @throws IOException if the writer failed.
+     */
+
+    void streamObservations(int ticketId, RowWriter<Observation> writer) throws SQLException, IOException;
+
+    /**
+     * @param sender Name of sender (user or admin)
+     * @param content Message text.
+     * @param attachment Metadata id of attachment file, or null.
+     * @param ticketId Unique ticket id.
+     * @throws SQLException on database error.
+     */
+
+    void sendMessage(String sender, String content, String attachment, int ticketId) throws SQLException;
+
+    /**
+     * Writes the last messages of a ticket. Each row is passed to the writer
+     * as soon as it has been fetched, rows are not collected first.
+     *
+     * @param ticketId Unique ticket id.
+     * @param limit Number of last messages that should be written.
+     * @param writer Receives the messages, oldest first.
+     * @throws SQLException on database error.
+     * @throws IOException if the writer failed.
+     */
+
+    void streamMessages(int ticketId, int limit, RowWriter<Message> writer) throws SQLException, IOException;
+
+    /**
+     * @param messageIds Ids of messages, possibly of different tickets.
+     * @return List of existing messages like streamMessages(),
+     *         including their ticket id, oldest first.
+     * @throws SQLException on database error.
+     */
+
+    List<Message> getMessages(Collection<Integer> messageIds) throws SQLException;
+
+    /**
+     * Collects the changes visible to an account since a sync token.
+     * Admins see changes of projects they own, users see changes of
+     * projects they joined. Both see changes of their access to projects.
+     *
+     * @param loginName Account name of admin or user.
+     * @param admin true if the account is an admin.
+     * @param since Token of a previous change set, or null to only get a new token.
+     * @return Keys of changed items and the token following them,
+     *         an expired set if the token is older than the change log.
+     * @throws SQLException on database error.
+     */
+
+    ChangeSet getChanges(String loginName, boolean admin, Long since) throws SQLException;
+
+    /**
+     * Deletes entries of the change log which are older than the retention.
+     * Change sets for tokens issued before these entries are expired.
+     *
+     * @param retentionSeconds Minimum age of deleted entries.
+     * @throws SQLException on database error.
+     */
+
+    void pruneChanges(long retentionSeconds) throws SQLException;
+
+    /**
+     * Versions increase with every change of a project, its memberships,
+     * tickets, assignments, observations, attachments or messages.
+     *
+     * @param loginName Account name of admin or user.
+     * @param projectKey Unique project key.
+     * @return Version of project, or null if the project does not exist or
+     *         the account neither owns nor joined it.
+     * @throws SQLException on database error.
+     */
+
+    Long getProjectVersion(String loginName, String projectKey) throws SQLException;
+
+    /**
+     * @param loginName Account name of admin or user.
+     * @param ticketId Unique ticket id.
+     * @return Version of the ticket's project, or null if the ticket does not
+     *         exist or the account neither owns nor joined its project.
+     * @throws SQLException on database error.
+     */
+
+    Long getTicketVersion(String loginName, int ticketId) throws SQLException;
+
+    /**
+     * @param loginName Account name of admin or user.
+     * @return Versions of the projects the account owns or joined, by project key.
+     * @throws SQLException on database error.
+     */
+
+    Map<String, Long> getProjectVersions(String loginName) throws SQLException;
+
+    /**
+     * @param internalName Hashed filename to uniquely identify a file.
+     * @param thumbnailName Hashed filename of thumbnail.
+     * @param originalName Original filename given by user.
+     * @param ticketId Unique ticket id.
+     * @return Metadata id of file.
+     * @throws SQLException on database error.
+     */
+
+    int registerFile(String internalName, String thumbnailName, String originalName, int ticketId) throws SQLException;
+
+    /**
+     * @param metadataId Metadata entry id of file.
+     * @throws SQLException on database error.
+     */
+
+    void unregisterFile(int metadataId) throws SQLException;
+
+    /**
+     * @param metadataId Metadata entry id of file.
+     * @return Metadata entry, ticketId is 0 if the ticket has been deleted.
+     *         Null if the file does not exist.
+     * @throws SQLException on database error.
+     */
+
+    FileInfo getFile(int metadataId) throws SQLException;
+
+    /**
+     * @return List of file metadata entries related to no ticket, their ticket id is 0.
+     * @throws SQLException on database error.
+     */
+
+    List<FileInfo> listOrphans() throws SQLException;
+}
@@ -0,0 +1,21 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a streamed query one at a time, e.g. to write
+ * them to a response while the query is still running.
+ *
+ * @param <T> Type of rows, see model package.
+ */
+
+@FunctionalInterface
+public interface RowWriter<T>
+{
+    /**
+     * @param row The next row of the result.
+     * @throws IOException if the row could not be written.
+     */
+
+    void write(T row) throws IOException;
+}
@@ -0,0 +1,199 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class applies versioned migrations to the database schema.
+ * postgres/schema.sql creates the initial schema, migrations are
+ * applied on top of it when the web service starts.
+ *
+ * Migrations are the resources db/migration/V1.sql, V2.sql and so on,
+ * executed in order of their version. The first line of a script is
+ * a comment describing it. Applied migrations are recorded in the table
+ * schema_version together with a SHA-256 checksum of the script. If an
+ * applied script has been changed afterwards, migration fails.
+ *
+ * Each migration runs in its own transaction. An advisory lock prevents
+ * several web service instances from migrating at the same time.
+ *
+ * Migrations use generated columns (V5) and execute function in
+ * triggers (V6, V7), so migration fails early on servers older than
+ * PostgreSQL 12, instead of in the middle of a script.
+ */
+
+public class SchemaMigrator
+{
+    private static final String LOCATION = "db/migration/";
+    private static final long LOCK_KEY = 0x61736570617274L; // "asepart"
+    private static final int MIN_SERVER_VERSION = 120000;
+
+    private static String read(InputStream in) throws IOException
+    {
+        try (InputStream input = in)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+
+            while ((length = input.read(buffer)) != -1)
+                out.write(buffer, 0, length);
+
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String checksum(String script)
+    {
+        try
+        {
+            StringBuilder result = new StringBuilder(64);
+
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8)))
+                result.append(String.format("%02x", b));
+
+            return result.toString();
+        }
+
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String describe(String script)
+    {
+        final String firstLine = script.split("\n", 2)[0].trim();
+        return firstLine.startsWith("--") ? firstLine.substring(2).trim() : "";
+    }
+
+    private static String load(int version) throws SQLException
+    {
+        final InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(LOCATION + "V" + version + ".sql");
+
+        if (in == null)
+            return null;
+
+        try
+        {
+            return read(in);
+        }
+
+        catch (IOException e)
+        {
+            throw new SQLException("Failed to read migration V" + version + ".", e);
+        }
+    }
+
+    private static void checkServerVersion(Statement stmt) throws SQLException
+    {
+        try (ResultSet rs = stmt.executeQuery("show server_version_num;"))
+        {
+            rs.next();
+
+            if (Integer.parseInt(rs.getString(1)) < MIN_SERVER_VERSION)
+                throw new SQLException("PostgreSQL 12 or later is required, server version is " + rs.getString(1) + ".");
+        }
+    }
+
+    private static Map<Integer, String> getAppliedMigrations(Statement stmt) throws SQLException
+    {
+        stmt.execute("create table if not exists schema_version(" +
+                "version integer primary key, " +
+                "description text not null, " +
+                "checksum character (64) not null, " +
+                "installed_on timestamp not null default current_timestamp);");
+
+        Map<Integer, String> result = new HashMap<>();
+
+        try (ResultSet rs = stmt.executeQuery("select version, checksum from schema_version;"))
+        {
+            while (rs.next())
+                result.put(rs.getInt(1), rs.getString(2));
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies all migrations which have not been applied yet.
+     *
+     * @param cn Connection to the primary database.
+     * @return Number of applied migrations.
+     * @throws SQLException on database error, if the server is older than
+     *         PostgreSQL 12, or if an applied migration has been changed.
+     */
+
+    public static int migrate(Connection cn) throws SQLException
+    {
+        final boolean autoCommit = cn.getAutoCommit();
+        int count = 0;
+
+        try (Statement stmt = cn.createStatement())
+        {
+            checkServerVersion(stmt);
+            stmt.execute("select pg_advisory_lock(" + LOCK_KEY + ");");
+
+            try
+            {
+                final Map<Integer, String> applied = getAppliedMigrations(stmt);
+                cn.setAutoCommit(false);
+
+                String script;
+
+                for (int version = 1; (script = load(version)) != null; version++)
+                {
+                    final String checksum = checksum(script);
+
+                    if (applied.containsKey(version))
+                    {
+                        if (!applied.get(version).equals(checksum))
+                            throw new SQLException("Migration V" + version + " has been changed after it was applied.");
+
+                        continue;
+                    }
+
+                    try (PreparedStatement insert = cn.prepareStatement("insert into schema_version(version, description, checksum) values (?, ?, ?);"))
+                    {
+                        stmt.execute(script);
+
+                        insert.setInt(1, version);
+                        insert.setString(2, describe(script));
+                        insert.setString(3, checksum);
+                        insert.executeUpdate();
+
+                        cn.commit();
+                    }
+
+                    catch (SQLException e)
+                    {
+                        cn.rollback();
+                        throw e;
+                    }
+
+                    System.out.println("Applied migration V" + version + ": " + describe(script));
+                    count++;
+                }
+            }
+
+            finally
+            {
+                cn.setAutoCommit(autoCommit);
+                stmt.execute("select pg_advisory_unlock(" + LOCK_KEY + ");");
+            }
+        }
+
+        return count;
+    }
+}
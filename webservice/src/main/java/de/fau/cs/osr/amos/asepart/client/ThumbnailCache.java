@@ -0,0 +1,170 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is a memory bounded LRU cache for thumbnail files.
+ *
+ * Thumbnails are keyed by their internal name, which is never reused,
+ * so cached bytes never become stale. Additionally, the metadata id of
+ * each file is mapped to its thumbnail name, so that a cache hit
+ * does not require any database query.
+ *
+ * The cache is bounded by the total number of cached bytes.
+ */
+
+public class ThumbnailCache
+{
+    /**
+     * A cached thumbnail.
+     */
+
+    public static class Entry
+    {
+        private final String name;
+        private final byte[] content;
+
+        Entry(String name, byte[] content)
+        {
+            this.name = name;
+            this.content = content;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public byte[] getContent()
+        {
+            return content;
+        }
+    }
+
+    // rough per entry overhead of map entry, key and array header
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxWeight;
+    private final int maxAliases;
+    private long weight = 0;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<Integer, String> aliases;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxWeight Maximum number of bytes the cache may hold.
+     * @param maxAliases Maximum number of metadata ids mapped to thumbnail names.
+     */
+
+    public ThumbnailCache(long maxWeight, int maxAliases)
+    {
+        if (maxWeight <= 0 || maxAliases <= 0)
+            throw new IllegalArgumentException("Cache size must be positive.");
+
+        this.maxWeight = maxWeight;
+        this.maxAliases = maxAliases;
+
+        aliases = new LinkedHashMap<Integer, String>(64, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest)
+            {
+                return size() > ThumbnailCache.this.maxAliases;
+            }
+        };
+    }
+
+    private static long weigh(Entry entry)
+    {
+        return entry.content.length + 2L * entry.name.length() + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Looks up the thumbnail of a file.
+     *
+     * @param metadataId Metadata id of file.
+     * @return Cached thumbnail or null if not cached.
+     */
+
+    public synchronized Entry get(int metadataId)
+    {
+        final String name = aliases.get(metadataId);
+
+        if (name == null)
+            return null;
+
+        return entries.get(name);
+    }
+
+    /**
+     * Adds a thumbnail to the cache, evicting least recently used
+     * thumbnails if necessary. Thumbnails larger than the whole cache
+     * are not cached.
+     *
+     * @param metadataId Metadata id of file.
+     * @param name Internal name of thumbnail.
+     * @param content The thumbnail's contents.
+     * @return The cache entry.
+     */
+
+    public synchronized Entry put(int metadataId, String name, byte[] content)
+    {
+        final Entry entry = new Entry(name, content);
+        final long entryWeight = weigh(entry);
+
+        if (entryWeight > maxWeight)
+            return entry;
+
+        aliases.put(metadataId, name);
+
+        final Entry previous = entries.put(name, entry);
+
+        if (previous != null)
+            weight -= weigh(previous);
+
+        weight += entryWeight;
+
+        Iterator<Entry> it = entries.values().iterator();
+
+        while (weight > maxWeight && it.hasNext())
+        {
+            Entry eldest = it.next();
+            weight -= weigh(eldest);
+            it.remove();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Removes the thumbnail of a file from the cache.
+     *
+     * @param metadataId Metadata id of file.
+     */
+
+    public synchronized void invalidate(int metadataId)
+    {
+        final String name = aliases.remove(metadataId);
+
+        if (name != null)
+        {
+            final Entry previous = entries.remove(name);
+
+            if (previous != null)
+                weight -= weigh(previous);
+        }
+    }
+
+    /**
+     * @return Number of bytes currently cached.
+     */
+
+    public synchronized long weight()
+    {
+        return weight;
+    }
+}
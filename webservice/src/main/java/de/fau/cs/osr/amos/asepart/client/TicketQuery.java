@@ -0,0 +1,309 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import de.fau.cs.osr.amos.asepart.model.Ticket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects, orders and pages the tickets returned by getTicketsOfProject().
+ * A new query returns all tickets with all fields, ordered by id.
+ *
+ * Pages are addressed by a cursor instead of an offset (keyset pagination):
+ * the cursor holds the sort order, and the sort key and id of the last
+ * ticket of a page, and the next page starts after that ticket. Pages stay
+ * consistent if tickets are added or deleted in between, and later pages
+ * are as fast as the first. A cursor is rejected for another sort field
+ * or direction.
+ *
+ * Invalid values are rejected with IllegalArgumentException.
+ */
+
+public class TicketQuery
+{
+    /**
+     * Keys of ticket rows. Summary, description and the statistics
+     * U, UP, OP and ON are only queried if requested.
+     */
+
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "id", "name", "summary", "description", "category", "status", "requiredObservations", "projectKey",
+            "U", "UP", "OP", "ON"));
+
+    /**
+     * Fields tickets can be sorted by, ties are broken by id. Categories
+     * and states are sorted in the order of CATEGORIES and STATES. The
+     * status is the one seen by the requesting account, so sorting by it
+     * cannot be backed by an index.
+     */
+
+    public static final List<String> SORT_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "id", "name", "category", "status"));
+
+    /**
+     * Ticket categories in the order of the ticket_category type.
+     */
+
+    public static final List<String> CATEGORIES = Collections.unmodifiableList(Arrays.asList(
+            "one-time-error", "trace", "behavior"));
+
+    /**
+     * Ticket states in the order of the ticket_status type.
+     */
+
+    public static final List<String> STATES = Collections.unmodifiableList(Arrays.asList(
+            "open", "accepted", "processed", "finished"));
+
+    public static final int MAX_LIMIT = 1000;
+
+    private int limit = 0;
+    private String status = null;
+    private String category = null;
+    private String sort = "id";
+    private boolean descending = false;
+    private Set<String> fields = null;
+    private Set<Integer> ids = null;
+
+    private Integer afterId = null;
+    private String afterValue = null;
+
+    /**
+     * @param limit Maximum number of tickets, 0 for all.
+     * @return This query.
+     */
+
+    public TicketQuery setLimit(int limit)
+    {
+        if (limit < 0 || limit > MAX_LIMIT)
+            throw new IllegalArgumentException("Limit must be between 0 and " + MAX_LIMIT + ".");
+
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param status Only return tickets with this status, as seen by the
+     *               requesting account, or null for all.
+     * @return This query.
+     */
+
+    public TicketQuery setStatus(String status)
+    {
+        if (status != null && !STATES.contains(status))
+            throw new IllegalArgumentException("Unknown status: " + status);
+
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * @param category Only return tickets of this category, or null for all.
+     * @return This query.
+     */
+
+    public TicketQuery setCategory(String category)
+    {
+        if (category != null && !CATEGORIES.contains(category))
+            throw new IllegalArgumentException("Unknown category: " + category);
+
+        this.category = category;
+        return this;
+    }
+
+    /**
+     * @param sort One of SORT_FIELDS, prefixed by "-" for descending order,
+     *             or null for ascending order by id.
+     * @return This query.
+     */
+
+    public TicketQuery setSort(String sort)
+    {
+        if (sort == null)
+            sort = "id";
+
+        final boolean descending = sort.startsWith("-");
+        final String field = descending ? sort.substring(1) : sort;
+
+        if (!SORT_FIELDS.contains(field))
+            throw new IllegalArgumentException("Tickets cannot be sorted by: " + field);
+
+        if (afterId != null && (!field.equals(this.sort) || descending != this.descending))
+            throw new IllegalArgumentException("Cursor was created for another sort order.");
+
+        this.sort = field;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * @param fields Comma-separated list of FIELDS to return, or null for all.
+     * @return This query.
+     */
+
+    public TicketQuery setFields(String fields)
+    {
+        if (fields == null)
+        {
+            this.fields = null;
+            return this;
+        }
+
+        Set<String> result = new HashSet<>();
+
+        for (String field : fields.split(","))
+        {
+            if (!FIELDS.contains(field.trim()))
+                throw new IllegalArgumentException("Unknown field: " + field);
+
+            result.add(field.trim());
+        }
+
+        this.fields = result;
+        return this;
+    }
+
+    /**
+     * @param ids Only return tickets with these ids, or null for all.
+     * @return This query.
+     */
+
+    public TicketQuery setIds(Collection<Integer> ids)
+    {
+        this.ids = ids != null ? new HashSet<>(ids) : null;
+        return this;
+    }
+
+    /**
+     * Continues after the last ticket of a previous page.
+     * Must be set after the sort order.
+     *
+     * @param cursor Cursor returned by getCursor(), or null for the first page.
+     * @return This query.
+     */
+
+    public TicketQuery setCursor(String cursor)
+    {
+        if (cursor == null)
+        {
+            afterId = null;
+            afterValue = null;
+            return this;
+        }
+
+        final String[] parts;
+
+        try
+        {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 3);
+        }
+
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid cursor.", e);
+        }
+
+        if (parts.length != 3)
+            throw new IllegalArgumentException("Invalid cursor.");
+
+        if (!parts[0].equals(getOrder()))
+            throw new IllegalArgumentException("Cursor was created for another sort order.");
+
+        afterId = Integer.valueOf(parts[1]);
+        afterValue = parts[2];
+        return this;
+    }
+
+    /**
+     * @param last Last ticket of a page, as returned by getTicketsOfProject().
+     * @return Cursor to request the page following this ticket.
+     */
+
+    public String getCursor(Ticket last)
+    {
+        final String value = getOrder() + "\n" + last.getId() + "\n" + last.getSortKey(sort);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // sort field with direction, like the parameter of setSort()
+    private String getOrder()
+    {
+        return descending ? "-" + sort : sort;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public String getStatus()
+    {
+        return status;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public String getSort()
+    {
+        return sort;
+    }
+
+    public boolean isDescending()
+    {
+        return descending;
+    }
+
+    /**
+     * @param field One of FIELDS.
+     * @return true if the field was requested.
+     */
+
+    public boolean includes(String field)
+    {
+        return fields == null || fields.contains(field);
+    }
+
+    /**
+     * @return Requested fields, null for all.
+     */
+
+    public Set<String> getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * @return Requested ticket ids, null for all.
+     */
+
+    public Set<Integer> getIds()
+    {
+        return ids;
+    }
+
+    /**
+     * @return Id of the ticket to continue after, null for the first page.
+     */
+
+    public Integer getAfterId()
+    {
+        return afterId;
+    }
+
+    /**
+     * @return Sort key of the ticket to continue after, null for the first page.
+     */
+
+    public String getAfterValue()
+    {
+        return afterValue;
+    }
+}
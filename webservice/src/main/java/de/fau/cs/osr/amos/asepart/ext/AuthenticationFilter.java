@@ -1,6 +1,6 @@
 package de.fau.cs.osr.amos.asepart.ext;
 
-import de.fau.cs.osr.amos.asepart.client.DatabaseClient;
+import de.fau.cs.osr.amos.asepart.client.Repository;
 import de.fau.cs.osr.amos.asepart.service.WebServiceSecurityContext;
 
 import java.lang.reflect.Method;
@@ -9,9 +9,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Priority;
 import javax.annotation.security.RolesAllowed;
+import javax.inject.Inject;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
@@ -22,6 +24,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.ext.Provider;
 
+import org.glassfish.grizzly.http.server.Request;
 import org.glassfish.jersey.internal.util.Base64;
 
 /**
@@ -35,6 +38,14 @@ import org.glassfish.jersey.internal.util.Base64;
  * included in the list of allowed roles of the request method
  * (provided by the @RolesAllowed annotation), 403 Forbidden is
  * returned to the client.
+ *
+ * Failed login attempts per minute are limited per account name to
+ * ASEPART_LOGIN_LIMIT (default 10) and per client address to
+ * ASEPART_LOGIN_ADDRESS_LIMIT (default 100, as several clients may share
+ * an address), 0 disables a limit. If exceeded, 429 Too Many Requests
+ * is returned before the password is checked. Set ASEPART_FORWARDED_FOR
+ * to true if the web service runs behind a proxy, then the client address
+ * is taken from the last entry of the X-Forwarded-For header.
  */
 
 @Provider
@@ -44,13 +55,88 @@ public class AuthenticationFilter implements ContainerRequestFilter
     @Context
     private ResourceInfo resourceInfo;
 
+    @Inject
+    private javax.inject.Provider<Repository> database;
+
     private static final String AUTHORIZATION_PROPERTY = "Authorization";
     private static final String AUTHENTICATION_SCHEME = "Basic";
 
     private static final String ACCESS_UNAUTHORIZED = "Your identification is invalid.";
     private static final String ACCESS_FORBIDDEN = "Your account has no rights to access this resource.";
+    private static final String ACCESS_LIMITED = "Too many failed login attempts, try again later.";
+
+    private static final boolean forwardedFor = Boolean.parseBoolean(System.getenv("ASEPART_FORWARDED_FOR"));
+
+    private static final LoginLimiter accountLimiter = new LoginLimiter("account", getLoginLimit("ASEPART_LOGIN_LIMIT", 10));
+    private static final LoginLimiter addressLimiter = new LoginLimiter("address", getLoginLimit("ASEPART_LOGIN_ADDRESS_LIMIT", 100));
+
+    @Inject
+    private javax.inject.Provider<Request> httpRequest;
+
+    private static int getLoginLimit(String name, int defaultValue)
+    {
+        final String value = System.getenv(name);
+
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            final int result = Integer.parseInt(value);
+
+            if (result >= 0)
+                return result;
+        }
+
+        catch (NumberFormatException ignored) {}
+
+        System.err.println("Environment variable " + name + " is invalid, using default: " + defaultValue);
+        return defaultValue;
+    }
+
+    private String getClientAddress(ContainerRequestContext request)
+    {
+        if (forwardedFor)
+        {
+            final String forwarded = request.getHeaderString("X-Forwarded-For");
+
+            // the last entry was added by our proxy, all others may be forged
+            if (forwarded != null)
+                return forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+        }
+
+        final Request http = httpRequest.get();
+        return http != null ? http.getRemoteAddr() : null;
+    }
+
+    /**
+     * Takes a login attempt from the account's and the client's bucket.
+     *
+     * @return 0 if allowed, otherwise seconds until the next attempt is allowed.
+     */
 
-    // TODO: (maybe) introduce login limit to avoid brute force attacks
+    private static long acquireAttempt(String accountName, String address)
+    {
+        long wait = accountLimiter.acquire(accountName);
+
+        if (wait == 0 && address != null)
+        {
+            wait = addressLimiter.acquire(address);
+
+            if (wait > 0)
+                accountLimiter.release(accountName);
+        }
+
+        return wait > 0 ? TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1 : 0;
+    }
+
+    private static void releaseAttempt(String accountName, String address)
+    {
+        accountLimiter.release(accountName);
+
+        if (address != null)
+            addressLimiter.release(address);
+    }
 
     @Override
     public void filter(ContainerRequestContext request)
@@ -84,30 +170,44 @@ public class AuthenticationFilter implements ContainerRequestFilter
         final String accountName = tokenizer.nextToken();
         final String password = tokenizer.nextToken();
         String roleName;
+        boolean authenticated = false;
+
+        // Limit attempts before the password hash is computed
+        final String address = getClientAddress(request);
+        final long retryAfter = acquireAttempt(accountName, address);
 
-        try (DatabaseClient dbClient = new DatabaseClient())
+        if (retryAfter > 0)
         {
-            // Check if account exists and password is correct
-            if (!dbClient.authenticate(accountName, password))
+            request.abortWith(Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", retryAfter).entity(ACCESS_LIMITED).build());
+            return;
+        }
+
+        try
+        {
+            Repository dbClient = database.get();
+
+            // Check if account exists and password is correct, and find out if account has admin or user role
+            roleName = dbClient.getAuthenticatedRole(accountName, password);
+
+            if (roleName == null)
             {
                 request.abortWith(Response.status(Response.Status.UNAUTHORIZED).entity(ACCESS_UNAUTHORIZED).build());
                 return;
             }
 
-            // Find out if account has admin or user role
-            if (dbClient.isAdmin(accountName))
-                roleName = "Admin";
-            else if (dbClient.isUser(accountName))
-                roleName = "User";
-            else
-            {
-                request.abortWith(Response.status(Response.Status.INTERNAL_SERVER_ERROR).build());
-                return;
-            }
+            // Only failed attempts count
+            authenticated = true;
+            releaseAttempt(accountName, address);
+
+            dbClient.bindPrincipal(accountName);
         }
 
         catch (Exception e)
         {
+            if (!authenticated)
+                releaseAttempt(accountName, address);
+
             request.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
             return;
         }
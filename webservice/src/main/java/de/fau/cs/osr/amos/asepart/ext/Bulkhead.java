@@ -0,0 +1,196 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.metrics.Counter;
+import de.fau.cs.osr.amos.asepart.metrics.Histogram;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.process.internal.RequestContext;
+import org.glassfish.jersey.process.internal.RequestScope;
+
+/**
+ * A bulkhead is a thread pool with a bounded queue, isolating one kind
+ * of work from others. Three bulkheads exist:
+ *
+ * "media" runs file uploads and downloads, including thumbnail generation.
+ * Its size is set by ASEPART_MEDIA_THREADS (default 4) and
+ * ASEPART_MEDIA_QUEUE (default 32). If it is full, requests are
+ * rejected with 503 Service Unavailable.
+ *
+ * "interactive" is used as Grizzly's worker pool and runs all other
+ * requests, see WorkerThreads. Its size is set by ASEPART_INTERACTIVE_THREADS
+ * (default 16) and ASEPART_INTERACTIVE_QUEUE (default 1000). If it is full,
+ * Grizzly closes new connections. Interactive requests are not handed off
+ * with AsyncResponse like media requests, as that would only add a second
+ * thread switch: they already run on the worker that read the request.
+ * Media requests therefore must not read their body on the worker, see
+ * WebService.uploadFile().
+ *
+ * "password" computes bcrypt hashes, which deliberately take several
+ * milliseconds of CPU time each. It has one thread per processor by default,
+ * set by ASEPART_PASSWORD_THREADS, and ASEPART_PASSWORD_QUEUE (default 256)
+ * requests may wait. If it is full, or a request waited longer than
+ * ASEPART_PASSWORD_TIMEOUT (see PasswordHasher), authentication fails
+ * with 503 Service Unavailable.
+ *
+ * Active threads, queued tasks, queue wait time and rejections are
+ * exported as metrics labelled with the name of the bulkhead.
+ */
+
+public class Bulkhead
+{
+    private static int getEnvironmentInteger(String name, int defaultValue)
+    {
+        final String value = System.getenv(name);
+
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            final int result = Integer.parseInt(value);
+
+            if (result > 0)
+                return result;
+        }
+
+        catch (NumberFormatException ignored) {}
+
+        System.err.println("Environment variable " + name + " is invalid, using default: " + defaultValue);
+        return defaultValue;
+    }
+
+    public static final Bulkhead media = new Bulkhead("media",
+            getEnvironmentInteger("ASEPART_MEDIA_THREADS", 4), getEnvironmentInteger("ASEPART_MEDIA_QUEUE", 32));
+
+    public static final Bulkhead interactive = new Bulkhead("interactive",
+            getEnvironmentInteger("ASEPART_INTERACTIVE_THREADS", 16), getEnvironmentInteger("ASEPART_INTERACTIVE_QUEUE", 1000));
+
+    public static final Bulkhead password = new Bulkhead("password",
+            getEnvironmentInteger("ASEPART_PASSWORD_THREADS", Runtime.getRuntime().availableProcessors()),
+            getEnvironmentInteger("ASEPART_PASSWORD_QUEUE", 256));
+
+    private final ThreadPoolExecutor executor;
+    private final Histogram queueWait;
+    private final Counter rejected;
+
+    /**
+     * @param name Name of bulkhead, used for thread names and metrics.
+     * @param threads Number of threads.
+     * @param queueSize Maximum number of tasks waiting for a thread.
+     */
+
+    public Bulkhead(String name, int threads, int queueSize)
+    {
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        this.queueWait = Metrics.histogram("asepart_bulkhead_queue_wait_seconds",
+                "Time tasks waited for a thread of bulkhead.", "bulkhead", name);
+        this.rejected = Metrics.counter("asepart_bulkhead_rejected_total",
+                "Tasks rejected because bulkhead was full.", "bulkhead", name);
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                task ->
+                {
+                    Thread thread = new Thread(task, "asepart-" + name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                },
+                (task, pool) ->
+                {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Bulkhead " + name + " is full.");
+                })
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                final long queued = System.nanoTime();
+
+                super.execute(() ->
+                {
+                    queueWait.observeSince(queued);
+                    task.run();
+                });
+            }
+        };
+
+        Metrics.gauge("asepart_bulkhead_active_threads", "Threads of bulkhead running a task.",
+                executor::getActiveCount, "bulkhead", name);
+        Metrics.gauge("asepart_bulkhead_max_threads", "Maximum number of threads of bulkhead.",
+                () -> threads, "bulkhead", name);
+        Metrics.gauge("asepart_bulkhead_queued_tasks", "Tasks waiting for a thread of bulkhead.",
+                () -> executor.getQueue().size(), "bulkhead", name);
+        Metrics.gauge("asepart_bulkhead_queue_limit", "Maximum number of tasks waiting for a thread of bulkhead.",
+                () -> queueSize, "bulkhead", name);
+    }
+
+    /**
+     * @return Executor of bulkhead, rejecting tasks with RejectedExecutionException if full.
+     */
+
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Runs a resource method in this bulkhead and resumes the suspended
+     * response with its result. The task runs in the request scope of
+     * the calling resource method, so request-scoped objects like the
+     * Repository remain usable until the response is resumed.
+     * Exceptions are passed to the exception mappers.
+     *
+     * @param scope Request scope of calling resource method.
+     * @param response Suspended response.
+     * @param task Resource method to execute.
+     */
+
+    public void submit(RequestScope scope, AsyncResponse response, Callable<Response> task)
+    {
+        final RequestContext context = scope.referenceCurrent();
+
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    scope.runInScope(context, () ->
+                    {
+                        try
+                        {
+                            response.resume(task.call());
+                        }
+
+                        catch (Throwable e)
+                        {
+                            response.resume(e);
+                        }
+                    });
+                }
+
+                finally
+                {
+                    context.release();
+                }
+            });
+        }
+
+        catch (RejectedExecutionException e)
+        {
+            context.release();
+            response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", "1").build());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.client.Repository;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes old entries of the change log once per hour, see
+ * Repository.pruneChanges(). Sync tokens older than the retention
+ * are answered with a full sync.
+ *
+ * The retention is read from ASEPART_SYNC_RETENTION_HOURS
+ * (default 720, i.e. 30 days), 0 keeps all entries.
+ */
+
+public class ChangeLogPruner
+{
+    private static final long retentionHours = getRetentionHours();
+
+    private static long getRetentionHours()
+    {
+        final String value = System.getenv("ASEPART_SYNC_RETENTION_HOURS");
+
+        if (value == null)
+            return 720;
+
+        try
+        {
+            final long result = Long.parseLong(value);
+
+            if (result >= 0)
+                return result;
+        }
+
+        catch (NumberFormatException ignored) {}
+
+        System.err.println("Environment variable ASEPART_SYNC_RETENTION_HOURS is invalid, using default: 720");
+        return 720;
+    }
+
+    private static void prune()
+    {
+        try (Repository db = Repository.open())
+        {
+            db.pruneChanges(TimeUnit.HOURS.toSeconds(retentionHours));
+        }
+
+        catch (Exception e)
+        {
+            System.err.println("Failed to prune change log.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts pruning on a daemon thread, unless the retention is 0.
+     */
+
+    public static void start()
+    {
+        if (retentionHours == 0)
+            return;
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task ->
+        {
+            Thread thread = new Thread(task, "asepart-pruner");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        executor.scheduleWithFixedDelay(ChangeLogPruner::prune, 0, 1, TimeUnit.HOURS);
+    }
+}
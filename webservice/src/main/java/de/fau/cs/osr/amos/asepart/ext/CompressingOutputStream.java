@@ -0,0 +1,311 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.metrics.Counter;
+import de.fau.cs.osr.amos.asepart.metrics.Histogram;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a response body with gzip or deflate, see CompressionInterceptor.
+ *
+ * Bytes are held back until more than the threshold has been written, and
+ * bodies ending before that are sent uncompressed. Flushes are deferred
+ * until compression has started. Deflaters and buffers are taken from
+ * pools and returned by release(), so a response does not allocate native
+ * memory or large arrays. Only buffers of 8 KB are pooled, a threshold above
+ * that allocates the held back bytes per response.
+ *
+ * Instances are not thread-safe, they belong to a single response.
+ */
+
+class CompressingOutputStream extends OutputStream
+{
+    // an idle Deflater holds a few hundred KB of native memory, so the pools are bounded
+    private static final int POOL_SIZE = 32;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Queue<byte[]> buffers = new ArrayBlockingQueue<>(2 * POOL_SIZE);
+
+    private static final Counter skipped = Metrics.counter("asepart_http_compression_skipped_total",
+            "Responses sent uncompressed because they were smaller than the threshold.");
+
+    enum Encoding
+    {
+        GZIP("gzip", true),
+        DEFLATE("deflate", false); // zlib format, as required by HTTP
+
+        private final String token;
+        private final boolean gzip;
+        private final Queue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private final Counter uncompressedBytes;
+        private final Counter compressedBytes;
+        private final Histogram duration;
+
+        Encoding(String token, boolean gzip)
+        {
+            this.token = token;
+            this.gzip = gzip;
+
+            uncompressedBytes = Metrics.counter("asepart_http_compression_input_bytes_total",
+                    "Bytes of compressed responses before compression.", "encoding", token);
+            compressedBytes = Metrics.counter("asepart_http_compression_output_bytes_total",
+                    "Bytes of compressed responses after compression.", "encoding", token);
+            duration = Metrics.histogram("asepart_http_compression_duration_seconds",
+                    "Time spent compressing a response.", "encoding", token);
+        }
+
+        String getToken()
+        {
+            return token;
+        }
+
+        private Deflater acquire()
+        {
+            final Deflater deflater = deflaters.poll();
+
+            // gzip header and trailer are written by CompressingOutputStream
+            return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        }
+
+        private void release(Deflater deflater)
+        {
+            deflater.reset();
+
+            if (!deflaters.offer(deflater))
+                deflater.end();
+        }
+    }
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    // all pooled buffers have BUFFER_SIZE, so a pooled buffer is never discarded for being too small
+    private static byte[] acquireBuffer(int size)
+    {
+        if (size > BUFFER_SIZE)
+            return new byte[size];
+
+        final byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buffer)
+    {
+        if (buffer.length == BUFFER_SIZE)
+            buffers.offer(buffer);
+    }
+
+    private final OutputStream out;
+    private final Encoding encoding;
+    private final int threshold;
+    private final Runnable onCompress;
+
+    private final byte[] single = new byte[1];
+
+    private byte[] head;
+    private int headLength = 0;
+
+    private Deflater deflater;
+    private byte[] buffer;
+    private CRC32 crc;
+
+    private long inputBytes = 0;
+    private long outputBytes = 0;
+    private long nanos = 0;
+
+    private boolean closed = false;
+
+    /**
+     * @param out Stream receiving the compressed body.
+     * @param encoding Negotiated content coding.
+     * @param threshold Bodies up to this number of bytes are not compressed.
+     * @param onCompress Called before the first compressed byte is written,
+     *                   to set the Content-Encoding header.
+     */
+
+    CompressingOutputStream(OutputStream out, Encoding encoding, int threshold, Runnable onCompress)
+    {
+        this.out = out;
+        this.encoding = encoding;
+        this.threshold = threshold;
+        this.onCompress = onCompress;
+
+        head = acquireBuffer(threshold);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (head != null)
+        {
+            if (headLength + len <= threshold)
+            {
+                System.arraycopy(b, off, head, headLength, len);
+                headLength += len;
+                return;
+            }
+
+            startCompression();
+        }
+
+        compress(b, off, len);
+    }
+
+    private void startCompression() throws IOException
+    {
+        onCompress.run();
+
+        deflater = encoding.acquire();
+        buffer = acquireBuffer(BUFFER_SIZE);
+
+        if (encoding.gzip)
+        {
+            crc = new CRC32();
+            out.write(GZIP_HEADER);
+            outputBytes += GZIP_HEADER.length;
+        }
+
+        final byte[] pending = head;
+        head = null;
+
+        compress(pending, 0, headLength);
+        releaseBuffer(pending);
+    }
+
+    private void compress(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return;
+
+        if (crc != null)
+            crc.update(b, off, len);
+
+        inputBytes += len;
+        deflater.setInput(b, off, len);
+
+        while (!deflater.needsInput())
+            deflate(Deflater.NO_FLUSH);
+    }
+
+    private int deflate(int flush) throws IOException
+    {
+        final long start = System.nanoTime();
+        final int length = deflater.deflate(buffer, 0, buffer.length, flush);
+        nanos += System.nanoTime() - start;
+
+        if (length > 0)
+        {
+            out.write(buffer, 0, length);
+            outputBytes += length;
+        }
+
+        return length;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        // Jersey flushes the stream again after the interceptor closed it
+        if (head != null || closed)
+            return;
+
+        // the buffer may have been too small for all pending output
+        while (deflate(Deflater.SYNC_FLUSH) == buffer.length);
+
+        out.flush();
+    }
+
+    private void writeTrailer() throws IOException
+    {
+        final long checksum = crc.getValue();
+
+        for (long value : new long[] {checksum, inputBytes})
+        {
+            for (int i = 0; i < 4; i++)
+                out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+
+        outputBytes += 8;
+    }
+
+    /**
+     * Writes the remaining body, without compression if it did not exceed
+     * the threshold, and closes the underlying stream. Call release()
+     * afterwards, also if writing failed.
+     *
+     * @throws IOException if the body could not be written.
+     */
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+
+        closed = true;
+
+        if (head != null)
+        {
+            out.write(head, 0, headLength);
+            skipped.increment();
+        }
+
+        else
+        {
+            deflater.finish();
+
+            while (!deflater.finished())
+                deflate(Deflater.NO_FLUSH);
+
+            if (encoding.gzip)
+                writeTrailer();
+
+            encoding.uncompressedBytes.add(inputBytes);
+            encoding.compressedBytes.add(outputBytes);
+            encoding.duration.observe(nanos);
+        }
+
+        out.close();
+    }
+
+    /**
+     * Returns deflater and buffers to their pools. The stream must
+     * not be used anymore afterwards.
+     */
+
+    void release()
+    {
+        closed = true;
+
+        if (head != null)
+        {
+            releaseBuffer(head);
+            head = null;
+        }
+
+        if (deflater != null)
+        {
+            encoding.release(deflater);
+            deflater = null;
+        }
+
+        if (buffer != null)
+        {
+            releaseBuffer(buffer);
+            buffer = null;
+        }
+    }
+}
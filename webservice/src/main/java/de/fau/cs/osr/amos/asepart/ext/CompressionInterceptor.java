@@ -0,0 +1,196 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * This class compresses JSON, CBOR, Smile and text responses with gzip
+ * or deflate, as negotiated by the Accept-Encoding header of the request.
+ * If both are accepted with the same quality, gzip is preferred.
+ *
+ * Responses of up to ASEPART_COMPRESSION_MIN_SIZE bytes (default 1024)
+ * are sent uncompressed, as compressing them costs more time than it
+ * saves. Setting it to -1 disables compression. Bytes before and after
+ * compression and the time spent compressing are exported as metrics
+ * per encoding, see CompressingOutputStream.
+ */
+
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public class CompressionInterceptor implements WriterInterceptor
+{
+    private static final int threshold = getThreshold();
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    private static int getThreshold()
+    {
+        final String value = System.getenv("ASEPART_COMPRESSION_MIN_SIZE");
+
+        if (value == null)
+            return 1024;
+
+        try
+        {
+            final int result = Integer.parseInt(value);
+
+            if (result >= -1)
+                return result;
+        }
+
+        catch (NumberFormatException ignored) {}
+
+        System.err.println("Environment variable ASEPART_COMPRESSION_MIN_SIZE is invalid, using default: 1024");
+        return 1024;
+    }
+
+    private static boolean isCompressible(MediaType mediaType)
+    {
+        if (mediaType == null)
+            return false;
+
+        if (mediaType.getType().equals("text"))
+            return true;
+
+        if (!mediaType.getType().equals("application"))
+            return false;
+
+        switch (mediaType.getSubtype())
+        {
+            case "json":
+            case "cbor":
+            case "x-jackson-smile":
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Selects the content coding of a response.
+     *
+     * @param acceptEncoding Accept-Encoding header of the request, or null.
+     * @return gzip or deflate, or null if the response must not be compressed.
+     */
+
+    static CompressingOutputStream.Encoding negotiate(String acceptEncoding)
+    {
+        if (acceptEncoding == null)
+            return null;
+
+        double gzip = Double.NaN;
+        double deflate = Double.NaN;
+        double any = 0.0;
+
+        for (String coding : acceptEncoding.split(","))
+        {
+            final String[] parameters = coding.split(";");
+            final String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+
+            for (int i = 1; i < parameters.length; i++)
+            {
+                final String parameter = parameters[i].trim();
+
+                if (parameter.startsWith("q="))
+                {
+                    try
+                    {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    }
+
+                    catch (NumberFormatException e)
+                    {
+                        quality = 0.0;
+                    }
+                }
+            }
+
+            switch (name)
+            {
+                case "gzip":
+                case "x-gzip":
+                    gzip = quality;
+                    break;
+
+                case "deflate":
+                    deflate = quality;
+                    break;
+
+                case "*":
+                    any = quality;
+                    break;
+            }
+        }
+
+        // codings which are not listed are accepted with the quality of *
+        if (Double.isNaN(gzip))
+            gzip = any;
+
+        if (Double.isNaN(deflate))
+            deflate = any;
+
+        if (gzip > 0.0 && gzip >= deflate)
+            return CompressingOutputStream.Encoding.GZIP;
+
+        if (deflate > 0.0)
+            return CompressingOutputStream.Encoding.DEFLATE;
+
+        return null;
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException
+    {
+        final MultivaluedMap<String, Object> headers = context.getHeaders();
+
+        if (threshold < 0 || !isCompressible(context.getMediaType()) || headers.containsKey(HttpHeaders.CONTENT_ENCODING))
+        {
+            context.proceed();
+            return;
+        }
+
+        // caches must not serve a compressed response to clients not accepting it
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        final CompressingOutputStream.Encoding encoding = negotiate(requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+
+        if (encoding == null)
+        {
+            context.proceed();
+            return;
+        }
+
+        // headers are sent with the first byte, so they can still be changed when compression starts
+        final CompressingOutputStream stream = new CompressingOutputStream(context.getOutputStream(), encoding, threshold, () ->
+        {
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding.getToken());
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+        });
+
+        context.setOutputStream(stream);
+
+        try
+        {
+            context.proceed();
+            stream.close();
+        }
+
+        finally
+        {
+            stream.release();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.client.Repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * This class answers conditional GET requests of methods annotated with
+ * @Versioned. It runs after authentication, looks up the version of the
+ * project the response depends on with a single query, and derives a
+ * strong ETag from the version, the account, the request URI and the
+ * Accept and Accept-Encoding headers. If the ETag matches If-None-Match,
+ * 304 Not Modified is returned without calling the resource method,
+ * otherwise the ETag is added to the response.
+ *
+ * The version is only returned for accounts which own or joined the
+ * project, so unauthorized requests never get a 304. They reach the
+ * resource method, which rejects them as before.
+ */
+
+@Provider
+@Versioned
+@Priority(Priorities.USER)
+public class ConditionalRequestFilter implements ContainerRequestFilter, ContainerResponseFilter
+{
+    private static final String ETAG_PROPERTY = ConditionalRequestFilter.class.getName() + ".etag";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Inject
+    private javax.inject.Provider<Repository> database;
+
+    private String getVersion(ContainerRequestContext requestContext, String loginName) throws SQLException
+    {
+        final Versioned versioned = resourceInfo.getResourceMethod().getAnnotation(Versioned.class);
+        final Map<String, List<String>> parameters = requestContext.getUriInfo().getPathParameters();
+
+        if (!versioned.project().isEmpty())
+        {
+            final Long version = database.get().getProjectVersion(loginName, parameters.get(versioned.project()).get(0));
+            return version != null ? String.valueOf(version) : null;
+        }
+
+        if (!versioned.ticket().isEmpty())
+        {
+            try
+            {
+                final int ticketId = Integer.parseInt(parameters.get(versioned.ticket()).get(0));
+                final Long version = database.get().getTicketVersion(loginName, ticketId);
+                return version != null ? String.valueOf(version) : null;
+            }
+
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+
+        // sorted, so that the same projects always result in the same tag
+        return new TreeMap<>(database.get().getProjectVersions(loginName)).toString();
+    }
+
+    private static EntityTag getEntityTag(ContainerRequestContext requestContext, String loginName, String version)
+    {
+        final String accept = requestContext.getHeaderString(HttpHeaders.ACCEPT);
+        final String acceptEncoding = requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        final String value = version + "\n" + loginName + "\n" + requestContext.getUriInfo().getRequestUri() + "\n" + accept + "\n" + acceptEncoding;
+
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return new EntityTag(Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22));
+        }
+
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not supported.", e);
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException
+    {
+        if (!requestContext.getMethod().equals(HttpMethod.GET) || requestContext.getSecurityContext().getUserPrincipal() == null)
+            return;
+
+        final String loginName = requestContext.getSecurityContext().getUserPrincipal().getName();
+        final String version;
+
+        try
+        {
+            version = getVersion(requestContext, loginName);
+        }
+
+        catch (SQLException e)
+        {
+            // the resource method will report the error
+            return;
+        }
+
+        if (version == null)
+            return;
+
+        final EntityTag etag = getEntityTag(requestContext, loginName, version);
+        Response.ResponseBuilder builder = requestContext.getRequest().evaluatePreconditions(etag);
+
+        if (builder != null)
+            requestContext.abortWith(builder.tag(etag).build());
+
+        else requestContext.setProperty(ETAG_PROPERTY, etag);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+    {
+        final Object etag = requestContext.getProperty(ETAG_PROPERTY);
+
+        if (etag != null && responseContext.getStatus() == Response.Status.OK.getStatusCode())
+            responseContext.getHeaders().putSingle(HttpHeaders.ETAG, etag);
+    }
+}
@@ -0,0 +1,49 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.client.Repository;
+
+import org.glassfish.jersey.internal.inject.AbstractBinder;
+import org.glassfish.jersey.internal.inject.DisposableSupplier;
+import org.glassfish.jersey.process.internal.RequestScoped;
+
+/**
+ * This class binds a Repository to the request scope. Filters
+ * and resources obtain the repository by injecting a Provider, so that
+ * a database connection is only taken from the pool if it is actually needed.
+ * All of them share the same connection, which is returned to the
+ * pool after the response has been written.
+ *
+ * The storage is selected by ASEPART_STORAGE, see Repository.open().
+ */
+
+public class DatabaseBinder extends AbstractBinder
+{
+    private static class RepositorySupplier implements DisposableSupplier<Repository>
+    {
+        @Override
+        public Repository get()
+        {
+            return Repository.open();
+        }
+
+        @Override
+        public void dispose(Repository db)
+        {
+            try
+            {
+                db.close();
+            }
+
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    protected void configure()
+    {
+        bindFactory(RepositorySupplier.class).to(Repository.class).in(RequestScoped.class);
+    }
+}
@@ -0,0 +1,110 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.metrics.Counter;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets limiting login attempts per key, e.g. account name
+ * or client address. Each bucket holds up to the given number of
+ * attempts and regains them evenly within one minute.
+ *
+ * A bucket is a single AtomicLong updated without locks: the time at
+ * which it will be full again (generic cell rate algorithm). Full buckets
+ * carry no information, they are evicted once per minute.
+ */
+
+public class LoginLimiter
+{
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction = new AtomicLong(System.nanoTime());
+
+    private final Counter rejected;
+
+    /**
+     * @param name Name of limiter, used for metrics.
+     * @param attemptsPerMinute Maximum number of attempts per minute and key, 0 disables the limit.
+     */
+
+    public LoginLimiter(String name, int attemptsPerMinute)
+    {
+        if (attemptsPerMinute < 0)
+            throw new IllegalArgumentException("Number of attempts must not be negative.");
+
+        this.intervalNanos = attemptsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / attemptsPerMinute : 0;
+        this.burstNanos = TimeUnit.MINUTES.toNanos(1);
+
+        this.rejected = Metrics.counter("asepart_login_rejected_total",
+                "Login attempts rejected by limiter.", "limit", name);
+        Metrics.gauge("asepart_login_limiter_buckets", "Number of non-full buckets of login limiter.",
+                buckets::size, "limit", name);
+    }
+
+    private void evictFullBuckets(long now)
+    {
+        final long next = nextEviction.get();
+
+        if (now - next < 0 || !nextEviction.compareAndSet(next, now + TimeUnit.MINUTES.toNanos(1)))
+            return;
+
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    /**
+     * Takes one attempt from the bucket of a key.
+     *
+     * @param key Account name or client address.
+     * @return 0 if the attempt is allowed, otherwise the number of
+     *         nanoseconds until the next attempt will be allowed.
+     */
+
+    public long acquire(String key)
+    {
+        if (intervalNanos == 0)
+            return 0;
+
+        final long now = System.nanoTime();
+        evictFullBuckets(now);
+
+        final AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+
+        while (true)
+        {
+            final long full = bucket.get();
+            final long updated = (full - now > 0 ? full : now) + intervalNanos;
+
+            if (updated - now > burstNanos)
+            {
+                rejected.increment();
+                return updated - now - burstNanos;
+            }
+
+            if (bucket.compareAndSet(full, updated))
+                return 0;
+        }
+    }
+
+    /**
+     * Returns an attempt to the bucket of a key,
+     * e.g. because the login was successful.
+     *
+     * @param key Account name or client address.
+     */
+
+    public void release(String key)
+    {
+        if (intervalNanos == 0)
+            return;
+
+        final AtomicLong bucket = buckets.get(key);
+
+        if (bucket != null)
+            bucket.addAndGet(-intervalNanos);
+    }
+}
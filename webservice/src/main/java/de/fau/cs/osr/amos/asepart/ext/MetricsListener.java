@@ -0,0 +1,90 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.metrics.Histogram;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.ws.rs.ext.Provider;
+
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * This class records the latency of each request, labelled by the
+ * resource method which handled it and the response status. Latency
+ * is measured until the response has been written, so it includes
+ * filters and serialization. Requests not matching any resource method
+ * are labelled "unmatched".
+ */
+
+@Provider
+public class MetricsListener implements ApplicationEventListener
+{
+    private static final String REQUEST_DURATION = "asepart_http_request_duration_seconds";
+    private static final String REQUEST_DURATION_HELP = "Latency of HTTP requests per resource method and status.";
+
+    // histograms by resource method and status, so requests do not look them up in the registry
+    private static final ConcurrentHashMap<Method, ConcurrentHashMap<Integer, Histogram>> durations = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Histogram> unmatched = new ConcurrentHashMap<>();
+
+    private static Histogram durationOf(Method method, int status)
+    {
+        ConcurrentHashMap<Integer, Histogram> byStatus = unmatched;
+
+        if (method != null)
+        {
+            byStatus = durations.get(method);
+
+            if (byStatus == null)
+                byStatus = durations.computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        }
+
+        Histogram histogram = byStatus.get(status);
+
+        if (histogram == null)
+        {
+            final String methodName = method != null ? method.getDeclaringClass().getSimpleName() + "." + method.getName() : "unmatched";
+
+            histogram = byStatus.computeIfAbsent(status, key -> Metrics.histogram(REQUEST_DURATION, REQUEST_DURATION_HELP,
+                    "resource_method", methodName, "status", Integer.toString(status)));
+        }
+
+        return histogram;
+    }
+
+    private static class RequestListener implements RequestEventListener
+    {
+        private final long start = System.nanoTime();
+
+        @Override
+        public void onEvent(RequestEvent event)
+        {
+            if (event.getType() != RequestEvent.Type.FINISHED)
+                return;
+
+            final ResourceMethod resourceMethod = event.getUriInfo().getMatchedResourceMethod();
+            final ContainerResponse response = event.getContainerResponse();
+
+            final Method method = resourceMethod != null ? resourceMethod.getInvocable().getDefinitionMethod() : null;
+            final int status = response != null ? response.getStatus() : 500;
+
+            durationOf(method, status).observeSince(start);
+        }
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event)
+    {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent)
+    {
+        return new RequestListener();
+    }
+}
@@ -0,0 +1,86 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import de.fau.cs.osr.amos.asepart.client.QueryStatistics;
+import de.fau.cs.osr.amos.asepart.client.Repository;
+
+import java.util.Locale;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * This class is a response filter for finding requests issuing too
+ * many SQL statements, e.g. by calling DatabaseClient methods in a loop.
+ *
+ * It is only active if ASEPART_QUERY_BUDGET is set. Then the number of
+ * statements issued by a request and their total execution time are added
+ * as X-Query-Count and X-Query-Time-Ms headers to each response, and
+ * requests issuing more statements than the budget are logged along with
+ * statements that were executed repeatedly.
+ *
+ * Statements of streamed responses, see RowStreamWriter, run after this
+ * filter and are not counted.
+ */
+
+@Provider
+public class QueryBudgetFilter implements ContainerResponseFilter
+{
+    private static final int budget = getBudget();
+
+    @Inject
+    private javax.inject.Provider<Repository> database;
+
+    private static int getBudget()
+    {
+        final String value = System.getenv("ASEPART_QUERY_BUDGET");
+
+        if (value == null)
+            return -1;
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+
+        catch (NumberFormatException e)
+        {
+            System.err.println("Environment variable ASEPART_QUERY_BUDGET is invalid, query diagnostics disabled.");
+            return -1;
+        }
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext,
+                       final ContainerResponseContext responseContext)
+    {
+        if (budget < 0)
+            return;
+
+        final QueryStatistics statistics = database.get().getQueryStatistics();
+        final double millis = statistics.getNanos() / 1e6;
+
+        responseContext.getHeaders().add("X-Query-Count", statistics.getCount());
+        responseContext.getHeaders().add("X-Query-Time-Ms", String.format(Locale.ROOT, "%.3f", millis));
+
+        if (statistics.getCount() <= budget)
+            return;
+
+        StringBuilder message = new StringBuilder();
+
+        message.append("Query budget exceeded: ")
+               .append(requestContext.getMethod()).append(' ')
+               .append(requestContext.getUriInfo().getPath())
+               .append(" issued ").append(statistics.getCount()).append(" statements")
+               .append(String.format(Locale.ROOT, " in %.3f ms", millis))
+               .append(", budget is ").append(budget).append('.');
+
+        for (Map.Entry<String, Integer> shape : statistics.getRepeatedShapes().entrySet())
+            message.append("\n    ").append(shape.getValue()).append("x ").append(shape.getKey());
+
+        System.err.println(message);
+    }
+}
@@ -0,0 +1,34 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.ws.rs.NameBinding;
+
+/**
+ * Marks GET methods whose response only depends on the version of a
+ * project, see ConditionalRequestFilter. The project is given by the
+ * path parameter named in project() or, if the path contains a ticket
+ * id, in ticket(). Without parameters, the response depends on all
+ * projects the requesting account owns or joined.
+ */
+
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Versioned
+{
+    /**
+     * @return Name of path parameter holding a project key.
+     */
+
+    String project() default "";
+
+    /**
+     * @return Name of path parameter holding a ticket id.
+     */
+
+    String ticket() default "";
+}
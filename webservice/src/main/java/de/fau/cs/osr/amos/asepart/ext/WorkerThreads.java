@@ -0,0 +1,104 @@
+package de.fau.cs.osr.amos.asepart.ext;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+
+/**
+ * This class selects the threads executing requests. By default, requests
+ * run on the threads of the interactive Bulkhead, which has a fixed number
+ * of threads. Slow queries block these threads, and other requests have to wait.
+ *
+ * If ASEPART_VIRTUAL_THREADS is set to true and the JVM supports virtual
+ * threads (Java 21 or later), each request runs on a new virtual thread
+ * instead. Requests waiting for a pooled connection or for Minio then
+ * only park their virtual thread.
+ *
+ * Statements still pin their carrier thread: the PostgreSQL driver 42.2
+ * executes them in synchronized methods of QueryExecutorImpl, and before
+ * Java 24 a virtual thread blocking inside synchronized cannot unmount.
+ * Concurrent queries are therefore limited by the number of carrier
+ * threads (jdk.virtualThreadScheduler.parallelism, the number of cores
+ * by default), not only by ASEPART_POOL_SIZE. Run with
+ * -Djdk.tracePinnedThreads=short to see pinned stacks.
+ *
+ * The web service is still built for Java 8, so virtual threads are
+ * created by reflection. On older JVMs the interactive bulkhead is used.
+ */
+
+public class WorkerThreads
+{
+    private static boolean isEnabled()
+    {
+        final String value = System.getenv("ASEPART_VIRTUAL_THREADS");
+
+        if (value == null || value.equalsIgnoreCase("false"))
+            return false;
+
+        if (value.equalsIgnoreCase("true"))
+            return true;
+
+        System.err.println("Environment variable ASEPART_VIRTUAL_THREADS is invalid, using default: false");
+        return false;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task.
+     *
+     * @return The executor, or null if the JVM does not support virtual threads.
+     */
+
+    public static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+
+        catch (ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the worker pool of all listeners of a server.
+     * Must be called before the server is started.
+     *
+     * @param server The server.
+     * @param executor Executor running requests.
+     */
+
+    public static void setExecutor(HttpServer server, ExecutorService executor)
+    {
+        for (NetworkListener listener : server.getListeners())
+            listener.getTransport().setWorkerThreadPool(executor);
+    }
+
+    /**
+     * Runs requests on virtual threads if enabled by ASEPART_VIRTUAL_THREADS,
+     * otherwise on the interactive bulkhead. Must be called before the server is started.
+     *
+     * @param server The server.
+     */
+
+    public static void configure(HttpServer server)
+    {
+        ExecutorService executor = null;
+
+        if (isEnabled())
+        {
+            executor = newVirtualThreadExecutor();
+
+            if (executor == null)
+                System.err.println("Virtual threads require Java 21 or later, using interactive bulkhead.");
+        }
+
+        if (executor == null)
+            executor = Bulkhead.interactive.getExecutor();
+
+        setExecutor(server, executor);
+    }
+}
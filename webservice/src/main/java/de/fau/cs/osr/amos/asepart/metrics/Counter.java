@@ -0,0 +1,32 @@
+package de.fau.cs.osr.amos.asepart.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing counter. Incrementing is lock-free
+ * and scales with the number of concurrently recording threads.
+ */
+
+public class Counter
+{
+    private final LongAdder value = new LongAdder();
+
+    Counter()
+    {
+    }
+
+    public void increment()
+    {
+        value.increment();
+    }
+
+    public void add(long amount)
+    {
+        value.add(amount);
+    }
+
+    public long get()
+    {
+        return value.sum();
+    }
+}
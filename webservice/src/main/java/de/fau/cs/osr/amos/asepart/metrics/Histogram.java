@@ -0,0 +1,95 @@
+package de.fau.cs.osr.amos.asepart.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets. Observations are counted
+ * per bucket using LongAdders, so recording is lock-free and cheap
+ * enough to be done on every request and query.
+ *
+ * Bucket counts are not cumulative internally, they are summed up
+ * when the histogram is rendered.
+ */
+
+public class Histogram
+{
+    // upper bounds in seconds, from 1 ms to 10 s
+    private static final double[] BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+    static
+    {
+        for (int i = 0; i < BUCKETS.length; i++)
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1]; // last bucket is +Inf
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram()
+    {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+
+    public void observe(long nanos)
+    {
+        int i = 0;
+
+        while (i < BUCKET_NANOS.length && nanos > BUCKET_NANOS[i])
+            i++;
+
+        counts[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since start.
+     *
+     * @param startNanos Start time as returned by System.nanoTime().
+     */
+
+    public void observeSince(long startNanos)
+    {
+        observe(System.nanoTime() - startNanos);
+    }
+
+    public long getCount()
+    {
+        long count = 0;
+
+        for (LongAdder bucket : counts)
+            count += bucket.sum();
+
+        return count;
+    }
+
+    void render(StringBuilder out, String name, String labels)
+    {
+        final String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            cumulative += counts[i].sum();
+            final String bound = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+
+            out.append(name).append("_bucket{").append(labels).append(separator)
+               .append("le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+        }
+
+        final String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+
+        out.append(name).append("_sum").append(braced).append(' ')
+           .append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braced).append(' ')
+           .append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,162 @@
+package de.fau.cs.osr.amos.asepart.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * This class is the process wide registry of all metrics.
+ *
+ * Metrics are identified by their name and label values and are created
+ * when they are requested for the first time. Callers on hot paths should
+ * keep a reference to the returned metric instead of looking it up again.
+ *
+ * Label names and values are passed as alternating arguments, e.g.
+ * histogram("asepart_db_query_duration_seconds", "...", "method", "getTicket").
+ */
+
+public final class Metrics
+{
+    private static final class Family
+    {
+        private final String name;
+        private final String help;
+        private final String type;
+
+        private final ConcurrentSkipListMap<String, Object> children = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type)
+        {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final ConcurrentSkipListMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private Metrics()
+    {
+    }
+
+    private static Family family(String name, String help, String type)
+    {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type + ".");
+
+        return family;
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String labels(String... labels)
+    {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("Labels must be given as name value pairs.");
+
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < labels.length; i += 2)
+        {
+            if (i > 0)
+                result.append(',');
+
+            result.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Returns a latency histogram, creating it if necessary.
+     *
+     * @param name Metric name, should end with _seconds.
+     * @param help Description of metric.
+     * @param labels Alternating label names and values.
+     * @return The histogram.
+     */
+
+    public static Histogram histogram(String name, String help, String... labels)
+    {
+        return (Histogram) family(name, help, "histogram").children.computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    /**
+     * Returns a counter, creating it if necessary.
+     *
+     * @param name Metric name, should end with _total.
+     * @param help Description of metric.
+     * @param labels Alternating label names and values.
+     * @return The counter.
+     */
+
+    public static Counter counter(String name, String help, String... labels)
+    {
+        return (Counter) family(name, help, "counter").children.computeIfAbsent(labels(labels), key -> new Counter());
+    }
+
+    /**
+     * Registers a gauge whose value is read when metrics are rendered.
+     * Registering a gauge again replaces the previous one.
+     *
+     * @param name Metric name.
+     * @param help Description of metric.
+     * @param value Supplies the current value.
+     * @param labels Alternating label names and values.
+     */
+
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels)
+    {
+        family(name, help, "gauge").children.put(labels(labels), value);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     *
+     * @return Metrics as text.
+     */
+
+    public static String render()
+    {
+        StringBuilder out = new StringBuilder(8192);
+
+        for (Family family : families.values())
+        {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\n", " ")).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> child : family.children.entrySet())
+            {
+                final String labels = child.getKey();
+                final Object metric = child.getValue();
+
+                if (metric instanceof Histogram)
+                {
+                    ((Histogram) metric).render(out, family.name, labels);
+                    continue;
+                }
+
+                out.append(family.name);
+
+                if (!labels.isEmpty())
+                    out.append('{').append(labels).append('}');
+
+                out.append(' ');
+
+                if (metric instanceof Counter)
+                    out.append(((Counter) metric).get());
+                else
+                    out.append(((DoubleSupplier) metric).getAsDouble());
+
+                out.append('\n');
+            }
+        }
+
+        return out.toString();
+    }
+}
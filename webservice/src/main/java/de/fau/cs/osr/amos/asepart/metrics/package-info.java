@@ -0,0 +1,6 @@
+/**
+ * This package collects runtime metrics of the web service
+ * and renders them in the Prometheus text format.
+ */
+
+package de.fau.cs.osr.amos.asepart.metrics;
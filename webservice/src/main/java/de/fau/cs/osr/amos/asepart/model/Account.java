@@ -0,0 +1,45 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Common fields of users and admins.
+ */
+
+public abstract class Account
+{
+    private final String loginName;
+    private final String firstName;
+    private final String lastName;
+
+    protected Account(String loginName, String firstName, String lastName)
+    {
+        this.loginName = loginName;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public String getLoginName()
+    {
+        return loginName;
+    }
+
+    public String getFirstName()
+    {
+        return firstName;
+    }
+
+    public String getLastName()
+    {
+        return lastName;
+    }
+
+    protected void writeFields(JsonGenerator gen) throws IOException
+    {
+        gen.writeStringField("loginName", loginName);
+        gen.writeStringField("firstName", firstName);
+        gen.writeStringField("lastName", lastName);
+    }
+}
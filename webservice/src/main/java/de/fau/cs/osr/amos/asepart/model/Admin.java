@@ -0,0 +1,37 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * An admin account, admins own projects.
+ */
+
+@JsonSerialize(using = Admin.Serializer.class)
+public final class Admin extends Account
+{
+    public Admin(String loginName, String firstName, String lastName)
+    {
+        super(loginName, firstName, lastName);
+    }
+
+    static class Serializer extends StdSerializer<Admin>
+    {
+        Serializer()
+        {
+            super(Admin.class);
+        }
+
+        @Override
+        public void serialize(Admin admin, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            admin.writeFields(gen);
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A file attached to a ticket.
+ */
+
+@JsonSerialize(using = Attachment.Serializer.class)
+public final class Attachment
+{
+    private final int ticketId;
+    private final int attachmentId;
+    private final String originalName;
+
+    public Attachment(int ticketId, int attachmentId, String originalName)
+    {
+        this.ticketId = ticketId;
+        this.attachmentId = attachmentId;
+        this.originalName = originalName;
+    }
+
+    public int getTicketId()
+    {
+        return ticketId;
+    }
+
+    /**
+     * @return Metadata id of file.
+     */
+
+    public int getAttachmentId()
+    {
+        return attachmentId;
+    }
+
+    public String getOriginalName()
+    {
+        return originalName;
+    }
+
+    static class Serializer extends StdSerializer<Attachment>
+    {
+        Serializer()
+        {
+            super(Attachment.class);
+        }
+
+        @Override
+        public void serialize(Attachment attachment, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            gen.writeStringField("ticketId", Integer.toString(attachment.ticketId));
+            gen.writeStringField("attachmentId", Integer.toString(attachment.attachmentId));
+            gen.writeStringField("originalName", attachment.originalName);
+            gen.writeEndObject();
+        }
+    }
+}
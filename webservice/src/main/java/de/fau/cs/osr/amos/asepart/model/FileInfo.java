@@ -0,0 +1,85 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Metadata of a stored file. The thumbnail name is null if the file
+ * has no thumbnail, the ticket id is 0 if the ticket has been deleted.
+ */
+
+@JsonSerialize(using = FileInfo.Serializer.class)
+public final class FileInfo
+{
+    private final int id;
+    private final String internalName;
+    private final String thumbnailName;
+    private final String originalName;
+    private final int ticketId;
+
+    public FileInfo(int id, String internalName, String thumbnailName, String originalName, int ticketId)
+    {
+        this.id = id;
+        this.internalName = internalName;
+        this.thumbnailName = thumbnailName;
+        this.originalName = originalName;
+        this.ticketId = ticketId;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return Hashed file name in file storage.
+     */
+
+    public String getInternalName()
+    {
+        return internalName;
+    }
+
+    public String getThumbnailName()
+    {
+        return thumbnailName;
+    }
+
+    /**
+     * @return File name given by the uploading user.
+     */
+
+    public String getOriginalName()
+    {
+        return originalName;
+    }
+
+    public int getTicketId()
+    {
+        return ticketId;
+    }
+
+    static class Serializer extends StdSerializer<FileInfo>
+    {
+        Serializer()
+        {
+            super(FileInfo.class);
+        }
+
+        @Override
+        public void serialize(FileInfo file, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            gen.writeStringField("id", Integer.toString(file.id));
+            gen.writeStringField("internalName", file.internalName);
+            gen.writeStringField("thumbnailName", file.thumbnailName);
+            gen.writeStringField("originalName", file.originalName);
+            gen.writeStringField("ticketId", Integer.toString(file.ticketId));
+            gen.writeEndObject();
+        }
+    }
+}
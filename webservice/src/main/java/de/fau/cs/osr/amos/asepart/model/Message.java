@@ -0,0 +1,100 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A chat message. Attachment and its original file name are null if the
+ * message has no attachment, the ticket id is 0 if it was not queried.
+ */
+
+@JsonSerialize(using = Message.Serializer.class)
+public final class Message
+{
+    private final int id;
+    private final String sender;
+    private final long timestamp;
+    private final String content;
+    private final Integer attachment;
+    private final String originalName;
+    private final int ticketId;
+
+    public Message(int id, String sender, long timestamp, String content, Integer attachment, String originalName, int ticketId)
+    {
+        this.id = id;
+        this.sender = sender;
+        this.timestamp = timestamp;
+        this.content = content;
+        this.attachment = attachment;
+        this.originalName = originalName;
+        this.ticketId = ticketId;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public String getSender()
+    {
+        return sender;
+    }
+
+    /**
+     * @return Milliseconds since epoch.
+     */
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public String getContent()
+    {
+        return content;
+    }
+
+    public Integer getAttachment()
+    {
+        return attachment;
+    }
+
+    public String getOriginalName()
+    {
+        return originalName;
+    }
+
+    public int getTicketId()
+    {
+        return ticketId;
+    }
+
+    static class Serializer extends StdSerializer<Message>
+    {
+        Serializer()
+        {
+            super(Message.class);
+        }
+
+        @Override
+        public void serialize(Message message, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            gen.writeStringField("id", Integer.toString(message.id));
+            gen.writeStringField("sender", message.sender);
+            gen.writeStringField("timestamp", Long.toString(message.timestamp));
+            gen.writeStringField("content", message.content);
+            gen.writeStringField("attachment", message.attachment != null ? message.attachment.toString() : null);
+            gen.writeStringField("originalName", message.originalName);
+
+            if (message.ticketId != 0)
+                gen.writeStringField("ticketId", Integer.toString(message.ticketId));
+
+            gen.writeEndObject();
+        }
+    }
+}
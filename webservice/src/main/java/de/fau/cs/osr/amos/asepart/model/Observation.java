@@ -0,0 +1,68 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * An observation submitted by a user, its outcome is "positive" or "negative".
+ */
+
+@JsonSerialize(using = Observation.Serializer.class)
+public final class Observation
+{
+    private final int id;
+    private final String loginName;
+    private final String outcome;
+    private final int quantity;
+
+    public Observation(int id, String loginName, String outcome, int quantity)
+    {
+        this.id = id;
+        this.loginName = loginName;
+        this.outcome = outcome;
+        this.quantity = quantity;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public String getLoginName()
+    {
+        return loginName;
+    }
+
+    public String getOutcome()
+    {
+        return outcome;
+    }
+
+    public int getQuantity()
+    {
+        return quantity;
+    }
+
+    static class Serializer extends StdSerializer<Observation>
+    {
+        Serializer()
+        {
+            super(Observation.class);
+        }
+
+        @Override
+        public void serialize(Observation observation, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            gen.writeStringField("id", Integer.toString(observation.id));
+            gen.writeStringField("login_name", observation.loginName);
+            gen.writeStringField("outcome", observation.outcome);
+            gen.writeStringField("quantity", Integer.toString(observation.quantity));
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A project, users join it by knowing its entry key.
+ */
+
+@JsonSerialize(using = Project.Serializer.class)
+public final class Project
+{
+    private final String entryKey;
+    private final String name;
+    private final String owner;
+    private final boolean finished;
+
+    public Project(String entryKey, String name, String owner, boolean finished)
+    {
+        this.entryKey = entryKey;
+        this.name = name;
+        this.owner = owner;
+        this.finished = finished;
+    }
+
+    public String getEntryKey()
+    {
+        return entryKey;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getOwner()
+    {
+        return owner;
+    }
+
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    static class Serializer extends StdSerializer<Project>
+    {
+        Serializer()
+        {
+            super(Project.class);
+        }
+
+        @Override
+        public void serialize(Project project, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            gen.writeStringField("entryKey", project.entryKey);
+            gen.writeStringField("name", project.name);
+            gen.writeStringField("owner", project.owner);
+            gen.writeStringField("finished", project.finished ? "true" : "false");
+            gen.writeEndObject();
+        }
+    }
+}
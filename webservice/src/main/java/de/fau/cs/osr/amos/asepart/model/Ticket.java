@@ -0,0 +1,238 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A ticket with its status as seen by the requesting account and its
+ * statistics: number of users who accepted it (U), number of users with
+ * positive observations (UP), and the number of positive (OP) and
+ * negative (ON) observations.
+ *
+ * A ticket may be restricted to some fields, e.g. by TicketQuery.setFields().
+ * Only these fields are serialized, the others may not have been queried.
+ */
+
+@JsonSerialize(using = Ticket.Serializer.class)
+public final class Ticket
+{
+    private final int id;
+    private final String name;
+    private final String summary;
+    private final String description;
+    private final String category;
+    private final String status;
+    private final int requiredObservations;
+    private final String projectKey;
+
+    private final int users;
+    private final int usersPositive;
+    private final int observationsPositive;
+    private final int observationsNegative;
+
+    private final Set<String> fields;
+
+    /**
+     * @param fields Names of fields to serialize, see TicketQuery.FIELDS, or null for all.
+     */
+
+    public Ticket(int id, String name, String summary, String description, String category, String status,
+                  int requiredObservations, String projectKey,
+                  int users, int usersPositive, int observationsPositive, int observationsNegative,
+                  Set<String> fields)
+    {
+        this.id = id;
+        this.name = name;
+        this.summary = summary;
+        this.description = description;
+        this.category = category;
+        this.status = status;
+        this.requiredObservations = requiredObservations;
+        this.projectKey = projectKey;
+        this.users = users;
+        this.usersPositive = usersPositive;
+        this.observationsPositive = observationsPositive;
+        this.observationsNegative = observationsNegative;
+        this.fields = fields;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getSummary()
+    {
+        return summary;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public String getStatus()
+    {
+        return status;
+    }
+
+    public int getRequiredObservations()
+    {
+        return requiredObservations;
+    }
+
+    public String getProjectKey()
+    {
+        return projectKey;
+    }
+
+    /**
+     * @return Number of users who accepted the ticket (U).
+     */
+
+    public int getUsers()
+    {
+        return users;
+    }
+
+    /**
+     * @return Number of users with positive observations (UP).
+     */
+
+    public int getUsersPositive()
+    {
+        return usersPositive;
+    }
+
+    /**
+     * @return Number of positive observations (OP).
+     */
+
+    public int getObservationsPositive()
+    {
+        return observationsPositive;
+    }
+
+    /**
+     * @return Number of negative observations (ON).
+     */
+
+    public int getObservationsNegative()
+    {
+        return observationsNegative;
+    }
+
+    /**
+     * @param status Status as seen by the requesting account.
+     * @return A copy of this ticket with another status.
+     */
+
+    public Ticket withStatus(String status)
+    {
+        return new Ticket(id, name, summary, description, category, status, requiredObservations, projectKey,
+                users, usersPositive, observationsPositive, observationsNegative, fields);
+    }
+
+    /**
+     * @param field Name of field, see TicketQuery.FIELDS.
+     * @return true if the field is serialized.
+     */
+
+    public boolean includes(String field)
+    {
+        return fields == null || fields.contains(field);
+    }
+
+    /**
+     * @param field One of the sortable fields id, name, category or status.
+     * @return Value of the field as string, like in JSON.
+     */
+
+    public String getSortKey(String field)
+    {
+        switch (field)
+        {
+            case "id":
+                return Integer.toString(id);
+
+            case "name":
+                return name;
+
+            case "category":
+                return category;
+
+            case "status":
+                return status;
+
+            default:
+                throw new IllegalArgumentException("Tickets cannot be sorted by: " + field);
+        }
+    }
+
+    static class Serializer extends StdSerializer<Ticket>
+    {
+        Serializer()
+        {
+            super(Ticket.class);
+        }
+
+        @Override
+        public void serialize(Ticket ticket, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+
+            if (ticket.includes("id"))
+                gen.writeStringField("id", Integer.toString(ticket.id));
+
+            if (ticket.includes("name"))
+                gen.writeStringField("name", ticket.name);
+
+            if (ticket.includes("summary"))
+                gen.writeStringField("summary", ticket.summary);
+
+            if (ticket.includes("description"))
+                gen.writeStringField("description", ticket.description);
+
+            if (ticket.includes("category"))
+                gen.writeStringField("category", ticket.category);
+
+            if (ticket.includes("status"))
+                gen.writeStringField("status", ticket.status);
+
+            if (ticket.includes("requiredObservations"))
+                gen.writeStringField("requiredObservations", Integer.toString(ticket.requiredObservations));
+
+            if (ticket.includes("projectKey"))
+                gen.writeStringField("projectKey", ticket.projectKey);
+
+            if (ticket.includes("U"))
+                gen.writeStringField("U", Integer.toString(ticket.users));
+
+            if (ticket.includes("UP"))
+                gen.writeStringField("UP", Integer.toString(ticket.usersPositive));
+
+            if (ticket.includes("OP"))
+                gen.writeStringField("OP", Integer.toString(ticket.observationsPositive));
+
+            if (ticket.includes("ON"))
+                gen.writeStringField("ON", Integer.toString(ticket.observationsNegative));
+
+            gen.writeEndObject();
+        }
+    }
+}
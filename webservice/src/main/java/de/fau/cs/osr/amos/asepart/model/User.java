@@ -0,0 +1,46 @@
+package de.fau.cs.osr.amos.asepart.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A user account, users join projects and work on their tickets.
+ */
+
+@JsonSerialize(using = User.Serializer.class)
+public final class User extends Account
+{
+    private final String phoneNumber;
+
+    public User(String loginName, String firstName, String lastName, String phoneNumber)
+    {
+        super(loginName, firstName, lastName);
+        this.phoneNumber = phoneNumber;
+    }
+
+    public String getPhoneNumber()
+    {
+        return phoneNumber;
+    }
+
+    static class Serializer extends StdSerializer<User>
+    {
+        Serializer()
+        {
+            super(User.class);
+        }
+
+        @Override
+        public void serialize(User user, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            user.writeFields(gen);
+            gen.writeStringField("phoneNumber", user.phoneNumber);
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Immutable rows returned by repositories. Each class is serialized
+ * by its own Jackson serializer to the JSON of the REST API, where
+ * all values are strings.
+ */
+
+package de.fau.cs.osr.amos.asepart.model;
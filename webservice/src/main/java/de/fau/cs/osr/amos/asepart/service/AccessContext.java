@@ -0,0 +1,95 @@
+package de.fau.cs.osr.amos.asepart.service;
+
+import de.fau.cs.osr.amos.asepart.client.Repository;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.core.SecurityContext;
+
+/**
+ * Resolves the relation between the requesting account and tickets or
+ * projects (ownership, membership, finished flag). Each ticket or project
+ * is looked up with a single query at most once, so an instance should
+ * live as long as the request it was created for.
+ */
+
+class AccessContext
+{
+    private final String loginName;
+    private final boolean admin;
+
+    private final Map<Integer, Map<String, String>> tickets = new HashMap<>();
+    private final Map<String, Map<String, String>> projects = new HashMap<>();
+
+    AccessContext(SecurityContext sc)
+    {
+        this.loginName = sc.getUserPrincipal().getName();
+        this.admin = sc.isUserInRole("Admin");
+    }
+
+    /**
+     * @param db Database connection used if ticket was not resolved yet.
+     * @param ticketId Unique ticket id.
+     * @return Access information of ticket, or null if ticket does not exist.
+     * @throws SQLException on database error.
+     */
+
+    Map<String, String> ticket(Repository db, int ticketId) throws SQLException
+    {
+        if (!tickets.containsKey(ticketId))
+            tickets.put(ticketId, db.getTicketAccess(loginName, ticketId));
+
+        return tickets.get(ticketId);
+    }
+
+    /**
+     * @param db Database connection used if project was not resolved yet.
+     * @param projectKey Unique project key.
+     * @return Access information of project, or null if project does not exist.
+     * @throws SQLException on database error.
+     */
+
+    Map<String, String> project(Repository db, String projectKey) throws SQLException
+    {
+        if (!projects.containsKey(projectKey))
+            projects.put(projectKey, db.getProjectAccess(loginName, projectKey));
+
+        return projects.get(projectKey);
+    }
+
+    /**
+     * @param access Access information of ticket or project.
+     * @return true if requesting account is an admin owning the project.
+     */
+
+    boolean isOwner(Map<String, String> access)
+    {
+        return admin && access.get("owner").equals(loginName);
+    }
+
+    /**
+     * @param access Access information of ticket or project.
+     * @return true if requesting account is a user who joined the project.
+     */
+
+    boolean isMember(Map<String, String> access)
+    {
+        return !admin && Boolean.parseBoolean(access.get("member"));
+    }
+
+    /**
+     * @param access Access information of ticket or project.
+     * @return true if requesting account is a user who joined the project and the project is not finished.
+     */
+
+    boolean isActiveMember(Map<String, String> access)
+    {
+        return isMember(access) && !isFinished(access);
+    }
+
+    static boolean isFinished(Map<String, String> access)
+    {
+        return Boolean.parseBoolean(access.get("finished"));
+    }
+}
@@ -0,0 +1,36 @@
+package de.fau.cs.osr.amos.asepart.service;
+
+import de.fau.cs.osr.amos.asepart.client.RowWriter;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Entity of list responses whose rows are written while the query is
+ * still running, see Repository.streamMessages(). RowStreamWriter runs
+ * the query when the response is written and serializes each row as soon
+ * as it has been fetched, so memory usage does not depend on the number
+ * of rows, and the response starts before the query has finished.
+ *
+ * @param <T> Type of rows, see model package.
+ */
+
+class RowStream<T>
+{
+    interface Query<T>
+    {
+        void run(RowWriter<T> writer) throws SQLException, IOException;
+    }
+
+    private final Query<T> query;
+
+    RowStream(Query<T> query)
+    {
+        this.query = query;
+    }
+
+    void run(RowWriter<T> writer) throws SQLException, IOException
+    {
+        query.run(writer);
+    }
+}
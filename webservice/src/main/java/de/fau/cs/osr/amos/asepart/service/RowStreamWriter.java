@@ -0,0 +1,109 @@
+package de.fau.cs.osr.amos.asepart.service;
+
+import de.fau.cs.osr.amos.asepart.client.RowWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.sql.SQLException;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.cbor.CBORMediaTypes;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+
+/**
+ * Writes a RowStream as array in the negotiated encoding: JSON, CBOR or
+ * Smile. Rows are serialized by their Jackson serializers in the model
+ * package, like all other responses.
+ *
+ * The status and headers are sent with the first bytes. If the query
+ * fails after that, the array is not ended, so clients never mistake
+ * a truncated list for a complete one.
+ */
+
+@Provider
+@Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+public class RowStreamWriter implements MessageBodyWriter<RowStream<?>>
+{
+    private static final JsonFactory jsonFactory = createFactory(new JsonFactory());
+    private static final JsonFactory cborFactory = createFactory(new CBORFactory());
+    private static final JsonFactory smileFactory = createFactory(new SmileFactory());
+
+    private static JsonFactory createFactory(JsonFactory factory)
+    {
+        // the mapper becomes the codec of generators, which serializes rows
+        return new ObjectMapper(factory).getFactory()
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    }
+
+    private static JsonFactory getFactory(MediaType mediaType)
+    {
+        if (mediaType.isCompatible(CBORMediaTypes.APPLICATION_JACKSON_CBOR_TYPE))
+            return cborFactory;
+
+        if (mediaType.isCompatible(SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE))
+            return smileFactory;
+
+        if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+            return jsonFactory;
+
+        return null;
+    }
+
+    private static <T> void writeRows(RowStream<T> rows, JsonGenerator generator) throws SQLException, IOException
+    {
+        rows.run(new RowWriter<T>()
+        {
+            private boolean first = true;
+
+            @Override
+            public void write(T row) throws IOException
+            {
+                generator.writeObject(row);
+
+                // the first row is sent right away, later rows whenever the buffer is full
+                if (first)
+                {
+                    generator.flush();
+                    first = false;
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return RowStream.class.isAssignableFrom(type) && getFactory(mediaType) != null;
+    }
+
+    @Override
+    public void writeTo(RowStream<?> rows, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream output) throws IOException
+    {
+        try (JsonGenerator generator = getFactory(mediaType).createGenerator(output))
+        {
+            generator.writeStartArray();
+            writeRows(rows, generator);
+            generator.writeEndArray();
+        }
+
+        catch (SQLException e)
+        {
+            throw new WebApplicationException(e);
+        }
+    }
+}
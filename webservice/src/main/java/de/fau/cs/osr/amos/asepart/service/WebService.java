@@ -2,16 +2,29 @@ package de.fau.cs.osr.amos.asepart.service;
 
 import de.fau.cs.osr.amos.asepart.client.*;
 import de.fau.cs.osr.amos.asepart.ext.*;
+import de.fau.cs.osr.amos.asepart.metrics.Metrics;
+import de.fau.cs.osr.amos.asepart.model.*;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import java.security.Principal;
 import javax.annotation.security.RolesAllowed;
+import javax.inject.Inject;
+import javax.inject.Provider;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
@@ -22,18 +35,33 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.DefaultValue;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriBuilder;
 
+import com.fasterxml.jackson.jaxrs.cbor.CBORMediaTypes;
+import com.fasterxml.jackson.jaxrs.cbor.JacksonCBORProvider;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.internal.InternalProperties;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
-import org.glassfish.jersey.media.multipart.FormDataParam;
-import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.process.internal.RequestScope;
 import org.glassfish.jersey.server.ResourceConfig;
 
+import org.jvnet.mimepull.MIMEMessage;
+import org.jvnet.mimepull.MIMEParsingException;
+import org.jvnet.mimepull.MIMEPart;
+
 import io.minio.ErrorCode;
 import io.minio.errors.ErrorResponseException;
 
@@ -44,6 +72,58 @@ import io.minio.errors.ErrorResponseException;
 @Path("/")
 public class WebService
 {
+    // one database connection per request, shared with filters and file storage
+    @Inject
+    private Provider<Repository> database;
+
+    // needed to access the database from bulkhead threads
+    @Inject
+    private RequestScope requestScope;
+
+    // resources are instantiated per request, so this is request-scoped
+    private AccessContext accessContext;
+
+    private AccessContext access(SecurityContext sc)
+    {
+        if (accessContext == null)
+            accessContext = new AccessContext(sc);
+
+        return accessContext;
+    }
+
+    private static final int MAX_ACCOUNT_PAGE_SIZE = 1000;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    // cursors hold the sort keys of the last item of a page
+    private static String encodeCursor(String... keys)
+    {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.join("\n", keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor, int keys)
+    {
+        try
+        {
+            final String[] result = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", keys);
+            return result.length == keys ? result : null;
+        }
+
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private static Response accountPage(List<? extends Account> accounts, int limit)
+    {
+        Response.ResponseBuilder response = Response.ok(accounts);
+
+        if (accounts.size() == limit)
+            response.header("X-Next-Cursor", encodeCursor(accounts.get(accounts.size() - 1).getLoginName()));
+
+        return response.build();
+    }
+
     /* If credentials are invalid, the method call will automatically fail.
      * This is done by the AuthenticationFilter, so if the return statement
      * is reached only if the credentials have been validated already.
@@ -77,27 +157,26 @@ public class WebService
         if (sc.isUserInRole("User") && !principal.getName().equals(loginName))
             return Response.status(Response.Status.FORBIDDEN).build();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (db.isAdmin(loginName))
-                return Response.status(Response.Status.CONFLICT).build();
-
-            if (db.isUser(loginName))
-            {
-                db.updateUser(loginName, user.get("firstName"), user.get("lastName"), user.get("phoneNumber"));
+        Repository db = database.get();
 
-                if (user.containsKey("password"))
-                    db.changePassword(loginName, user.get("password"));
-            }
+        if (db.isAdmin(loginName))
+            return Response.status(Response.Status.CONFLICT).build();
 
-            else
-            {
-                if (!user.containsKey("password"))
-                    return Response.status(Response.Status.BAD_REQUEST).build();
+        if (db.isUser(loginName))
+        {
+            db.updateUser(loginName, user.get("firstName"), user.get("lastName"), user.get("phoneNumber"));
 
-                db.insertUser(loginName, user.get("firstName"), user.get("lastName"), user.get("phoneNumber"));
+            if (user.containsKey("password"))
                 db.changePassword(loginName, user.get("password"));
-            }
+        }
+
+        else
+        {
+            if (!user.containsKey("password"))
+                return Response.status(Response.Status.BAD_REQUEST).build();
+
+            db.insertUser(loginName, user.get("firstName"), user.get("lastName"), user.get("phoneNumber"));
+            db.changePassword(loginName, user.get("password"));
         }
 
         return Response.noContent().build();
@@ -105,33 +184,40 @@ public class WebService
 
     @Path("/users")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin"})
-    public Response listUsers(@Context SecurityContext sc) throws Exception
+    public Response listUsers(@Context SecurityContext sc, @QueryParam("search") String search, @QueryParam("cursor") String cursor,
+                              @DefaultValue("100") @QueryParam("limit") int limit) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            return Response.ok(db.listUsers()).build();
-        }
+        if (limit < 1 || limit > MAX_ACCOUNT_PAGE_SIZE)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        final String[] after = cursor != null ? decodeCursor(cursor, 1) : null;
+
+        if (cursor != null && after == null)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        Repository db = database.get();
+        return accountPage(db.listUsers(search, after != null ? after[0] : null, limit), limit);
     }
 
     @Path("/users/{name}")
     @GET
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
     public Response getUser(@Context SecurityContext sc, @PathParam("name") String user) throws Exception
     {
         Principal principal = sc.getUserPrincipal();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isUser(user))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
 
-            if (sc.isUserInRole("User") && !principal.getName().equals(user))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!db.isUser(user))
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            return Response.ok(db.getUser(user)).build();
-        }
+        if (sc.isUserInRole("User") && !principal.getName().equals(user))
+            return Response.status(Response.Status.FORBIDDEN).build();
+
+        return Response.ok(db.getUser(user)).build();
     }
 
     @Path("/users/{name}")
@@ -139,13 +225,12 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response deleteUser(@Context SecurityContext sc, @PathParam("name") String user) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isUser(user))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
 
-            db.deleteAccount(user);
-        }
+        if (!db.isUser(user))
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        db.deleteAccount(user);
 
         return Response.noContent().build();
     }
@@ -158,31 +243,30 @@ public class WebService
     {
         final String loginName = admin.get("loginName");
 
-        try (DatabaseClient db = new DatabaseClient())
+        Repository db = database.get();
+
+        if (db.isUser(loginName))
+            return Response.status(Response.Status.CONFLICT).build();
+
+        if (db.isAdmin(loginName))
         {
-            if (db.isUser(loginName))
-                return Response.status(Response.Status.CONFLICT).build();
+            db.updateAdmin(loginName, admin.get("firstName"), admin.get("lastName"));
 
-            if (db.isAdmin(loginName))
+            if (admin.containsKey("password"))
             {
-                db.updateAdmin(loginName, admin.get("firstName"), admin.get("lastName"));
-
-                if (admin.containsKey("password"))
-                {
-                    if (sc.getUserPrincipal().getName().equals(loginName))
-                        db.changePassword(loginName, admin.get("password"));
-                    else return Response.status(Response.Status.FORBIDDEN).build();
-                }
+                if (sc.getUserPrincipal().getName().equals(loginName))
+                    db.changePassword(loginName, admin.get("password"));
+                else return Response.status(Response.Status.FORBIDDEN).build();
             }
+        }
 
-            else
-            {
-                if (!admin.containsKey("password"))
-                    return Response.status(Response.Status.BAD_REQUEST).build();
+        else
+        {
+            if (!admin.containsKey("password"))
+                return Response.status(Response.Status.BAD_REQUEST).build();
 
-                db.insertAdmin(loginName, admin.get("firstName"), admin.get("lastName"));
-                db.changePassword(loginName, admin.get("password"));
-            }
+            db.insertAdmin(loginName, admin.get("firstName"), admin.get("lastName"));
+            db.changePassword(loginName, admin.get("password"));
         }
 
         return Response.noContent().build();
@@ -190,28 +274,35 @@ public class WebService
 
     @Path("/admins")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin"})
-    public Response listAdmins(@Context SecurityContext sc) throws Exception
+    public Response listAdmins(@Context SecurityContext sc, @QueryParam("search") String search, @QueryParam("cursor") String cursor,
+                              @DefaultValue("100") @QueryParam("limit") int limit) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            return Response.ok(db.listAdmins()).build();
-        }
+        if (limit < 1 || limit > MAX_ACCOUNT_PAGE_SIZE)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        final String[] after = cursor != null ? decodeCursor(cursor, 1) : null;
+
+        if (cursor != null && after == null)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        Repository db = database.get();
+        return accountPage(db.listAdmins(search, after != null ? after[0] : null, limit), limit);
     }
 
     @Path("/admins/{name}")
     @GET
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin"})
     public Response getAdmin(@Context SecurityContext sc, @PathParam("name") String admin) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isAdmin(admin))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
 
-            return Response.ok(db.getAdmin(admin)).build();
-        }
+        if (!db.isAdmin(admin))
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        return Response.ok(db.getAdmin(admin)).build();
     }
 
     @Path("/admins/{name}")
@@ -219,15 +310,14 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response deleteAdmin(@Context SecurityContext sc, @PathParam("name") String admin) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isAdmin(admin))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
 
-            db.deleteAccount(admin);
-        }
+        if (!db.isAdmin(admin))
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        db.deleteAccount(admin);
 
-        try (FileStorageClient fs = new FileStorageClient())
+        try (FileStorageClient fs = new FileStorageClient(db))
         {
             fs.killOrphans();
         }
@@ -242,7 +332,8 @@ public class WebService
 
     @Path("/projects")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Versioned
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
     public Response listProjects(@Context SecurityContext sc) throws Exception
     {
@@ -250,18 +341,14 @@ public class WebService
 
         if (sc.isUserInRole("Admin"))
         {
-            try (DatabaseClient db = new DatabaseClient())
-            {
-                return Response.ok(db.listProjects(account)).build();
-            }
+            Repository db = database.get();
+            return Response.ok(db.listProjects(account)).build();
         }
 
         else if (sc.isUserInRole("User"))
         {
-            try (DatabaseClient db = new DatabaseClient())
-            {
-                return Response.ok(db.listJoinedProjects(account)).build();
-            }
+            Repository db = database.get();
+            return Response.ok(db.listJoinedProjects(account)).build();
         }
 
         else return Response.status(Response.Status.FORBIDDEN).build();
@@ -273,37 +360,36 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response writeProject(@Context SecurityContext sc, Map<String, String> project) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            String entryKey = project.get("entryKey");
-
-            if (db.isProject(entryKey))
-            {
-                if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), entryKey))
-                    return Response.status(Response.Status.FORBIDDEN).build();
+        Repository db = database.get();
+        String entryKey = project.get("entryKey");
+        Map<String, String> access = access(sc).project(db, entryKey);
 
-                db.updateProject(entryKey, project.get("name"), project.get("owner"), Boolean.parseBoolean(project.get("finished")));
-            }
+        if (access != null)
+        {
+            if (!access(sc).isOwner(access))
+                return Response.status(Response.Status.FORBIDDEN).build();
 
-            else db.insertProject(entryKey, project.get("name"), project.get("owner")); 
+            db.updateProject(entryKey, project.get("name"), project.get("owner"), Boolean.parseBoolean(project.get("finished")));
         }
 
+        else db.insertProject(entryKey, project.get("name"), project.get("owner")); 
+
         return Response.noContent().build();
     }
 
     @Path("/projects/{key}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Versioned(project = "key")
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin"})
     public Response getProject(@Context SecurityContext sc, @PathParam("key") String entryKey) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isProject(entryKey))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
 
-            return Response.ok(db.getProject(entryKey)).build();
-        }
+        if (access(sc).project(db, entryKey) == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        return Response.ok(db.getProject(entryKey)).build();
     }
     
     @Path("/projects/{key}")
@@ -311,17 +397,17 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response deleteProject(@Context SecurityContext sc, @PathParam("key") String entryKey) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isProject(entryKey))
-                return Response.status(Response.Status.NOT_FOUND).build();
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), entryKey))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, entryKey);
 
-            db.deleteProject(entryKey);
-        }
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
+
+        db.deleteProject(entryKey);
 
-        try (FileStorageClient fs = new FileStorageClient())
+        try (FileStorageClient fs = new FileStorageClient(db))
         {
             fs.killOrphans();
         }
@@ -336,52 +422,107 @@ public class WebService
 
     @Path("/projects/{key}/tickets")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Versioned(project = "key")
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
-    public Response getTicketsOfProject(@Context SecurityContext sc, @PathParam("key") String projectKey) throws Exception
+    public Response getTicketsOfProject(@Context SecurityContext sc, @PathParam("key") String projectKey,
+                                        @DefaultValue("0") @QueryParam("limit") int limit,
+                                        @QueryParam("cursor") String cursor,
+                                        @QueryParam("status") String status,
+                                        @QueryParam("category") String category,
+                                        @QueryParam("sort") String sort,
+                                        @QueryParam("fields") String fields) throws Exception
     {
         Principal principal = sc.getUserPrincipal();
+        TicketQuery query;
+
+        try
+        {
+            query = new TicketQuery().setLimit(limit).setStatus(status).setCategory(category)
+                    .setSort(sort).setCursor(cursor).setFields(fields);
+        }
 
-        try (DatabaseClient db = new DatabaseClient())
+        catch (IllegalArgumentException e)
         {
-            if (!db.isProject(projectKey))
-                return Response.status(Response.Status.NOT_FOUND).build();
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, projectKey);
+
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        if (!access(sc).isOwner(access) && !access(sc).isActiveMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
+
+        // users see their own progress as ticket status
+        String user = sc.isUserInRole("User") ? principal.getName() : null;
+        List<Ticket> tickets = db.getTicketsOfProject(projectKey, user, query);
+
+        Response.ResponseBuilder response = Response.ok(tickets);
+
+        // a full page may be followed by another one
+        if (query.getLimit() > 0 && tickets.size() == query.getLimit())
+            response.header("X-Next-Cursor", query.getCursor(tickets.get(tickets.size() - 1)));
 
-            Map<String, String> project = db.getProject(projectKey);
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        return response.build();
+    }
+
+    @Path("/projects/{key}/search")
+    @GET
+    @Versioned(project = "key")
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @RolesAllowed({"Admin", "User"})
+    public Response searchProject(@Context SecurityContext sc, @PathParam("key") String projectKey,
+                                  @QueryParam("q") String text, @QueryParam("cursor") String cursor,
+                                  @DefaultValue("20") @QueryParam("limit") int limit) throws Exception
+    {
+        if (text == null || text.trim().isEmpty() || limit < 1 || limit > MAX_SEARCH_PAGE_SIZE)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        Map<String, String> after = null;
 
-            if (sc.isUserInRole("Admin") && !project.get("owner").equals(principal.getName()))
+        if (cursor != null)
+        {
+            final String[] keys = decodeCursor(cursor, 3);
+
+            if (keys == null)
+                return Response.status(Response.Status.BAD_REQUEST).build();
+
+            try
             {
-                return Response.status(Response.Status.FORBIDDEN).build();
+                after = new HashMap<>(3);
+                after.put("rank", String.valueOf(Float.parseFloat(keys[0])));
+                after.put("type", keys[1]);
+                after.put("id", String.valueOf(Integer.parseInt(keys[2])));
             }
 
-            else if (sc.isUserInRole("User") && (finished || !db.isUserMemberOfProject(principal.getName(), projectKey)))
+            catch (NumberFormatException e)
             {
-                return Response.status(Response.Status.FORBIDDEN).build();
+                return Response.status(Response.Status.BAD_REQUEST).build();
             }
+        }
 
-            List<Map<String, String>> tickets = db.getTicketsOfProject(projectKey);
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, projectKey);
 
-            if (sc.isUserInRole("User"))
-            {
-                for (Map<String, String> ticket : tickets)
-                {
-                    int ticketId = Integer.parseInt(ticket.get("id"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-                    if (ticket.get("status").equals("open") && db.hasUserAcceptedTicket(principal.getName(), ticketId))
-                    {
-                        ticket.put("status", "accepted");
+        if (!access(sc).isOwner(access) && !access(sc).isActiveMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-                        if (db.observationCount(principal.getName(), ticketId) > 0)
-                        {
-                            ticket.put("status", "processed");
-                        }
-                    }
-                }
-            }
+        List<Map<String, String>> hits = db.searchProject(projectKey, text, after, limit);
+        Response.ResponseBuilder response = Response.ok(hits);
 
-            return Response.ok(tickets).build();
+        if (hits.size() == limit)
+        {
+            Map<String, String> last = hits.get(hits.size() - 1);
+            response.header("X-Next-Cursor", encodeCursor(last.get("rank"), last.get("type"), last.get("id")));
         }
+
+        return response.build();
     }
 
     @Path("/tickets/")
@@ -395,79 +536,77 @@ public class WebService
 
         String projectKey = ticket.get("projectKey");
 
-        try (DatabaseClient db = new DatabaseClient())
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, projectKey);
+
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
+
+        if (ticket.containsKey("id"))
         {
-            if (!db.isProject(projectKey))
+            int id = Integer.parseInt(ticket.get("id"));
+            Map<String, String> ticketAccess = access(sc).ticket(db, id);
+
+            if (ticketAccess == null)
                 return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), projectKey))
+            if (!access(sc).isOwner(ticketAccess))
                 return Response.status(Response.Status.FORBIDDEN).build();
 
-            if (ticket.containsKey("id"))
-            {
-                int id = Integer.parseInt(ticket.get("id"));
+            db.updateTicket(id, ticket.get("name"), ticket.get("summary"),
+                                      ticket.get("description"), ticket.get("category"),
+                                      Integer.parseInt(ticket.get("requiredObservations")));
 
-                if (!db.isTicket(id))
-                    return Response.status(Response.Status.NOT_FOUND).build();
-
-                db.updateTicket(id, ticket.get("name"), ticket.get("summary"),
-                                          ticket.get("description"), ticket.get("category"),
-                                          Integer.parseInt(ticket.get("requiredObservations")));
-
-                return Response.noContent().build();
-            }
+            return Response.noContent().build();
+        }
 
-            else
-            {
-                db.insertTicket(ticket.get("name"), ticket.get("summary"),
-                         ticket.get("description"), ticket.get("category"),
-                         Integer.parseInt(ticket.get("requiredObservations")), projectKey);
+        else
+        {
+            db.insertTicket(ticket.get("name"), ticket.get("summary"),
+                     ticket.get("description"), ticket.get("category"),
+                     Integer.parseInt(ticket.get("requiredObservations")), projectKey);
 
-                return Response.noContent().build();
-            }
+            return Response.noContent().build();
         }
     }
 
     @Path("/tickets/{id}")
     @GET
+    @Versioned(ticket = "id")
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
     public Response getTicket(@Context SecurityContext sc, @PathParam("id") int ticketId) throws Exception
     {
         Principal principal = sc.getUserPrincipal();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (sc.isUserInRole("Admin") && !project.get("owner").equals(principal.getName()))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access) && !access(sc).isActiveMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            else if (sc.isUserInRole("User"))
-            {
-                final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        Ticket ticket = db.getTicket(ticketId);
 
-                if (finished || !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey")))
-                {
-                    return Response.status(Response.Status.FORBIDDEN).build();
-                }
+        if (sc.isUserInRole("User"))
+        {
+            if (ticket.getStatus().equals("open") && db.hasUserAcceptedTicket(principal.getName(), ticketId))
+            {
+                ticket = ticket.withStatus("accepted");
 
-                if (ticket.get("status").equals("open") && db.hasUserAcceptedTicket(principal.getName(), ticketId))
+                if (db.observationCount(principal.getName(), ticketId) > 0)
                 {
-                    ticket.put("status", "accepted");
-
-                    if (db.observationCount(principal.getName(), ticketId) > 0)
-                    {
-                        ticket.put("status", "processed");
-                    }
+                    ticket = ticket.withStatus("processed");
                 }
             }
-
-            return Response.ok(ticket).build();
         }
+
+        return Response.ok(ticket).build();
     }
 
     @Path("/tickets/{id}/attachments")
@@ -476,22 +615,20 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response addAttachment(@Context SecurityContext sc, @PathParam("id") int ticketId, int metadataId) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            Map<String, String> fileInfo = db.getFile(metadataId);
-            if (!fileInfo.get("ticketId").equals(String.valueOf(ticketId)))
-                return Response.status(Response.Status.BAD_REQUEST).build();
+        FileInfo fileInfo = db.getFile(metadataId);
+        if (fileInfo == null || fileInfo.getTicketId() != ticketId)
+            return Response.status(Response.Status.BAD_REQUEST).build();
 
-            db.addAttachment(ticketId, metadataId);
-        }
+        db.addAttachment(ticketId, metadataId);
 
         return Response.noContent().build();
     }
@@ -501,44 +638,38 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response removeAttachment(@Context SecurityContext sc, @PathParam("id") int ticketId, @PathParam("file") int metadataId) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            db.removeAttachment(ticketId, metadataId);
-        }
+        db.removeAttachment(ticketId, metadataId);
 
         return Response.noContent().build();
     }
 
     @Path("/tickets/{id}/attachments")
     @GET
+    @Versioned(ticket = "id")
     @Consumes(MediaType.TEXT_PLAIN)
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
     public Response listAttachments(@Context SecurityContext sc, @PathParam("id") int ticketId) throws Exception
     {
-        Principal principal = sc.getUserPrincipal();
-
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (sc.isUserInRole("Admin") && !db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
-            else if (sc.isUserInRole("User") && !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access) && !access(sc).isMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            return Response.ok(db.listAttachments(ticketId)).build();
-        }
+        return Response.ok(db.listAttachments(ticketId)).build();
     }
 
     @Path("/tickets/{id}")
@@ -546,22 +677,19 @@ public class WebService
     @RolesAllowed({"Admin"})
     public Response deleteTicket(@Context SecurityContext sc, @PathParam("id") int ticketId) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            db.deleteTicket(ticketId);
-        }
+        db.deleteTicket(ticketId);
 
-        try
+        try (FileStorageClient fs = new FileStorageClient(db))
         {
-            FileStorageClient fs = new FileStorageClient();
             fs.killOrphans();
         }
 
@@ -580,21 +708,17 @@ public class WebService
     {
         Principal principal = sc.getUserPrincipal();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (finished || !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isActiveMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            if (!db.hasUserAcceptedTicket(principal.getName(), ticketId))
-                db.acceptTicket(principal.getName(), ticketId);
-        }
+        if (!db.hasUserAcceptedTicket(principal.getName(), ticketId))
+            db.acceptTicket(principal.getName(), ticketId);
 
         return Response.noContent().build();
     }
@@ -607,69 +731,57 @@ public class WebService
     {
         Principal principal = sc.getUserPrincipal();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (finished || !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey")) || !db.hasUserAcceptedTicket(principal.getName(), ticketId))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isActiveMember(access) || !db.hasUserAcceptedTicket(principal.getName(), ticketId))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            db.submitObservation(principal.getName(), ticketId,
-                    observation.get("outcome"), Integer.parseInt(observation.get("quantity")));
-        }
+        db.submitObservation(principal.getName(), ticketId,
+                observation.get("outcome"), Integer.parseInt(observation.get("quantity")));
 
         return Response.noContent().build();
     }
 
     @Path("/tickets/{id}/observations")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Versioned(ticket = "id")
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
     public Response listObservations(@Context SecurityContext sc, @PathParam("id") int ticketId) throws Exception
     {
-        Principal principal = sc.getUserPrincipal();
-
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (sc.isUserInRole("Admin") && !project.get("owner").equals(principal.getName()))
-                return Response.status(Response.Status.FORBIDDEN).build();
-
-            if (sc.isUserInRole("User") && (finished || !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey"))))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access) && !access(sc).isActiveMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            return Response.ok(db.listObservations(ticketId)).build();
-        }
+        return Response.ok(new RowStream<Observation>(writer -> db.streamObservations(ticketId, writer))).build();
     }
 
     @Path("/projects/{key}/users")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin"})
     public Response getUsersOfProject(@Context SecurityContext sc, @PathParam("key") String projectKey) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isProject(projectKey))
-                return Response.status(Response.Status.NOT_FOUND).build();
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), projectKey))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, projectKey);
 
-            List<Map<String, String>> users = db.getUsersOfProject(projectKey);
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            return Response.ok(users).build();
-        }
+        List<User> users = db.getUsersOfProject(projectKey);
+
+        return Response.ok(users).build();
     }
 
     @Path("/projects/{key}/users/{name}")
@@ -678,15 +790,15 @@ public class WebService
     public Response removeUserFromProject(@Context SecurityContext sc,
                                           @PathParam("key") String entryKey, @PathParam("name") String user) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isProject(entryKey) || !db.isUser(user))
-                return Response.status(Response.Status.NOT_FOUND).build();
-            if (!db.isAdminOwnerOfProject(sc.getUserPrincipal().getName(), entryKey))
-                return Response.status(Response.Status.FORBIDDEN).build();
-            if (db.isUserMemberOfProject(user, entryKey))
-                db.leaveProject(user, entryKey);
-        }
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, entryKey);
+
+        if (access == null || !db.isUser(user))
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (!access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
+        if (db.isUserMemberOfProject(user, entryKey))
+            db.leaveProject(user, entryKey);
 
         return Response.noContent().build();
     }
@@ -699,14 +811,14 @@ public class WebService
     {
         final String user = sc.getUserPrincipal().getName();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isProject(entryKey))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, entryKey);
 
-            if (db.isUserMemberOfProject(user, entryKey))
-                db.leaveProject(user, entryKey);
-        }
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        if (access(sc).isMember(access))
+            db.leaveProject(user, entryKey);
 
         return Response.noContent().build();
     }
@@ -719,20 +831,17 @@ public class WebService
     {
         final String user = sc.getUserPrincipal().getName();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isProject(entryKey))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).project(db, entryKey);
 
-            Map<String, String> project = db.getProject(entryKey);
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (finished)
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (AccessContext.isFinished(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            if (!db.isUserMemberOfProject(user, entryKey))
-                db.joinProject(user, entryKey);
-        }
+        if (!access(sc).isMember(access))
+            db.joinProject(user, entryKey);
 
         return Response.noContent().build();
     }
@@ -743,11 +852,9 @@ public class WebService
     @RolesAllowed({"User"})
     public Response joinProjectPreview(@Context SecurityContext sc, @QueryParam("key") String entryKey) throws Exception
     {
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            Map<String, String> project = db.getProject(entryKey);
-            return Response.ok(project.get("name")).build();
-        }
+        Repository db = database.get();
+        Project project = db.getProject(entryKey);
+        return Response.ok(project.getName()).build();
     }
 
     @Path("/messages/{ticket}")
@@ -760,140 +867,346 @@ public class WebService
     {
         Principal principal = sc.getUserPrincipal();
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            if (sc.isUserInRole("Admin") && !project.get("owner").equals(principal.getName()))
-                return Response.status(Response.Status.FORBIDDEN).build();
-
-            if (sc.isUserInRole("User") && (finished || !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey"))))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access) && !access(sc).isActiveMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            try
-            {
-                Map<String, String> fileInfo = db.getFile(Integer.parseInt(attachment));
-                if (!fileInfo.get("ticketId").equals(String.valueOf(ticketId)))
-                    return Response.status(Response.Status.BAD_REQUEST).build();
-            }
+        try
+        {
+            FileInfo fileInfo = db.getFile(Integer.parseInt(attachment));
+            if (fileInfo == null || fileInfo.getTicketId() != ticketId)
+                return Response.status(Response.Status.BAD_REQUEST).build();
+        }
 
-            catch (NumberFormatException ignored) {}
+        catch (NumberFormatException ignored) {}
 
-            db.sendMessage(principal.getName(), message, attachment, ticketId);
-        }
+        db.sendMessage(principal.getName(), message, attachment, ticketId);
 
         return Response.noContent().build();
     }
 
     @Path("/messages/{ticket}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Versioned(ticket = "ticket")
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
     public Response listMessages(@Context SecurityContext sc, @PathParam("ticket") int ticketId,
                                  @DefaultValue("20") @QueryParam("limit") int limit) throws Exception
     {
-        Principal principal = sc.getUserPrincipal();
+        Repository db = database.get();
+        Map<String, String> access = access(sc).ticket(db, ticketId);
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        if (access == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
-
-            if (sc.isUserInRole("Admin") && !project.get("owner").equals(principal.getName()))
-                return Response.status(Response.Status.FORBIDDEN).build();
-
-            if (sc.isUserInRole("User") && !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey")))
-                return Response.status(Response.Status.FORBIDDEN).build();
+        if (!access(sc).isOwner(access) && !access(sc).isMember(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-            return Response.ok(db.listMessages(ticketId, limit)).build();
-        }
+        return Response.ok(new RowStream<Message>(writer -> db.streamMessages(ticketId, limit, writer))).build();
     }
 
-    @Path("/files/{ticket}")
-    @POST
-    @Produces(MediaType.TEXT_PLAIN)
-    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    /* Returns what changed for the requesting account since a token:
+     * projects, tickets with status and statistics as seen by the account,
+     * new messages, and keys of projects and ids of tickets which are gone.
+     * Without a token, all projects and tickets are returned, but no messages.
+     * Finished projects are reported as deleted to users, as they may not
+     * access their tickets and messages anymore.
+     * If nothing changed, the response is a new token and empty lists.
+     * Projects and tickets are read with one query each. Tokens older than
+     * the retention of the change log are answered with "resync": all
+     * projects and tickets, which replace those known to the client.
+     */
+
+    @Path("/sync")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, CBORMediaTypes.APPLICATION_JACKSON_CBOR, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     @RolesAllowed({"Admin", "User"})
-    public Response uploadFile(@Context SecurityContext sc, @PathParam("ticket") int ticketId,
-                               @FormDataParam("file") InputStream stream,
-                               @FormDataParam("file") FormDataContentDisposition fileDetail) throws Exception
+    public Response sync(@Context SecurityContext sc, @QueryParam("since") String since) throws Exception
     {
-        if (stream == null || fileDetail == null)
-            return Response.status(Response.Status.BAD_REQUEST).build();
+        Long token = null;
 
-        Principal principal = sc.getUserPrincipal();
+        if (since != null)
+        {
+            try
+            {
+                token = Long.valueOf(since);
+            }
 
-        try (DatabaseClient db = new DatabaseClient())
+            catch (NumberFormatException e)
+            {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+        }
+
+        final String account = sc.getUserPrincipal().getName();
+        final boolean admin = sc.isUserInRole("Admin");
+
+        // users see their own progress as ticket status
+        final String user = admin ? null : account;
+
+        Repository db = database.get();
+        ChangeSet changes = db.getChanges(account, admin, token);
+
+        List<Project> projects = new ArrayList<>();
+        List<String> deletedProjects = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        List<String> deletedTickets = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+
+        if (token == null || changes.isExpired())
         {
-            if (!db.isTicket(ticketId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+            for (Project project : admin ? db.listProjects(account) : db.listJoinedProjects(account))
+            {
+                // like all ticket endpoints, users lose access to finished projects
+                if (!admin && project.isFinished())
+                    deletedProjects.add(project.getEntryKey());
+                else
+                    projects.add(project);
+            }
 
-            Map<String, String> ticket = db.getTicket(ticketId);
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
-            final boolean finished = Boolean.parseBoolean(project.get("finished"));
+            Set<String> keys = new HashSet<>();
 
-            if (sc.isUserInRole("Admin") && !project.get("owner").equals(principal.getName()))
-                return Response.status(Response.Status.FORBIDDEN).build();
+            for (Project project : projects)
+                keys.add(project.getEntryKey());
 
-            if (sc.isUserInRole("User") && (finished || !db.isUserMemberOfProject(principal.getName(), ticket.get("projectKey"))))
-                return Response.status(Response.Status.FORBIDDEN).build();
+            tickets = db.getTickets(keys, Collections.emptySet(), user);
         }
 
-        try (FileStorageClient fs = new FileStorageClient())
+        else if (!changes.isEmpty())
         {
-            int metadataId = fs.upload(ticketId, fileDetail.getFileName(), stream);
-            return Response.ok(metadataId).build();
+            // one query for the projects still visible to the account, instead of one per changed project
+            Map<String, Project> visible = new HashMap<>();
+
+            for (Project project : admin ? db.listProjects(account) : db.listJoinedProjects(account))
+            {
+                if (admin || !project.isFinished())
+                    visible.put(project.getEntryKey(), project);
+            }
+
+            Set<String> changedProjects = new HashSet<>(changes.getAccess());
+            changedProjects.addAll(changes.getProjects());
+            changedProjects.addAll(changes.getTickets().keySet());
+            changedProjects.addAll(changes.getMessages().keySet());
+
+            for (String projectKey : changedProjects)
+            {
+                if (!visible.containsKey(projectKey))
+                    deletedProjects.add(projectKey);
+            }
+
+            Set<String> synced = new HashSet<>(changes.getProjects());
+            synced.addAll(changes.getAccess());
+
+            for (String projectKey : synced)
+            {
+                if (visible.containsKey(projectKey))
+                    projects.add(visible.get(projectKey));
+            }
+
+            // tickets of projects with changed access are synced in full, others only if they changed
+            Set<String> fullKeys = new HashSet<>(changes.getAccess());
+            fullKeys.retainAll(visible.keySet());
+
+            Set<Integer> ticketIds = new HashSet<>();
+
+            for (Map.Entry<String, Set<Integer>> changed : changes.getTickets().entrySet())
+            {
+                if (visible.containsKey(changed.getKey()) && !fullKeys.contains(changed.getKey()))
+                    ticketIds.addAll(changed.getValue());
+            }
+
+            tickets = db.getTickets(fullKeys, ticketIds, user);
+
+            for (Ticket ticket : tickets)
+                ticketIds.remove(ticket.getId());
+
+            for (int ticketId : ticketIds)
+                deletedTickets.add(String.valueOf(ticketId));
+
+            Set<Integer> messageIds = new HashSet<>();
+
+            for (Map.Entry<String, Set<Integer>> changed : changes.getMessages().entrySet())
+            {
+                if (!deletedProjects.contains(changed.getKey()))
+                    messageIds.addAll(changed.getValue());
+            }
+
+            if (!messageIds.isEmpty())
+                messages = db.getMessages(messageIds);
         }
 
-        catch (UnsupportedOperationException e)
+        Map<String, Object> result = new HashMap<>(8);
+        result.put("token", String.valueOf(changes.getToken()));
+        result.put("projects", projects);
+        result.put("deletedProjects", deletedProjects);
+        result.put("tickets", tickets);
+        result.put("deletedTickets", deletedTickets);
+        result.put("messages", messages);
+        result.put("resync", token != null && changes.isExpired());
+
+        return Response.ok(result).build();
+    }
+
+    // returns the part named "file" without reading its content, only preceding parts are buffered
+    private static MIMEPart findFilePart(MIMEMessage message) throws ParseException
+    {
+        for (int i = 0; ; i++)
         {
-            return Response.status(Response.Status.NOT_IMPLEMENTED).build();
+            final MIMEPart part = message.getPart(i);
+            final List<String> disposition;
+
+            try
+            {
+                disposition = part.getHeader("Content-Disposition");
+            }
+
+            catch (IllegalStateException e)
+            {
+                // no more parts
+                return null;
+            }
+
+            if (disposition != null && "file".equals(new FormDataContentDisposition(disposition.get(0)).getName()))
+                return part;
         }
     }
 
-    @Path("/files/{id}")
-    @GET
-    public Response downloadFile(@PathParam("id") int metadataId,
-                                 @DefaultValue("false") @QueryParam("thumbnail") boolean thumbnail) throws Exception
+    /* The multipart body is parsed by hand instead of using @FormDataParam,
+     * which would read the whole body on the interactive thread before
+     * this method is called. Here, it is only read in the media bulkhead,
+     * so slow uploads never occupy interactive threads.
+     */
+
+    @Path("/files/{ticket}")
+    @POST
+    @Produces(MediaType.TEXT_PLAIN)
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @RolesAllowed({"Admin", "User"})
+    public void uploadFile(@Suspended AsyncResponse response, @Context SecurityContext sc, @Context HttpHeaders headers,
+                           @PathParam("ticket") int ticketId, InputStream entity)
     {
-        try (FileStorageClient fs = new FileStorageClient())
+        Bulkhead.media.submit(requestScope, response, () ->
         {
-            if (!fs.exists(metadataId))
+            Repository db = database.get();
+            Map<String, String> access = access(sc).ticket(db, ticketId);
+
+            if (access == null)
                 return Response.status(Response.Status.NOT_FOUND).build();
 
-            String location;
+            if (!access(sc).isOwner(access) && !access(sc).isActiveMember(access))
+                return Response.status(Response.Status.FORBIDDEN).build();
+
+            final String boundary = headers.getMediaType().getParameters().get("boundary");
 
-            if (thumbnail)
+            if (boundary == null)
+                return Response.status(Response.Status.BAD_REQUEST).build();
+
+            try (MIMEMessage message = new MIMEMessage(entity, boundary))
             {
-                if (!fs.hasThumbnail(metadataId))
+                final MIMEPart part = findFilePart(message);
+
+                if (part == null)
                     return Response.status(Response.Status.BAD_REQUEST).build();
 
-                location = fs.getThumbnail(metadataId);
+                final String fileName = new FormDataContentDisposition(part.getHeader("Content-Disposition").get(0)).getFileName();
+
+                if (fileName == null)
+                    return Response.status(Response.Status.BAD_REQUEST).build();
+
+                try (FileStorageClient fs = new FileStorageClient(db); InputStream stream = part.readOnce())
+                {
+                    int metadataId = fs.upload(ticketId, fileName, stream);
+                    return Response.ok(metadataId).build();
+                }
             }
 
-            else location = fs.download(metadataId);
-            return Response.temporaryRedirect(new URI(location)).build();
-        }
+            catch (ParseException | MIMEParsingException e)
+            {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
 
-        catch (UnsupportedOperationException e)
+            catch (UnsupportedOperationException e)
+            {
+                return Response.status(Response.Status.NOT_IMPLEMENTED).build();
+            }
+        });
+    }
+
+    static Response thumbnailResponse(Request request, ThumbnailCache.Entry thumbnail)
+    {
+        // thumbnail names are never reused, so their content never changes
+        final EntityTag etag = new EntityTag(thumbnail.getName());
+        Response.ResponseBuilder builder = request.evaluatePreconditions(etag);
+
+        if (builder == null)
+            builder = Response.ok(thumbnail.getContent(), FileStorageClient.getThumbnailContentType(thumbnail.getName()));
+
+        return builder.tag(etag).header("Cache-Control", "public, max-age=31536000, immutable").build();
+    }
+
+    @Path("/files/{id}")
+    @GET
+    public void downloadFile(@Suspended AsyncResponse response, @Context Request request, @PathParam("id") int metadataId,
+                             @DefaultValue("false") @QueryParam("thumbnail") boolean thumbnail)
+    {
+        if (thumbnail)
         {
-            return Response.status(Response.Status.NOT_IMPLEMENTED).build();
+            ThumbnailCache.Entry cached = FileStorageClient.getCachedThumbnail(metadataId);
+
+            if (cached != null)
+            {
+                response.resume(thumbnailResponse(request, cached));
+                return;
+            }
         }
 
-        catch (ErrorResponseException e)
+        // thumbnails may have to be loaded from Minio or generated
+        Bulkhead.media.submit(requestScope, response, () ->
         {
-            if (e.errorResponse().errorCode().code().equals(ErrorCode.NO_SUCH_KEY.code()))
-                return Response.status(Response.Status.NOT_FOUND).build();
-            else return Response.serverError().build();
-        }
+            Repository db = database.get();
+
+            try (FileStorageClient fs = new FileStorageClient(db))
+            {
+                // metadata is read once, a cache miss costs a single query
+                FileInfo fileInfo = db.getFile(metadataId);
+
+                if (fileInfo == null)
+                    return Response.status(Response.Status.NOT_FOUND).build();
+
+                String location;
+
+                if (thumbnail)
+                {
+                    if (fileInfo.getThumbnailName() == null)
+                        return Response.status(Response.Status.BAD_REQUEST).build();
+
+                    if (FileStorageClient.isThumbnailCacheEnabled())
+                        return thumbnailResponse(request, fs.loadThumbnail(fileInfo));
+
+                    location = fs.getThumbnail(fileInfo);
+                }
+
+                else location = fs.download(fileInfo);
+                return Response.temporaryRedirect(new URI(location)).build();
+            }
+
+            catch (UnsupportedOperationException e)
+            {
+                return Response.status(Response.Status.NOT_IMPLEMENTED).build();
+            }
+
+            catch (ErrorResponseException e)
+            {
+                if (e.errorResponse().errorCode().code().equals(ErrorCode.NO_SUCH_KEY.code()))
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                else return Response.serverError().build();
+            }
+        });
     }
 
     @Path("/files/{id}")
@@ -903,20 +1216,19 @@ public class WebService
                                @PathParam("id") int metadataId) throws Exception
     {
 
-        try (DatabaseClient db = new DatabaseClient())
-        {
-            if (!db.isFile(metadataId))
-                return Response.status(Response.Status.NOT_FOUND).build();
+        Repository db = database.get();
 
-            Map<String, String> fileInfo = db.getFile(metadataId);
-            Map<String, String> ticket = db.getTicket(Integer.parseInt(fileInfo.get("ticketId")));
-            Map<String, String> project = db.getProject(ticket.get("projectKey"));
+        FileInfo fileInfo = db.getFile(metadataId);
 
-            if (!project.get("owner").equals(sc.getUserPrincipal().getName()))
-                return Response.status(Response.Status.FORBIDDEN).build();
-        }
+        if (fileInfo == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        Map<String, String> access = access(sc).ticket(db, fileInfo.getTicketId());
+
+        if (access == null || !access(sc).isOwner(access))
+            return Response.status(Response.Status.FORBIDDEN).build();
 
-        try (FileStorageClient fs = new FileStorageClient();)
+        try (FileStorageClient fs = new FileStorageClient(db))
         {
             fs.remove(metadataId);
             return Response.noContent().build();
@@ -936,6 +1248,18 @@ public class WebService
         }
     }
 
+    /* Metrics are exposed without authentication, so that they can
+     * be scraped by Prometheus. They contain no account or project data.
+     */
+
+    @Path("/metrics")
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public Response getMetrics()
+    {
+        return Response.ok(Metrics.render()).build();
+    }
+
     public static String address = "http://localhost/";
     public static int port = 12345;
     
@@ -951,6 +1275,20 @@ public class WebService
             System.err.println("Environment variable PORT not set, using default: " + port);
         }
 
+        try (Repository db = Repository.open())
+        {
+            db.migrateSchema();
+        }
+
+        catch (Exception e)
+        {
+            System.err.println("Failed to migrate database schema.");
+            e.printStackTrace();
+            return;
+        }
+
+        ChangeLogPruner.start(); // delete entries of change log older than sync retention
+
         try
         {
             final String ip = InetAddress.getLocalHost().getHostAddress();
@@ -962,10 +1300,21 @@ public class WebService
             config.register(CORSFilter.class); // allow cross-origin requests
             config.register(AuthenticationFilter.class); // enable authentication
 
+            config.register(new DatabaseBinder()); // share one database connection per request
             config.register(DebugExceptionMapper.class); // display exceptions in server log
-            config.register(MultiPartFeature.class); // enable file upload
-
-            GrizzlyHttpServerFactory.createHttpServer(uri, config);
+            config.register(MetricsListener.class); // record request latencies
+            config.register(QueryBudgetFilter.class); // report statements per request if enabled
+            config.register(ConditionalRequestFilter.class); // answer conditional requests by project version
+            config.register(JacksonJsonProvider.class); // serialize JSON with Jackson, see model package
+            config.property(InternalProperties.JSON_FEATURE, JacksonJsonProvider.class.getSimpleName()); // instead of JSON-B
+            config.register(JacksonCBORProvider.class); // serve the same model as CBOR if requested
+            config.register(JacksonSmileProvider.class); // or as Smile
+            config.register(RowStreamWriter.class); // write streamed lists in any of these encodings
+            config.register(CompressionInterceptor.class); // compress large responses if accepted by client
+
+            HttpServer server = GrizzlyHttpServerFactory.createHttpServer(uri, config, false);
+            WorkerThreads.configure(server); // run requests on virtual threads or interactive bulkhead
+            server.start();
         }
 
         catch (UnknownHostException e)
@@ -973,5 +1322,11 @@ public class WebService
             System.err.println("Failed to get server's own ip address.");
             e.printStackTrace();
         }
+
+        catch (IOException e)
+        {
+            System.err.println("Failed to start server.");
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,7 @@
+-- Index ticket lists and the tables referencing tickets
+
+create index if not exists ticket_project_key_idx on ticket (project_key);
+create index if not exists observation_ticket_id_idx on observation (ticket_id, login_name, outcome, quantity);
+create index if not exists message_ticket_id_timestamp_idx on message (ticket_id, timestamp);
+create index if not exists attachment_ticket_id_idx on attachment (ticket_id, attachment_id);
+create index if not exists fileinfo_ticket_id_idx on fileinfo (ticket_id);
@@ -0,0 +1,4 @@
+-- Index projects by member and owner
+
+create index if not exists membership_login_name_idx on membership (login_name);
+create index if not exists project_owner_idx on project (owner);
@@ -0,0 +1,4 @@
+-- Index tickets of a project in id order for keyset pagination
+
+drop index if exists ticket_project_key_idx;
+create index if not exists ticket_project_key_id_idx on ticket (project_key, id);
@@ -0,0 +1,8 @@
+-- Index accounts for prefix search by login and name, ignoring case
+
+create index if not exists user_account_login_name_prefix_idx on user_account (lower(login_name) text_pattern_ops);
+create index if not exists user_account_first_name_prefix_idx on user_account (lower(first_name) text_pattern_ops);
+create index if not exists user_account_last_name_prefix_idx on user_account (lower(last_name) text_pattern_ops);
+create index if not exists admin_account_login_name_prefix_idx on admin_account (lower(login_name) text_pattern_ops);
+create index if not exists admin_account_first_name_prefix_idx on admin_account (lower(first_name) text_pattern_ops);
+create index if not exists admin_account_last_name_prefix_idx on admin_account (lower(last_name) text_pattern_ops);
@@ -0,0 +1,12 @@
+-- Full-text search of tickets and messages
+
+alter table ticket add column search_vector tsvector generated always as (
+  setweight(to_tsvector('simple', name), 'A') ||
+  setweight(to_tsvector('simple', summary), 'B') ||
+  setweight(to_tsvector('simple', description), 'C')) stored;
+
+create index if not exists ticket_search_vector_idx on ticket using gin (search_vector);
+
+alter table message add column search_vector tsvector generated always as (to_tsvector('simple', content)) stored;
+
+create index if not exists message_search_vector_idx on message using gin (search_vector);
@@ -0,0 +1,104 @@
+-- Change log of projects, memberships, tickets and messages for delta sync
+
+-- txid is the id of the writing transaction, entity_id is the project key,
+-- ticket id, message id, or for memberships the account gaining or losing access
+create table if not exists change_log(
+  txid bigint not null default txid_current(),
+  project_key character varying (32) not null,
+  entity text not null,
+  entity_id text not null
+);
+
+create index if not exists change_log_txid_idx on change_log(txid);
+
+create or replace function log_project_change() returns trigger language plpgsql as $$
+begin
+  if tg_op = 'DELETE' then
+    insert into change_log(project_key, entity, entity_id) values (old.entry_key, 'membership', old.owner);
+    return old;
+  end if;
+
+  insert into change_log(project_key, entity, entity_id) values (new.entry_key, 'project', new.entry_key);
+
+  if tg_op = 'INSERT' or old.owner <> new.owner then
+    insert into change_log(project_key, entity, entity_id) values (new.entry_key, 'membership', new.owner);
+  end if;
+
+  if tg_op = 'UPDATE' and old.owner <> new.owner then
+    insert into change_log(project_key, entity, entity_id) values (old.entry_key, 'membership', old.owner);
+  end if;
+
+  return new;
+end $$;
+
+create or replace function log_membership_change() returns trigger language plpgsql as $$
+begin
+  if tg_op = 'DELETE' then
+    insert into change_log(project_key, entity, entity_id) values (old.project_key, 'membership', old.login_name);
+    return old;
+  end if;
+
+  insert into change_log(project_key, entity, entity_id) values (new.project_key, 'membership', new.login_name);
+  return new;
+end $$;
+
+create or replace function log_ticket_change() returns trigger language plpgsql as $$
+begin
+  if tg_op = 'DELETE' then
+    insert into change_log(project_key, entity, entity_id) values (old.project_key, 'ticket', old.id::text);
+    return old;
+  end if;
+
+  insert into change_log(project_key, entity, entity_id) values (new.project_key, 'ticket', new.id::text);
+  return new;
+end $$;
+
+-- assignments and observations change status and statistics of their ticket,
+-- nothing is logged if the ticket itself is being deleted
+create or replace function log_ticket_detail_change() returns trigger language plpgsql as $$
+declare
+  changed_ticket integer;
+begin
+  if tg_op = 'DELETE' then
+    changed_ticket := old.ticket_id;
+  else
+    changed_ticket := new.ticket_id;
+  end if;
+
+  insert into change_log(project_key, entity, entity_id)
+    select project_key, 'ticket', id::text from ticket where id = changed_ticket;
+
+  return null;
+end $$;
+
+create or replace function log_message_change() returns trigger language plpgsql as $$
+begin
+  insert into change_log(project_key, entity, entity_id)
+    select project_key, 'message', new.id::text from ticket where id = new.ticket_id;
+
+  return new;
+end $$;
+
+drop trigger if exists project_change_log on project;
+create trigger project_change_log after insert or update or delete on project
+  for each row execute function log_project_change();
+
+drop trigger if exists membership_change_log on membership;
+create trigger membership_change_log after insert or delete on membership
+  for each row execute function log_membership_change();
+
+drop trigger if exists ticket_change_log on ticket;
+create trigger ticket_change_log after insert or update or delete on ticket
+  for each row execute function log_ticket_change();
+
+drop trigger if exists assignment_change_log on assignment;
+create trigger assignment_change_log after insert or delete on assignment
+  for each row execute function log_ticket_detail_change();
+
+drop trigger if exists observation_change_log on observation;
+create trigger observation_change_log after insert or update or delete on observation
+  for each row execute function log_ticket_detail_change();
+
+drop trigger if exists message_change_log on message;
+create trigger message_change_log after insert or update on message
+  for each row execute function log_message_change();
@@ -0,0 +1,25 @@
+-- Version counters of projects for conditional requests
+
+-- rows are kept when a project is deleted, so a recreated project continues its versions
+create table if not exists project_version(
+  project_key character varying (32) primary key,
+  version bigint not null
+);
+
+-- every entry of the change log bumps the version of its project
+create or replace function bump_project_version() returns trigger language plpgsql as $$
+begin
+  insert into project_version(project_key, version) values (new.project_key, 1)
+    on conflict (project_key) do update set version = project_version.version + 1;
+
+  return null;
+end $$;
+
+drop trigger if exists change_log_project_version on change_log;
+create trigger change_log_project_version after insert on change_log
+  for each row execute function bump_project_version();
+
+-- attachments are listed per ticket, log them as ticket changes
+drop trigger if exists attachment_change_log on attachment;
+create trigger attachment_change_log after insert or delete on attachment
+  for each row execute function log_ticket_detail_change();
@@ -0,0 +1,33 @@
+-- Retention of the change log, see DatabaseClient.pruneChanges()
+
+-- each pruning records the oldest running transaction, so that entries
+-- can be deleted by age later without storing a time per entry
+create table if not exists change_log_checkpoint(
+  token bigint not null,
+  created timestamp with time zone not null default now()
+);
+
+-- entries below the horizon have been deleted, older tokens have to sync in full
+create table if not exists change_log_horizon(
+  token bigint not null
+);
+
+insert into change_log_horizon(token) select 0 where not exists(select 1 from change_log_horizon);
+
+-- all transactions below a checkpoint's token had finished when it was recorded,
+-- so no entry below the new horizon can be written after it has been deleted
+create or replace function prune_change_log(retention interval) returns bigint language plpgsql as $$
+declare
+  horizon bigint;
+begin
+  insert into change_log_checkpoint(token) values (txid_snapshot_xmin(txid_current_snapshot()));
+
+  update change_log_horizon set token = greatest(token,
+      coalesce((select max(token) from change_log_checkpoint where created < now() - retention), 0))
+    returning token into horizon;
+
+  delete from change_log where txid < horizon;
+  delete from change_log_checkpoint where token < horizon;
+
+  return horizon;
+end $$;
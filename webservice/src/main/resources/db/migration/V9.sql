@@ -0,0 +1,6 @@
+-- Cover project keys in the index of memberships by user
+
+-- joined projects, sync and version lookups select the project keys of a user,
+-- which are now read by an index only scan instead of the primary key
+create index if not exists membership_login_name_project_key_idx on membership (login_name, project_key);
+drop index if exists membership_login_name_idx;
@@ -1,20 +1,42 @@
 package de.fau.cs.osr.amos.asepart;
 
+import de.fau.cs.osr.amos.asepart.client.DatabaseClient;
+import de.fau.cs.osr.amos.asepart.client.Repository;
+import de.fau.cs.osr.amos.asepart.client.TicketQuery;
+import de.fau.cs.osr.amos.asepart.ext.Bulkhead;
 import de.fau.cs.osr.amos.asepart.service.WebService;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.net.URL;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
@@ -22,8 +44,14 @@ import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
 
@@ -31,6 +59,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 public class WebServiceTest
 {
@@ -60,6 +91,12 @@ public class WebServiceTest
         return getClient("admin", "admin");
     }
     
+    // SQL statements are only issued if tests run against PostgreSQL
+    private static boolean isMemoryStorage()
+    {
+        return "memory".equals(System.getenv("ASEPART_STORAGE"));
+    }
+
     @BeforeAll
     static void start()
     {
@@ -112,6 +149,275 @@ public class WebServiceTest
         }
     }
 
+    @Test
+    void testPgcryptoHash() throws SQLException
+    {
+        assumeFalse(isMemoryStorage());
+
+        Map<String, String> newUser = new HashMap<>(5);
+        newUser.put("loginName", "junit_pgcrypto");
+        newUser.put("firstName", "JUnit");
+        newUser.put("lastName", "Pgcrypto");
+        newUser.put("phoneNumber", "+4900000");
+        newUser.put("password", "replaced");
+
+        try (Response response = getAdminClient().path("/users").request().post(Entity.json(newUser)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // passwords set before hashing moved to the web service were hashed by pgcrypto
+        try (Connection cn = getDatabaseConnection(); Statement stmt = cn.createStatement())
+        {
+            stmt.executeUpdate("update account set password = crypt('legacy', gen_salt('bf', 8)) where login_name = 'junit_pgcrypto';");
+        }
+
+        try (Response response = getClient("junit_pgcrypto", "legacy").path("/login/user").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getClient("junit_pgcrypto", "replaced").path("/login/user").request().get())
+        {
+            assertEquals(Response.Status.UNAUTHORIZED, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/users/junit_pgcrypto").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @Test
+    void testPasswordBulkhead() throws InterruptedException
+    {
+        final ThreadPoolExecutor password = (ThreadPoolExecutor) Bulkhead.password.getExecutor();
+        final long tasks = password.getTaskCount();
+
+        // unknown accounts are verified against a dummy hash, so they take as long as existing ones
+        try (Response response = getClient("junit_unknown", "unknown").path("/login/user").request().get())
+        {
+            assertEquals(Response.Status.UNAUTHORIZED, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(tasks + 1, password.getTaskCount());
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        try
+        {
+            // a queued login gives up after ASEPART_PASSWORD_TIMEOUT instead of blocking the worker
+            occupy(Bulkhead.password, release);
+
+            try (Response response = getUserClient().path("/login/user").request().get())
+            {
+                assertEquals(Response.Status.SERVICE_UNAVAILABLE, Response.Status.fromStatusCode(response.getStatus()));
+            }
+
+            fillQueue(Bulkhead.password, release);
+
+            try (Response response = getUserClient().path("/login/user").request().get())
+            {
+                assertEquals(Response.Status.SERVICE_UNAVAILABLE, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+
+        finally
+        {
+            release.countDown();
+        }
+
+        // rejected attempts do not count as failed logins
+        try (Response response = getUserClient().path("/login/user").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @Test
+    void testLoginLimit()
+    {
+        // default limit is 10 failed attempts per minute and account
+        for (int i = 0; i < 10; i++)
+        {
+            try (Response response = getClient("junit_attacked", "wrong").path("/login/user").request().get())
+            {
+                assertEquals(Response.Status.UNAUTHORIZED, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+
+        try (Response response = getClient("junit_attacked", "wrong").path("/login/user").request().get())
+        {
+            assertEquals(Response.Status.TOO_MANY_REQUESTS, Response.Status.fromStatusCode(response.getStatus()));
+            assertTrue(Integer.parseInt(response.getHeaderString("Retry-After")) > 0);
+        }
+
+        // successful logins of other accounts are not affected
+        for (int i = 0; i < 20; i++)
+        {
+            try (Response response = getUserClient().path("/login/user").request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+    }
+
+    @Test
+    void testMetrics()
+    {
+        try (Response response = getAdminClient().path("/login/admin").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getClient().path("/metrics").request().get())
+        {
+            String answer = response.readEntity(String.class);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertTrue(answer.contains("asepart_http_request_duration_seconds_count{resource_method=\"WebService.loginAsAdmin\",status=\"200\"}"));
+
+            if (!isMemoryStorage())
+            {
+                assertTrue(answer.contains("asepart_db_query_duration_seconds_count{method=\"getAuthenticatedRole\"}"));
+                assertTrue(answer.contains("asepart_db_pool_connections{pool=\"primary\",state=\"max\"}"));
+            }
+        }
+    }
+
+    private static int queryCount(Response response)
+    {
+        return Integer.parseInt(response.getHeaderString("X-Query-Count"));
+    }
+
+    @Test
+    void testQueryCount()
+    {
+        assumeFalse(isMemoryStorage());
+
+        // first request warms the authorization cache
+        for (int i = 0; i < 2; i++)
+        {
+            try (Response response = getUserClient().path("/projects/pizza/tickets").request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+
+                if (i == 1)
+                    assertEquals(3, queryCount(response)); // authenticate with role, project version, tickets
+            }
+
+            try (Response response = getAdminClient().path("/projects/pizza/tickets").request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+
+                if (i == 1)
+                    assertEquals(3, queryCount(response)); // authenticate with role, project version, tickets
+
+                String etag = response.getHeaderString("ETag");
+
+                try (Response notModified = getAdminClient().path("/projects/pizza/tickets").request().header("If-None-Match", etag).get())
+                {
+                    assertEquals(Response.Status.NOT_MODIFIED, Response.Status.fromStatusCode(notModified.getStatus()));
+                    assertEquals(2, queryCount(notModified)); // authenticate with role, project version
+                }
+            }
+        }
+    }
+
+    private static Connection getDatabaseConnection() throws SQLException
+    {
+        final String jdbcUrl = System.getenv("JDBC_DATABASE_URL");
+
+        if (jdbcUrl != null)
+            return DriverManager.getConnection(jdbcUrl);
+
+        final String postgresHost = System.getenv("ASEPART_POSTGRES_HOST");
+        return DriverManager.getConnection("jdbc:postgresql://" + (postgresHost != null ? postgresHost : "localhost") + "/", "postgres", "asepart");
+    }
+
+    private interface DatabaseCall
+    {
+        void run(DatabaseClient db) throws Exception;
+    }
+
+    // explains the single statement issued by a DatabaseClient method, bound to the given parameters
+    private static String explain(Connection cn, DatabaseCall call, Object... parameters) throws Exception
+    {
+        final String sql;
+
+        try (DatabaseClient db = new DatabaseClient())
+        {
+            call.run(db);
+
+            final Set<String> statements = db.getQueryStatistics().getStatements();
+            assertEquals(1, statements.size(), statements.toString());
+            sql = statements.iterator().next();
+        }
+
+        StringBuilder plan = new StringBuilder();
+
+        try (PreparedStatement stmt = cn.prepareStatement("explain " + sql))
+        {
+            for (int i = 0; i < parameters.length; i++)
+                stmt.setObject(i + 1, parameters[i]);
+
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                while (rs.next())
+                    plan.append(rs.getString(1)).append('\n');
+            }
+        }
+
+        return plan.toString();
+    }
+
+    private static void assertIndexUsed(String plan, String... indexes)
+    {
+        for (String index : indexes)
+            assertTrue(plan.contains(index), index + " not used:\n" + plan);
+    }
+
+    @Test
+    void testIndexUsage() throws Exception
+    {
+        assumeFalse(isMemoryStorage());
+
+        try (Connection cn = getDatabaseConnection(); Statement stmt = cn.createStatement())
+        {
+            try (ResultSet rs = stmt.executeQuery("select count(*) from schema_version;"))
+            {
+                rs.next();
+                assertTrue(rs.getInt(1) >= 5);
+            }
+
+            // test data is too small for the planner to prefer an index otherwise
+            stmt.execute("set enable_seqscan = off;");
+
+            // hot statements of DatabaseClient, explained with the parameters of the call
+            assertIndexUsed(explain(cn, db -> db.getTicketsOfProject("pizza", "user", new TicketQuery().setLimit(10)),
+                    "user", "user", "pizza", 10), "ticket_project_key_id_idx", "observation_ticket_id_idx");
+            assertIndexUsed(explain(cn, db -> db.streamMessages(1, 10, row -> {}), 1, 10),
+                    "message_ticket_id_timestamp_idx");
+            assertIndexUsed(explain(cn, db -> db.listAttachments(1), 1), "attachment_ticket_id_idx");
+            assertIndexUsed(explain(cn, DatabaseClient::listOrphans), "fileinfo_ticket_id_idx");
+            assertIndexUsed(explain(cn, db -> db.listJoinedProjects("user"), "user"), "membership_login_name_project_key_idx");
+            assertIndexUsed(explain(cn, db -> db.listProjects("admin"), "admin"), "project_owner_idx");
+
+            // tickets of a small project are filtered after their project key, messages are searched first
+            assertIndexUsed(explain(cn, db -> db.searchProject("pizza", "pizza", null, 10), "pizza", "pizza", "pizza", 10),
+                    "ticket_project_key_id_idx", "message_search_vector_idx");
+
+            // small tables are cheaper to walk in login name order up to the limit,
+            // bitmap scans show whether the prefix indexes match the statement
+            stmt.execute("set enable_indexscan = off;");
+
+            assertIndexUsed(explain(cn, db -> db.listUsers("hal", null, 10), "hal%", "hal%", "hal%", 10),
+                    "user_account_login_name_prefix_idx", "user_account_first_name_prefix_idx", "user_account_last_name_prefix_idx");
+            assertIndexUsed(explain(cn, db -> db.listAdmins("adm", null, 10), "adm%", "adm%", "adm%", 10),
+                    "admin_account_login_name_prefix_idx", "admin_account_first_name_prefix_idx", "admin_account_last_name_prefix_idx");
+        }
+    }
+
     @Test
     void testCreateDeleteUser()
     {
@@ -203,6 +509,42 @@ public class WebServiceTest
             assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
         }
 
+        GenericType<List<Map<String, String>>> type = new GenericType<List<Map<String, String>>>() {};
+        String cursor;
+
+        try (Response response = getAdminClient().path("/users").queryParam("search", "JUnit").queryParam("limit", 1).request().get())
+        {
+            List<Map<String, String>> users = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(1, users.size());
+            assertEquals("junit_user", users.get(0).get("loginName"));
+
+            cursor = response.getHeaderString("X-Next-Cursor");
+            assertTrue(cursor != null);
+        }
+
+        try (Response response = getAdminClient().path("/users").queryParam("search", "JUnit").queryParam("cursor", cursor).request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertTrue(response.readEntity(type).isEmpty());
+            assertEquals(null, response.getHeaderString("X-Next-Cursor"));
+        }
+
+        try (Response response = getAdminClient().path("/users").queryParam("limit", 100000).request().get())
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/admins").queryParam("search", "nobody").request().get())
+        {
+            List<Map<String, String>> admins = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(1, admins.size());
+            assertEquals("nobodyadmin", admins.get(0).get("loginName"));
+        }
+
         try (Response response = getAdminClient().path("/users/junit_user").request().delete())
         {
             assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
@@ -453,12 +795,560 @@ public class WebServiceTest
 
         try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
         {
-            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getClient("nobodyadmin", "nobodyadmin").path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.FORBIDDEN, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @Test
+    void testListTicketPages()
+    {
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_pages");
+        project.put("owner", "admin");
+        project.put("name", "JUnit Pages Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        final String[] names = {"Ticket E", "Ticket D", "Ticket C", "Ticket B", "Ticket A"};
+
+        for (int i = 0; i < names.length; i++)
+        {
+            Map<String, String> ticket = new HashMap<>(6);
+            ticket.put("projectKey", "junit_pages");
+            ticket.put("name", names[i]);
+            ticket.put("summary", "Summary of " + names[i]);
+            ticket.put("description", "Description of " + names[i]);
+            ticket.put("category", i % 2 == 0 ? "trace" : "behavior");
+            ticket.put("requiredObservations", "1");
+
+            try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+            {
+                assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+
+        GenericType<List<Map<String, String>>> type = new GenericType<List<Map<String, String>>>() {};
+        List<String> pagedNames = new LinkedList<>();
+        Map<String, String> ticketIds = new HashMap<>();
+        String cursor = null;
+        int pages = 0;
+
+        do
+        {
+            WebTarget target = getAdminClient().path("/projects/junit_pages/tickets")
+                    .queryParam("limit", 2).queryParam("sort", "name").queryParam("fields", "id,name");
+
+            if (cursor != null)
+                target = target.queryParam("cursor", cursor);
+
+            try (Response response = target.request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+                cursor = response.getHeaderString("X-Next-Cursor");
+
+                for (Map<String, String> ticket : response.readEntity(type))
+                {
+                    assertEquals(2, ticket.size());
+                    pagedNames.add(ticket.get("name"));
+                    ticketIds.put(ticket.get("name"), ticket.get("id"));
+                }
+            }
+
+            pages++;
+        }
+        while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(Arrays.asList("Ticket A", "Ticket B", "Ticket C", "Ticket D", "Ticket E"), pagedNames);
+
+        try (Response response = getAdminClient().path("/projects/junit_pages/tickets")
+                .queryParam("category", "trace").queryParam("sort", "-id").request().get())
+        {
+            List<Map<String, String>> tickets = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(3, tickets.size());
+            assertEquals("Ticket A", tickets.get(0).get("name"));
+            assertEquals("Ticket E", tickets.get(2).get("name"));
+            assertTrue(tickets.get(0).containsKey("description"));
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_pages/tickets").queryParam("status", "finished").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertTrue(response.readEntity(type).isEmpty());
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_pages/tickets").queryParam("sort", "summary").request().get())
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_pages/tickets").queryParam("cursor", "invalid").request().get())
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getUserClient().path("/join").request().post(Entity.text("junit_pages")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getUserClient().path("/tickets").path(ticketIds.get("Ticket C")).path("accept").request().post(Entity.text("")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // states are sorted like the ticket_status type, not alphabetically
+        List<String> pagedStates = new LinkedList<>();
+        cursor = null;
+
+        do
+        {
+            WebTarget target = getUserClient().path("/projects/junit_pages/tickets")
+                    .queryParam("limit", 2).queryParam("sort", "-status").queryParam("fields", "name,status");
+
+            if (cursor != null)
+                target = target.queryParam("cursor", cursor);
+
+            try (Response response = target.request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+                cursor = response.getHeaderString("X-Next-Cursor");
+
+                for (Map<String, String> ticket : response.readEntity(type))
+                    pagedStates.add(ticket.get("name") + ": " + ticket.get("status"));
+            }
+        }
+        while (cursor != null);
+
+        assertEquals(Arrays.asList("Ticket C: accepted", "Ticket A: open", "Ticket B: open", "Ticket D: open", "Ticket E: open"), pagedStates);
+
+        try (Response response = getUserClient().path("/projects/junit_pages/tickets")
+                .queryParam("limit", 2).queryParam("sort", "-status").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            cursor = response.getHeaderString("X-Next-Cursor");
+        }
+
+        // a cursor continues in its own direction only
+        try (Response response = getUserClient().path("/projects/junit_pages/tickets")
+                .queryParam("limit", 2).queryParam("sort", "status").queryParam("cursor", cursor).request().get())
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/projects").path("junit_pages").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @Test
+    void testSearch()
+    {
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_search");
+        project.put("owner", "admin");
+        project.put("name", "JUnit Search Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        Map<String, String> ticket = new HashMap<>(6);
+        ticket.put("projectKey", "junit_search");
+        ticket.put("name", "Menu crashes");
+        ticket.put("summary", "Ordering anchovies crashes the menu");
+        ticket.put("description", "Open the menu and add anchovies to a pizza.");
+        ticket.put("category", "trace");
+        ticket.put("requiredObservations", "1");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        GenericType<List<Map<String, String>>> type = new GenericType<List<Map<String, String>>>() {};
+        String ticketId;
+
+        try (Response response = getAdminClient().path("/projects/junit_search/tickets").request().get())
+        {
+            ticketId = response.readEntity(type).get(0).get("id");
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).request().post(Entity.text("Anchovies are fine for me.")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        String cursor;
+
+        try (Response response = getAdminClient().path("/projects/junit_search/search")
+                .queryParam("q", "anchovies").queryParam("limit", 1).request().get())
+        {
+            List<Map<String, String>> hits = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(1, hits.size());
+            assertEquals(ticketId, hits.get(0).get("ticketId"));
+            assertTrue(hits.get(0).get("headline").toLowerCase().contains("<mark>anchovies</mark>"));
+
+            cursor = response.getHeaderString("X-Next-Cursor");
+            assertTrue(cursor != null);
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_search/search")
+                .queryParam("q", "anchovies").queryParam("limit", 1).queryParam("cursor", cursor).request().get())
+        {
+            List<Map<String, String>> hits = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(1, hits.size());
+            assertEquals(ticketId, hits.get(0).get("ticketId"));
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_search/search").queryParam("q", "anchovies menu").request().get())
+        {
+            List<Map<String, String>> hits = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(1, hits.size());
+            assertEquals("ticket", hits.get(0).get("type"));
+            assertEquals("Menu crashes", hits.get(0).get("ticketName"));
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).request().post(Entity.text("Pepperoni <script>alert('x')</script> & olives")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // only the highlights are markup, user-written text is escaped
+        try (Response response = getAdminClient().path("/projects/junit_search/search").queryParam("q", "pepperoni").request().get())
+        {
+            List<Map<String, String>> hits = response.readEntity(type);
+
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(1, hits.size());
+
+            final String headline = hits.get(0).get("headline");
+            assertTrue(headline.toLowerCase().contains("<mark>pepperoni</mark>"));
+            assertTrue(headline.contains("&lt;script&gt;"));
+            assertTrue(headline.contains("&amp;"));
+            assertTrue(!headline.contains("<script>"));
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_search/search").request().get())
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getClient("nobodyuser", "nobodyuser").path("/projects/junit_search/search").queryParam("q", "anchovies").request().get())
+        {
+            assertEquals(Response.Status.FORBIDDEN, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/projects").path("junit_search").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @Test
+    void testConditionalGet()
+    {
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_etag");
+        project.put("owner", "admin");
+        project.put("name", "JUnit ETag Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        Map<String, String> ticket = new HashMap<>(6);
+        ticket.put("projectKey", "junit_etag");
+        ticket.put("name", "Cached ticket");
+        ticket.put("summary", "Summary");
+        ticket.put("description", "Description");
+        ticket.put("category", "trace");
+        ticket.put("requiredObservations", "1");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        GenericType<List<Map<String, String>>> type = new GenericType<List<Map<String, String>>>() {};
+        String etag;
+        String ticketId;
+
+        try (Response response = getAdminClient().path("/projects/junit_etag/tickets").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            etag = response.getHeaderString("ETag");
+            ticketId = response.readEntity(type).get(0).get("id");
+            assertTrue(etag != null);
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_etag/tickets").request().header("If-None-Match", etag).get())
+        {
+            assertEquals(Response.Status.NOT_MODIFIED, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(etag, response.getHeaderString("ETag"));
+        }
+
+        // other query parameters result in another representation
+        try (Response response = getAdminClient().path("/projects/junit_etag/tickets").queryParam("fields", "id")
+                .request().header("If-None-Match", etag).get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // accounts without access get no validator
+        try (Response response = getClient("nobodyuser", "nobodyuser").path("/projects/junit_etag/tickets").request().header("If-None-Match", etag).get())
+        {
+            assertEquals(Response.Status.FORBIDDEN, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        String observationsTag;
+
+        try (Response response = getAdminClient().path("/tickets").path(ticketId).path("observations").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            observationsTag = response.getHeaderString("ETag");
+        }
+
+        ticket.put("id", ticketId);
+        ticket.put("name", "Renamed ticket");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/projects/junit_etag/tickets").request().header("If-None-Match", etag).get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertTrue(!etag.equals(response.getHeaderString("ETag")));
+            assertEquals("Renamed ticket", response.readEntity(type).get(0).get("name"));
+        }
+
+        try (Response response = getAdminClient().path("/tickets").path(ticketId).path("observations").request().header("If-None-Match", observationsTag).get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/projects").path("junit_etag").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> syncList(Map<String, Object> sync, String key)
+    {
+        return (List<T>) sync.get(key);
+    }
+
+    private Map<String, Object> sync(String token)
+    {
+        WebTarget target = getUserClient().path("/sync");
+
+        if (token != null)
+            target = target.queryParam("since", token);
+
+        try (Response response = target.request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            return response.readEntity(new GenericType<Map<String, Object>>() {});
+        }
+    }
+
+    @Test
+    void testSync()
+    {
+        Map<String, Object> sync = sync(null);
+        List<Map<String, String>> projects = syncList(sync, "projects");
+        assertTrue(projects.stream().anyMatch(p -> p.get("entryKey").equals("pizza")));
+        assertTrue(!syncList(sync, "tickets").isEmpty());
+
+        // nothing changed
+        sync = sync((String) sync.get("token"));
+        assertTrue(syncList(sync, "projects").isEmpty());
+        assertTrue(syncList(sync, "tickets").isEmpty());
+        assertTrue(syncList(sync, "messages").isEmpty());
+
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_sync");
+        project.put("owner", "admin");
+        project.put("name", "JUnit Sync Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        Map<String, String> ticket = new HashMap<>(6);
+        ticket.put("projectKey", "junit_sync");
+        ticket.put("name", "Sync ticket");
+        ticket.put("summary", "Summary");
+        ticket.put("description", "Description");
+        ticket.put("category", "trace");
+        ticket.put("requiredObservations", "1");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // projects of other accounts are not visible
+        sync = sync((String) sync.get("token"));
+        assertTrue(syncList(sync, "projects").isEmpty());
+        assertTrue(syncList(sync, "tickets").isEmpty());
+
+        try (Response response = getUserClient().path("/join").request().post(Entity.text("junit_sync")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // joined projects are synced in full
+        sync = sync((String) sync.get("token"));
+        List<Map<String, String>> tickets = syncList(sync, "tickets");
+        final String ticketId = tickets.get(0).get("id");
+
+        assertEquals(1, syncList(sync, "projects").size());
+        assertEquals(1, tickets.size());
+        assertEquals("Sync ticket", tickets.get(0).get("name"));
+        assertEquals("open", tickets.get(0).get("status"));
+
+        try (Response response = getUserClient().path("/tickets").path(ticketId).path("accept").request().post(Entity.text("")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).request().post(Entity.text("Synced message")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        sync = sync((String) sync.get("token"));
+        tickets = syncList(sync, "tickets");
+        List<Map<String, String>> messages = syncList(sync, "messages");
+
+        assertTrue(syncList(sync, "projects").isEmpty());
+        assertEquals(1, tickets.size());
+        assertEquals("accepted", tickets.get(0).get("status"));
+        assertEquals("1", tickets.get(0).get("U"));
+        assertEquals(1, messages.size());
+        assertEquals("Synced message", messages.get(0).get("content"));
+        assertEquals(ticketId, messages.get(0).get("ticketId"));
+
+        try (Response response = getAdminClient().path("/tickets").path(ticketId).request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        sync = sync((String) sync.get("token"));
+        assertTrue(syncList(sync, "tickets").isEmpty());
+        assertEquals(Arrays.asList(ticketId), syncList(sync, "deletedTickets"));
+
+        ticket.put("name", "Finished ticket");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        sync = sync((String) sync.get("token"));
+        tickets = syncList(sync, "tickets");
+        final String finishedTicketId = tickets.get(0).get("id");
+        assertEquals(1, tickets.size());
+
+        project.put("finished", "true");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(finishedTicketId).request().post(Entity.text("Message after finish")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // users lose access to finished projects, like on all ticket endpoints
+        sync = sync((String) sync.get("token"));
+        assertTrue(syncList(sync, "projects").isEmpty());
+        assertTrue(syncList(sync, "tickets").isEmpty());
+        assertTrue(syncList(sync, "messages").isEmpty());
+        assertEquals(Arrays.asList("junit_sync"), syncList(sync, "deletedProjects"));
+
+        Map<String, Object> full = sync(null);
+        List<Map<String, String>> fullProjects = syncList(full, "projects");
+        List<Map<String, String>> fullTickets = syncList(full, "tickets");
+
+        assertTrue(fullProjects.stream().noneMatch(p -> p.get("entryKey").equals("junit_sync")));
+        assertTrue(fullTickets.stream().noneMatch(t -> t.get("id").equals(finishedTicketId)));
+        assertTrue(syncList(full, "deletedProjects").contains("junit_sync"));
+
+        try (Response response = getAdminClient().path("/projects").path("junit_sync").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        sync = sync((String) sync.get("token"));
+        assertTrue(syncList(sync, "projects").isEmpty());
+        assertEquals(Arrays.asList("junit_sync"), syncList(sync, "deletedProjects"));
+
+        try (Response response = getUserClient().path("/sync").queryParam("since", "yesterday").request().get())
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    @Test
+    void testSyncResync() throws Exception
+    {
+        final String token = (String) sync(null).get("token");
+        assertEquals(false, sync(token).get("resync"));
+
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_resync");
+        project.put("owner", "admin");
+        project.put("name", "JUnit Resync Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // the first call records a checkpoint, the second one prunes up to it
+        try (Repository db = Repository.open())
+        {
+            db.pruneChanges(0);
+            db.pruneChanges(0);
         }
 
-        try (Response response = getClient("nobodyadmin", "nobodyadmin").path("/tickets").request().post(Entity.json(ticket)))
+        Map<String, Object> sync = sync(token);
+        List<Map<String, String>> projects = syncList(sync, "projects");
+
+        assertEquals(true, sync.get("resync"));
+        assertTrue(projects.stream().anyMatch(p -> p.get("entryKey").equals("pizza")));
+        assertTrue(!syncList(sync, "tickets").isEmpty());
+
+        try (Response response = getAdminClient().path("/projects").path("junit_resync").request().delete())
         {
-            assertEquals(Response.Status.FORBIDDEN, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
         }
     }
 
@@ -737,6 +1627,180 @@ public class WebServiceTest
         }
     }
 
+    private static Response.Status getStatus(WebTarget client, String path)
+    {
+        try (Response response = client.path(path).request().get())
+        {
+            return Response.Status.fromStatusCode(response.getStatus());
+        }
+    }
+
+    private static Map<String, String> account(String loginName)
+    {
+        Map<String, String> account = new HashMap<>(5);
+        account.put("loginName", loginName);
+        account.put("firstName", "JUnit");
+        account.put("lastName", "Revoke");
+        account.put("password", loginName);
+
+        return account;
+    }
+
+    private static Map<String, String> user()
+    {
+        Map<String, String> user = account("revoke_user");
+        user.put("phoneNumber", "+4900000");
+
+        return user;
+    }
+
+    @Test
+    void testAccessRevocation()
+    {
+        // each check first warms the authorization cache, then changes access and expects the change to apply at once
+        try (Response response = getAdminClient().path("/admins").request().post(Entity.json(account("revoke_owner"))))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/admins").request().post(Entity.json(account("revoke_admin"))))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        try (Response response = getAdminClient().path("/users").request().post(Entity.json(user())))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        final WebTarget owner = getClient("revoke_owner", "revoke_owner");
+        final WebTarget admin = getClient("revoke_admin", "revoke_admin");
+        final WebTarget user = getClient("revoke_user", "revoke_user");
+
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_revoke");
+        project.put("name", "Revoke Project");
+        project.put("owner", "revoke_owner");
+
+        try (Response response = owner.path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        Map<String, String> ticket = new HashMap<>(6);
+        ticket.put("projectKey", "junit_revoke");
+        ticket.put("name", "Revoke Ticket");
+        ticket.put("summary", "Revoke Ticket Summary");
+        ticket.put("description", "Description of Revoke Ticket");
+        ticket.put("category", "trace");
+        ticket.put("requiredObservations", "1");
+
+        try (Response response = owner.path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        String ticketPath;
+
+        try (Response response = owner.path("/projects/junit_revoke/tickets").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+
+            List<Map<String, String>> tickets = response.readEntity(new GenericType<List<Map<String, String>>>() {});
+            ticketPath = "/tickets/" + tickets.get(0).get("id");
+        }
+
+        // leaving
+        try (Response response = user.path("/join").request().post(Entity.text("junit_revoke")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.OK, getStatus(user, ticketPath));
+
+        try (Response response = user.path("/leave").request().post(Entity.text("junit_revoke")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.FORBIDDEN, getStatus(user, ticketPath));
+
+        // being kicked
+        try (Response response = user.path("/join").request().post(Entity.text("junit_revoke")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.OK, getStatus(user, ticketPath));
+
+        try (Response response = owner.path("/projects/junit_revoke/users/revoke_user").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.FORBIDDEN, getStatus(user, ticketPath));
+
+        // change of owner
+        assertEquals(Response.Status.OK, getStatus(owner, ticketPath));
+        assertEquals(Response.Status.FORBIDDEN, getStatus(admin, ticketPath));
+
+        project.put("owner", "revoke_admin");
+
+        try (Response response = owner.path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.FORBIDDEN, getStatus(owner, ticketPath));
+        assertEquals(Response.Status.OK, getStatus(admin, ticketPath));
+
+        try (Response response = owner.path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.FORBIDDEN, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        // deletion of account, a new account with the same name must not inherit the membership
+        try (Response response = user.path("/join").request().post(Entity.text("junit_revoke")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.OK, getStatus(user, ticketPath));
+
+        try (Response response = getAdminClient().path("/users/revoke_user").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.UNAUTHORIZED, getStatus(user, ticketPath));
+
+        try (Response response = getAdminClient().path("/users").request().post(Entity.json(user())))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.FORBIDDEN, getStatus(user, ticketPath));
+
+        // deletion of project
+        assertEquals(Response.Status.OK, getStatus(admin, "/projects/junit_revoke"));
+
+        try (Response response = admin.path("/projects/junit_revoke").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        assertEquals(Response.Status.NOT_FOUND, getStatus(admin, "/projects/junit_revoke"));
+        assertEquals(Response.Status.NOT_FOUND, getStatus(admin, ticketPath));
+
+        for (String path : Arrays.asList("/users/revoke_user", "/admins/revoke_owner", "/admins/revoke_admin"))
+        {
+            try (Response response = getAdminClient().path(path).request().delete())
+            {
+                assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+    }
+
     @Test
     void testStatistics()
     {
@@ -991,6 +2055,311 @@ public class WebServiceTest
         }
     }
 
+    @Test
+    void testBinaryEncodings() throws Exception
+    {
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_encoding");
+        project.put("owner", "admin");
+        project.put("name", "JUnit Encoding Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        Map<String, String> ticket = new HashMap<>(6);
+        ticket.put("projectKey", "junit_encoding");
+        ticket.put("name", "Encoded Ticket");
+        ticket.put("summary", "Ticket sent as CBOR and Smile");
+        ticket.put("description", "Umlauts like \u00e4\u00f6\u00fc survive binary encodings.");
+        ticket.put("category", "trace");
+        ticket.put("requiredObservations", "42");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        String ticketId;
+
+        try (Response response = getAdminClient().path("/projects/junit_encoding/tickets").request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            ticketId = response.readEntity(new GenericType<List<Map<String, String>>>() {}).get(0).get("id");
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).request().post(Entity.text("Hello, CBOR!")))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        final Map<String, ObjectMapper> encodings = new HashMap<>(2);
+        encodings.put("application/cbor", new ObjectMapper(new CBORFactory()));
+        encodings.put("application/x-jackson-smile", new ObjectMapper(new SmileFactory()));
+
+        // serialized eagerly and streamed lists
+        for (String path : new String[] {"/projects/junit_encoding/tickets", "/messages/" + ticketId})
+        {
+            List<Map<String, String>> expected;
+
+            try (Response response = getAdminClient().path(path).request("application/json").get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+                expected = response.readEntity(new GenericType<List<Map<String, String>>>() {});
+                assertEquals(1, expected.size());
+            }
+
+            for (Map.Entry<String, ObjectMapper> encoding : encodings.entrySet())
+            {
+                try (Response response = getAdminClient().path(path).request(encoding.getKey()).get())
+                {
+                    assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+                    assertEquals(encoding.getKey(), response.getMediaType().toString());
+
+                    List<Map<String, String>> actual = encoding.getValue().readValue(response.readEntity(byte[].class),
+                            new TypeReference<List<Map<String, String>>>() {});
+
+                    assertEquals(expected, actual);
+                }
+            }
+        }
+
+        try (Response response = getAdminClient().path("/tickets").path(ticketId).request("application/cbor").get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+
+            Map<String, String> actual = encodings.get("application/cbor").readValue(response.readEntity(byte[].class),
+                    new TypeReference<Map<String, String>>() {});
+
+            assertEquals(ticket.get("description"), actual.get("description"));
+        }
+
+        try (Response response = getAdminClient().path("/projects").path("junit_encoding").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+
+        while ((length = in.read(buffer)) > 0)
+            out.write(buffer, 0, length);
+
+        return out.toByteArray();
+    }
+
+    @Test
+    void testCompression() throws Exception
+    {
+        Map<String, String> project = new HashMap<>(3);
+        project.put("entryKey", "junit_compression");
+        project.put("owner", "admin");
+        project.put("name", "JUnit Compression Project");
+
+        try (Response response = getAdminClient().path("/projects").request().post(Entity.json(project)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        Map<String, String> ticket = new HashMap<>(6);
+        ticket.put("projectKey", "junit_compression");
+        ticket.put("name", "Chatty Ticket");
+        ticket.put("summary", "Ticket with a long message history");
+        ticket.put("description", "Message lists of this ticket exceed the compression threshold.");
+        ticket.put("category", "trace");
+        ticket.put("requiredObservations", "42");
+
+        try (Response response = getAdminClient().path("/tickets").request().post(Entity.json(ticket)))
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+
+        String ticketId;
+
+        // a single ticket is below the threshold
+        try (Response response = getAdminClient().path("/projects/junit_compression/tickets").request().header("Accept-Encoding", "gzip").get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(null, response.getHeaderString("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getHeaderString("Vary"));
+
+            ticketId = response.readEntity(new GenericType<List<Map<String, String>>>() {}).get(0).get("id");
+        }
+
+        for (int i = 0; i < 30; i++)
+        {
+            try (Response response = getAdminClient().path("/messages").path(ticketId).request().post(Entity.text("Compressible message number " + i)))
+            {
+                assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+
+        String expected;
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).queryParam("limit", 100).request().get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals(null, response.getHeaderString("Content-Encoding"));
+
+            expected = response.readEntity(String.class);
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).queryParam("limit", 100).request().header("Accept-Encoding", "gzip, deflate").get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals("gzip", response.getHeaderString("Content-Encoding"));
+
+            byte[] body = response.readEntity(byte[].class);
+            assertTrue(body.length < expected.length());
+
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body)))
+            {
+                assertEquals(expected, new String(readAll(in), StandardCharsets.UTF_8));
+            }
+        }
+
+        try (Response response = getAdminClient().path("/messages").path(ticketId).queryParam("limit", 100).request().header("Accept-Encoding", "gzip;q=0.5, deflate").get())
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertEquals("deflate", response.getHeaderString("Content-Encoding"));
+
+            try (InputStream in = new InflaterInputStream(response.readEntity(InputStream.class)))
+            {
+                assertEquals(expected, new String(readAll(in), StandardCharsets.UTF_8));
+            }
+        }
+
+        try (Response response = getAdminClient().path("/projects").path("junit_compression").request().delete())
+        {
+            assertEquals(Response.Status.NO_CONTENT, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
+    // counts down started once it runs, then waits for release
+    private static Runnable blocker(CountDownLatch started, CountDownLatch release)
+    {
+        return () ->
+        {
+            started.countDown();
+
+            try
+            {
+                release.await();
+            }
+
+            catch (InterruptedException ignored) {}
+        };
+    }
+
+    // returns once every thread of the bulkhead waits for release,
+    // so tasks of earlier tests can no longer free a thread or drain the queue
+    private static void occupy(Bulkhead bulkhead, CountDownLatch release) throws InterruptedException
+    {
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) bulkhead.getExecutor();
+        final CountDownLatch started = new CountDownLatch(executor.getMaximumPoolSize());
+        final Runnable blocker = blocker(started, release);
+
+        for (int i = 0; i < executor.getMaximumPoolSize(); i++)
+        {
+            // the queue may still hold tasks of other tests
+            while (true)
+            {
+                try
+                {
+                    executor.execute(blocker);
+                    break;
+                }
+
+                catch (RejectedExecutionException e)
+                {
+                    Thread.sleep(10);
+                }
+            }
+        }
+
+        started.await();
+    }
+
+    // rejects further tasks until release is counted down, the threads must be occupied
+    private static void fillQueue(Bulkhead bulkhead, CountDownLatch release)
+    {
+        final ExecutorService executor = bulkhead.getExecutor();
+        final Runnable blocker = blocker(new CountDownLatch(0), release);
+
+        // no thread is free, so the queue cannot drain in between
+        try
+        {
+            while (true)
+                executor.execute(blocker);
+        }
+
+        catch (RejectedExecutionException expected) {}
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(blocker));
+    }
+
+    private static void saturate(Bulkhead bulkhead, CountDownLatch release) throws InterruptedException
+    {
+        occupy(bulkhead, release);
+        fillQueue(bulkhead, release);
+    }
+
+    @Test
+    void testMediaBulkhead() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        try
+        {
+            saturate(Bulkhead.media, release);
+
+            try (Response response = getAdminClient().path("/files/1").request().get())
+            {
+                assertEquals(Response.Status.SERVICE_UNAVAILABLE, Response.Status.fromStatusCode(response.getStatus()));
+                assertEquals("1", response.getHeaderString("Retry-After"));
+            }
+
+            final FormDataBodyPart filePart = new FormDataBodyPart("file", "This is a test file for JUnit.");
+
+            try (FormDataMultiPart multipart = (FormDataMultiPart) new FormDataMultiPart().bodyPart(filePart);
+                 Response response = getAdminClient().path("/files/1").request().post(Entity.entity(multipart, multipart.getMediaType())))
+            {
+                assertEquals(Response.Status.SERVICE_UNAVAILABLE, Response.Status.fromStatusCode(response.getStatus()));
+                assertEquals("1", response.getHeaderString("Retry-After"));
+            }
+
+            // interactive requests are not affected
+            try (Response response = getUserClient().path("/login/user").request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            }
+
+            try (Response response = getUserClient().path("/tickets/1").request().get())
+            {
+                assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            }
+        }
+
+        finally
+        {
+            release.countDown();
+        }
+
+        // uploads without a file part are rejected by the media bulkhead after reading the body
+        final FormDataBodyPart otherPart = new FormDataBodyPart("other", "This is not a file.");
+
+        try (FormDataMultiPart multipart = (FormDataMultiPart) new FormDataMultiPart().bodyPart(otherPart);
+             Response response = getAdminClient().path("/files/1").request().post(Entity.entity(multipart, multipart.getMediaType())))
+        {
+            assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        }
+    }
+
     @Test
     void testFiles() throws IOException
     {
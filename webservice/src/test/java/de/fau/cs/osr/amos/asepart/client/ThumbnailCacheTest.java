@@ -0,0 +1,101 @@
+package de.fau.cs.osr.amos.asepart.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ThumbnailCacheTest
+{
+    // content, name of 5 characters and overhead, see ThumbnailCache.weigh()
+    private static long weight(int length)
+    {
+        return length + 2 * 5 + 128;
+    }
+
+    @Test
+    void testEvictLeastRecentlyUsed()
+    {
+        ThumbnailCache cache = new ThumbnailCache(3 * weight(100), 16);
+
+        cache.put(1, "1.png", new byte[100]);
+        cache.put(2, "2.png", new byte[100]);
+        cache.put(3, "3.png", new byte[100]);
+
+        assertEquals(3 * weight(100), cache.weight());
+
+        // 1 becomes the most recently used entry, so 2 is evicted
+        assertNotNull(cache.get(1));
+        cache.put(4, "4.png", new byte[100]);
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+        assertEquals(3 * weight(100), cache.weight());
+
+        // a heavier entry evicts as many entries as needed
+        cache.put(5, "5.png", new byte[250]);
+
+        assertNull(cache.get(1));
+        assertNull(cache.get(3));
+        assertNotNull(cache.get(4));
+        assertNotNull(cache.get(5));
+        assertEquals(weight(100) + weight(250), cache.weight());
+    }
+
+    @Test
+    void testOversizedThumbnail()
+    {
+        ThumbnailCache cache = new ThumbnailCache(weight(100), 16);
+        cache.put(1, "1.png", new byte[100]);
+
+        ThumbnailCache.Entry entry = cache.put(2, "2.png", new byte[101]);
+
+        assertEquals("2.png", entry.getName());
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertEquals(weight(100), cache.weight());
+    }
+
+    @Test
+    void testInvalidate()
+    {
+        ThumbnailCache cache = new ThumbnailCache(2 * weight(100), 16);
+        ThumbnailCache.Entry entry = cache.put(1, "1.png", new byte[100]);
+        cache.put(2, "2.png", new byte[100]);
+
+        assertSame(entry, cache.get(1));
+
+        cache.invalidate(1);
+
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertEquals(weight(100), cache.weight());
+    }
+
+    @Test
+    void testAliasLimit()
+    {
+        ThumbnailCache cache = new ThumbnailCache(3 * weight(100), 2);
+
+        cache.put(1, "1.png", new byte[100]);
+        cache.put(2, "2.png", new byte[100]);
+        cache.put(3, "3.png", new byte[100]);
+
+        // the thumbnail is still held, but can no longer be found by metadata id
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    @Test
+    void testInvalidSize()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new ThumbnailCache(0, 16));
+        assertThrows(IllegalArgumentException.class, () -> new ThumbnailCache(1024, 0));
+    }
+}
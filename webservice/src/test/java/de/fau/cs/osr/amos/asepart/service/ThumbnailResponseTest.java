@@ -0,0 +1,74 @@
+package de.fau.cs.osr.amos.asepart.service;
+
+import de.fau.cs.osr.amos.asepart.client.ThumbnailCache;
+
+import java.net.URI;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ThumbnailResponseTest
+{
+    private static final byte[] CONTENT = {1, 2, 3};
+
+    private static ContainerRequest request(String ifNoneMatch)
+    {
+        final URI base = URI.create("http://localhost:12345/");
+        ContainerRequest request = new ContainerRequest(base, base.resolve("files/1?thumbnail=true"), "GET", null, new MapPropertiesDelegate());
+
+        if (ifNoneMatch != null)
+            request.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+
+        return request;
+    }
+
+    private static ThumbnailCache.Entry thumbnail()
+    {
+        return new ThumbnailCache(1024, 16).put(1, "thumbnail.png", CONTENT);
+    }
+
+    @Test
+    void testThumbnail()
+    {
+        try (Response response = WebService.thumbnailResponse(request(null), thumbnail()))
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertArrayEquals(CONTENT, (byte[]) response.getEntity());
+            assertEquals("image/png", response.getMediaType().toString());
+
+            // thumbnail names are never reused, so the tag is strong and the response immutable
+            EntityTag etag = response.getEntityTag();
+            assertEquals("thumbnail.png", etag.getValue());
+            assertFalse(etag.isWeak());
+            assertEquals("public, max-age=31536000, immutable", response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        }
+    }
+
+    @Test
+    void testNotModified()
+    {
+        try (Response response = WebService.thumbnailResponse(request("\"thumbnail.png\""), thumbnail()))
+        {
+            assertEquals(Response.Status.NOT_MODIFIED, Response.Status.fromStatusCode(response.getStatus()));
+            assertNull(response.getEntity());
+            assertEquals("thumbnail.png", response.getEntityTag().getValue());
+            assertEquals("public, max-age=31536000, immutable", response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        }
+
+        try (Response response = WebService.thumbnailResponse(request("\"other.png\""), thumbnail()))
+        {
+            assertEquals(Response.Status.OK, Response.Status.fromStatusCode(response.getStatus()));
+            assertArrayEquals(CONTENT, (byte[]) response.getEntity());
+        }
+    }
+}